@@ -1,9 +1,12 @@
 package com.github.kvr000.zbynekgps.gpstool;
 
+import com.github.kvr000.zbynekgps.gpstool.command.CatalogCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.ConcatCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.CutCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.FindCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.FitToGpxCommand;
+import com.github.kvr000.zbynekgps.gpstool.command.HeatmapCommand;
+import com.github.kvr000.zbynekgps.gpstool.command.LocateCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.MatchCommand;
 import com.github.kvr000.zbynekgps.gpstool.command.RetrackCommand;
 import com.google.common.collect.ImmutableMap;
@@ -103,6 +106,9 @@ public class ZbynekGpsTool extends AbstractParentCommand
 			"find", FindCommand.class,
 			"match", MatchCommand.class,
 			"fit-to-gpx", FitToGpxCommand.class,
+			"catalog", CatalogCommand.class,
+			"locate", LocateCommand.class,
+			"heatmap", HeatmapCommand.class,
 			"help", HelpOfHelpCommand.class
 		);
 	}
@@ -116,6 +122,9 @@ public class ZbynekGpsTool extends AbstractParentCommand
 			"find", "Finds locations in set of files",
 			"match", "Match two sets of input files",
 			"fit-to-gpx", "Converts fit file to gpx",
+			"catalog", "Builds or updates catalog of activities",
+			"locate", "Locates positions for list of timestamps",
+			"heatmap", "Renders heatmap of activities into PNG or tiles",
 			"help [command]", "Prints help"
 		);
 	}
@@ -0,0 +1,199 @@
+package com.github.kvr000.zbynekgps.gpstool.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Concurrent aggregation of items into buckets identified by small non-negative int keys.
+ *
+ * Each bucket counts items in striped counter, optionally keeps histogram of values and bounded sample of item
+ * ids, so popular buckets cost the same per item as small ones.  The string labels, like sport or device, are
+ * mapped to keys by dictionary, the bucket of known key is then found by array lookup.
+ */
+public class Aggregation
+{
+	private final int sampleSize;
+
+	private final boolean histograms;
+
+	private final Map<String, Integer> dictionary = new ConcurrentHashMap<>();
+
+	private final List<String> labels = new ArrayList<>();
+
+	private volatile Bucket[] buckets = new Bucket[16];
+
+	/**
+	 * Creates the aggregation.
+	 *
+	 * @param sampleSize
+	 * 	maximum number of sample ids kept per bucket
+	 * @param histograms
+	 * 	whether buckets keep histogram of values
+	 */
+	public Aggregation(int sampleSize, boolean histograms)
+	{
+		this.sampleSize = sampleSize;
+		this.histograms = histograms;
+	}
+
+	/**
+	 * Gets the key of label, assigning new one for first occurrence.
+	 *
+	 * @param label
+	 * 	bucket label
+	 *
+	 * @return
+	 * 	key of bucket.
+	 */
+	public int keyOf(String label)
+	{
+		Integer key = dictionary.get(label);
+		if (key != null) {
+			return key;
+		}
+		synchronized (labels) {
+			return dictionary.computeIfAbsent(label, k -> {
+				labels.add(k);
+				return labels.size() - 1;
+			});
+		}
+	}
+
+	/**
+	 * Gets the label of key assigned by {@link #keyOf(String)}.
+	 *
+	 * @param key
+	 * 	bucket key
+	 *
+	 * @return
+	 * 	label of bucket.
+	 */
+	public String labelOf(int key)
+	{
+		synchronized (labels) {
+			return labels.get(key);
+		}
+	}
+
+	/**
+	 * Gets the bucket, creating it if it does not exist yet.
+	 *
+	 * @param key
+	 * 	bucket key, non-negative
+	 *
+	 * @return
+	 * 	bucket.
+	 */
+	public Bucket bucket(int key)
+	{
+		Bucket[] current = buckets;
+		Bucket bucket;
+		if (key < current.length && (bucket = current[key]) != null) {
+			return bucket;
+		}
+		synchronized (this) {
+			current = buckets;
+			if (key >= current.length) {
+				current = Arrays.copyOf(current, Math.max(key + 1, current.length * 2));
+			}
+			else if (current[key] != null) {
+				return current[key];
+			}
+			else {
+				current = current.clone();
+			}
+			bucket = current[key] = new Bucket(histograms ? new Histogram() : null);
+			buckets = current;
+			return bucket;
+		}
+	}
+
+	/**
+	 * Lists existing buckets in ascending order of keys.
+	 *
+	 * @return
+	 * 	pairs of key and bucket.
+	 */
+	public List<Map.Entry<Integer, Bucket>> buckets()
+	{
+		Bucket[] current = buckets;
+		List<Map.Entry<Integer, Bucket>> result = new ArrayList<>();
+		for (int i = 0; i < current.length; ++i) {
+			if (current[i] != null) {
+				result.add(Map.entry(i, current[i]));
+			}
+		}
+		return result;
+	}
+
+	public class Bucket
+	{
+		private final LongAdder count = new LongAdder();
+
+		private final Histogram histogram;
+
+		private final List<String> sample = new ArrayList<>();
+
+		private Bucket(Histogram histogram)
+		{
+			this.histogram = histogram;
+		}
+
+		/**
+		 * Adds item to bucket.
+		 *
+		 * @param id
+		 * 	item id, kept in sample until the sample is full, null to skip sampling
+		 */
+		public void add(String id)
+		{
+			count.increment();
+			if (id != null) {
+				synchronized (sample) {
+					if (sample.size() < sampleSize) {
+						sample.add(id);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Records value into histogram.
+		 *
+		 * @param value
+		 * 	value to record
+		 */
+		public void record(double value)
+		{
+			histogram.record(value);
+		}
+
+		public long count()
+		{
+			return count.sum();
+		}
+
+		/**
+		 * Gets histogram of values.
+		 *
+		 * @return
+		 * 	histogram, null if the aggregation does not keep them.
+		 */
+		public Histogram histogram()
+		{
+			return histogram;
+		}
+
+		public List<String> sample()
+		{
+			synchronized (sample) {
+				return List.copyOf(sample);
+			}
+		}
+	}
+}
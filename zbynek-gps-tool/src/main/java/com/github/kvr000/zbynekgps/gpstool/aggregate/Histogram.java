@@ -0,0 +1,145 @@
+package com.github.kvr000.zbynekgps.gpstool.aggregate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Concurrent histogram of values with fixed relative precision, computing count, min, max and percentiles.
+ *
+ * The values are counted in logarithmic bins, each one percent wide, separately for negative and positive values,
+ * so percentiles are exact within one percent for any magnitude.  The bins are allocated in chunks on first use, so
+ * the histogram of narrow range of values takes only a few hundred bytes.  The updates are lock free and values
+ * from different threads rarely hit the same bin, total count and min/max are kept in striped accumulators.
+ */
+public class Histogram
+{
+	/** Relative width of bin */
+	private static final double PRECISION = 0.01;
+
+	private static final double LOG_BASE = Math.log1p(PRECISION);
+
+	/** Smallest distinguished absolute value, smaller ones are counted as zero */
+	private static final double MIN_VALUE = 1e-3;
+
+	/** Number of bins per sign, covering absolute values up to 1e9 */
+	private static final int SIGN_BINS = (int) Math.ceil(Math.log(1e9 / MIN_VALUE) / LOG_BASE) + 1;
+
+	private static final int CHUNK_SIZE = 64;
+
+	private final LongAdder count = new LongAdder();
+
+	private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+
+	private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+	private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>((2 * SIGN_BINS + 1 + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+	/**
+	 * Records the value.  NaN values are ignored.
+	 *
+	 * @param value
+	 * 	value to record
+	 */
+	public void record(double value)
+	{
+		if (Double.isNaN(value)) {
+			return;
+		}
+		int bin = bin(value);
+		AtomicLongArray chunk = chunks.get(bin / CHUNK_SIZE);
+		if (chunk == null) {
+			chunks.compareAndSet(bin / CHUNK_SIZE, null, new AtomicLongArray(CHUNK_SIZE));
+			chunk = chunks.get(bin / CHUNK_SIZE);
+		}
+		chunk.incrementAndGet(bin % CHUNK_SIZE);
+		count.increment();
+		min.accumulate(value);
+		max.accumulate(value);
+	}
+
+	public long count()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * Gets the minimum.
+	 *
+	 * @return
+	 * 	minimal recorded value, NaN if none.
+	 */
+	public double min()
+	{
+		return count() == 0 ? Double.NaN : min.get();
+	}
+
+	/**
+	 * Gets the maximum.
+	 *
+	 * @return
+	 * 	maximal recorded value, NaN if none.
+	 */
+	public double max()
+	{
+		return count() == 0 ? Double.NaN : max.get();
+	}
+
+	/**
+	 * Gets the percentile, the smallest value which is greater or equal to the requested portion of values.
+	 *
+	 * @param percent
+	 * 	percentile, 0 to 100
+	 *
+	 * @return
+	 * 	percentile value within one percent precision, NaN if there are no values.
+	 */
+	public double percentile(double percent)
+	{
+		long[] bins = new long[2 * SIGN_BINS + 1];
+		long total = 0;
+		for (int i = 0; i < chunks.length(); ++i) {
+			AtomicLongArray chunk = chunks.get(i);
+			if (chunk != null) {
+				for (int j = 0; j < CHUNK_SIZE && i * CHUNK_SIZE + j < bins.length; ++j) {
+					total += (bins[i * CHUNK_SIZE + j] = chunk.get(j));
+				}
+			}
+		}
+		if (total == 0) {
+			return Double.NaN;
+		}
+		long target = Math.max(1, (long) Math.ceil(percent / 100 * total));
+		long sum = 0;
+		for (int bin = 0; bin < bins.length; ++bin) {
+			sum += bins[bin];
+			if (sum >= target) {
+				return Math.max(min.get(), Math.min(max.get(), value(bin)));
+			}
+		}
+		return max.get();
+	}
+
+	private static int bin(double value)
+	{
+		double abs = Math.abs(value);
+		if (abs < MIN_VALUE) {
+			return SIGN_BINS;
+		}
+		int magnitude = (int) Math.min(SIGN_BINS - 1, Math.log(abs / MIN_VALUE) / LOG_BASE);
+		return value > 0 ? SIGN_BINS + 1 + magnitude : SIGN_BINS - 1 - magnitude;
+	}
+
+	/** Middle value of bin */
+	private static double value(int bin)
+	{
+		if (bin == SIGN_BINS) {
+			return 0;
+		}
+		int magnitude = bin > SIGN_BINS ? bin - SIGN_BINS - 1 : SIGN_BINS - 1 - bin;
+		double abs = MIN_VALUE * Math.exp((magnitude + 0.5) * LOG_BASE);
+		return bin > SIGN_BINS ? abs : -abs;
+	}
+}
@@ -0,0 +1,144 @@
+package com.github.kvr000.zbynekgps.gpstool.aggregate;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Track;
+import io.jenetics.jpx.TrackSegment;
+import io.jenetics.jpx.WayPoint;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.Optional;
+import java.util.function.DoubleConsumer;
+
+
+/**
+ * Attribute of track points, aggregated over activities.
+ */
+public enum PointAttribute
+{
+	ELEVATION("elevation")
+	{
+		@Override
+		public void forEachValue(GPX gpx, DoubleConsumer consumer)
+		{
+			forEachPoint(gpx, (previous, point) -> point.getElevation().ifPresent(elevation -> consumer.accept(elevation.doubleValue())));
+		}
+	},
+	/** Speed in m/s, recorded or calculated from previous timed point of segment */
+	SPEED("speed")
+	{
+		@Override
+		public void forEachValue(GPX gpx, DoubleConsumer consumer)
+		{
+			forEachPoint(gpx, (previous, point) -> {
+				if (point.getSpeed().isPresent()) {
+					consumer.accept(point.getSpeed().get().doubleValue());
+				}
+				else if (previous != null && previous.getTime().isPresent() && point.getTime().isPresent()) {
+					long millis = point.getTime().get().toEpochMilli() - previous.getTime().get().toEpochMilli();
+					if (millis > 0) {
+						consumer.accept(GeoCalc.distance(previous.getLatitude().doubleValue(), previous.getLongitude().doubleValue(),
+							point.getLatitude().doubleValue(), point.getLongitude().doubleValue()) * 1000 / millis);
+					}
+				}
+			});
+		}
+	},
+	/** Heart rate from hr element of extensions */
+	HEART_RATE("heart-rate")
+	{
+		@Override
+		public void forEachValue(GPX gpx, DoubleConsumer consumer)
+		{
+			forEachPoint(gpx, (previous, point) -> point.getExtensions()
+				.flatMap(extensions -> findElementValue(extensions, "hr"))
+				.ifPresent(consumer::accept));
+		}
+	},
+	;
+
+	private final String name;
+
+	PointAttribute(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Passes attribute values of all track points to consumer, the points without the attribute are skipped.
+	 *
+	 * @param gpx
+	 * 	content
+	 * @param consumer
+	 * 	consumer of values
+	 */
+	public abstract void forEachValue(GPX gpx, DoubleConsumer consumer);
+
+	/**
+	 * Finds attribute by name.
+	 *
+	 * @param name
+	 * 	name of attribute, like heart-rate
+	 *
+	 * @return
+	 * 	attribute.
+	 *
+	 * @throws IllegalArgumentException
+	 * 	if attribute is unknown
+	 */
+	public static PointAttribute of(String name)
+	{
+		for (PointAttribute attribute: values()) {
+			if (attribute.name.equals(name)) {
+				return attribute;
+			}
+		}
+		throw new IllegalArgumentException("Unknown point attribute, expected elevation, speed or heart-rate: " + name);
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+
+	private static void forEachPoint(GPX gpx, PointPairConsumer consumer)
+	{
+		for (Track track: gpx.getTracks()) {
+			for (TrackSegment segment: track.getSegments()) {
+				WayPoint previous = null;
+				for (WayPoint point: segment.getPoints()) {
+					consumer.accept(previous, point);
+					previous = point;
+				}
+			}
+		}
+	}
+
+	/** Finds value of first element with the local name, ignoring namespace prefix */
+	private static Optional<Double> findElementValue(Document extensions, String localName)
+	{
+		NodeList elements = extensions.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); ++i) {
+			Node element = elements.item(i);
+			String elementName = element.getNodeName();
+			if (elementName.equals(localName) || elementName.endsWith(":" + localName)) {
+				try {
+					return Optional.of(Double.parseDouble(element.getTextContent().trim()));
+				}
+				catch (NumberFormatException ex) {
+					return Optional.empty();
+				}
+			}
+		}
+		return Optional.empty();
+	}
+
+	@FunctionalInterface
+	private interface PointPairConsumer
+	{
+		void accept(WayPoint previous, WayPoint point);
+	}
+}
@@ -0,0 +1,50 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Index of activities, keyed by file path.
+ */
+public class ActivityCatalog
+{
+	private final Map<Path, CatalogEntry> entries = new LinkedHashMap<>();
+
+	public ActivityCatalog(Collection<CatalogEntry> entries)
+	{
+		entries.forEach(entry -> this.entries.put(entry.getPath(), entry));
+	}
+
+	public CatalogEntry get(Path path)
+	{
+		return entries.get(path);
+	}
+
+	public Collection<CatalogEntry> entries()
+	{
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * Returns only readable entries.
+	 *
+	 * @return
+	 * 	entries which were successfully analyzed.
+	 */
+	public List<CatalogEntry> validEntries()
+	{
+		return entries.values().stream()
+			.filter(entry -> !entry.isCorrupt())
+			.toList();
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+}
@@ -0,0 +1,324 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.google.common.base.Stopwatch;
+import com.google.common.hash.Hashing;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Track;
+import io.jenetics.jpx.TrackSegment;
+import io.jenetics.jpx.WayPoint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FilenameUtils;
+
+import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+
+/**
+ * Reads, writes and incrementally updates {@link ActivityCatalog}.
+ *
+ * The catalog is stored as CSV file, the paths are stored relative to the directory of catalog file, so the
+ * archive can be moved together with its catalog.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class ActivityCatalogs
+{
+	private static final String[] HEADER = {
+		"id", "path", "size", "mtime", "hash", "start", "end", "minLat", "minLon", "maxLat", "maxLon",
+		"points", "distance", "sport", "creator", "error"
+	};
+
+	private final GpxLikeFiles gpxLikeFiles;
+
+	public ActivityCatalog read(Path catalogFile) throws IOException
+	{
+		Path base = catalogFile.toAbsolutePath().getParent();
+		List<CatalogEntry> entries = new ArrayList<>();
+		try (Reader reader = Files.newBufferedReader(catalogFile);
+		     CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)
+		) {
+			for (CSVRecord record : parser) {
+				entries.add(CatalogEntry.builder()
+					.id(record.get("id"))
+					.path(base.resolve(record.get("path")).normalize())
+					.size(Long.parseLong(record.get("size")))
+					.mtime(Long.parseLong(record.get("mtime")))
+					.hash(emptyToNull(record.get("hash")))
+					.start(parseInstant(record.get("start")))
+					.end(parseInstant(record.get("end")))
+					.minLat(parseDouble(record.get("minLat")))
+					.minLon(parseDouble(record.get("minLon")))
+					.maxLat(parseDouble(record.get("maxLat")))
+					.maxLon(parseDouble(record.get("maxLon")))
+					.pointCount(Integer.parseInt(record.get("points")))
+					.distance(parseDouble(record.get("distance")))
+					.sport(emptyToNull(record.get("sport")))
+					.creator(emptyToNull(record.get("creator")))
+					.error(emptyToNull(record.get("error")))
+					.build()
+				);
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IOException("Failed to parse catalog: file=" + catalogFile + " : " + ex.getMessage(), ex);
+		}
+		return new ActivityCatalog(entries);
+	}
+
+	public ActivityCatalog readOrEmpty(Path catalogFile) throws IOException
+	{
+		if (!Files.exists(catalogFile)) {
+			return new ActivityCatalog(List.of());
+		}
+		return read(catalogFile);
+	}
+
+	public void write(Path catalogFile, ActivityCatalog catalog) throws IOException
+	{
+		Path absolute = catalogFile.toAbsolutePath();
+		Path base = absolute.getParent();
+		Path tempFile = Files.createTempFile(base, absolute.getFileName().toString(), ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile);
+			     CSVPrinter printer = CSVFormat.DEFAULT.withHeader(HEADER).print(writer)
+			) {
+				for (CatalogEntry entry : catalog.entries()) {
+					printer.printRecord(
+						entry.getId(),
+						FilenameUtils.separatorsToUnix(base.relativize(entry.getPath().toAbsolutePath()).toString()),
+						entry.getSize(),
+						entry.getMtime(),
+						Objects.toString(entry.getHash(), ""),
+						Objects.toString(entry.getStart(), ""),
+						Objects.toString(entry.getEnd(), ""),
+						formatDouble(entry.getMinLat()),
+						formatDouble(entry.getMinLon()),
+						formatDouble(entry.getMaxLat()),
+						formatDouble(entry.getMaxLon()),
+						entry.getPointCount(),
+						formatDouble(entry.getDistance()),
+						Objects.toString(entry.getSport(), ""),
+						Objects.toString(entry.getCreator(), ""),
+						Objects.toString(entry.getError(), "")
+					);
+				}
+			}
+			Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Updates the catalog with current state of files.  Files which did not change their size and modification
+	 * time are taken from existing catalog, including the files previously found corrupted.  Entries for files
+	 * which do not exist anymore are dropped.
+	 *
+	 * @param existing
+	 * 	existing catalog
+	 * @param files
+	 * 	current list of files
+	 *
+	 * @return
+	 * 	updated catalog
+	 */
+	public ActivityCatalog update(ActivityCatalog existing, Collection<Path> files)
+	{
+		return update(existing, files.stream()
+			.map(file -> {
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+					return new GpxLikeDiscovery.DiscoveredFile(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+				}
+				catch (IOException ex) {
+					log.error("Failed to read file attributes, skipping: file={}", file, ex);
+					return null;
+				}
+			})
+			.filter(Objects::nonNull)
+		);
+	}
+
+	/**
+	 * Updates the catalog with files streamed from discovery.  Processing starts as soon as the files are found,
+	 * their size and modification time are taken from discovery.
+	 *
+	 * @param existing
+	 * 	existing catalog
+	 * @param files
+	 * 	stream of current files
+	 *
+	 * @return
+	 * 	updated catalog
+	 */
+	public ActivityCatalog update(ActivityCatalog existing, Stream<GpxLikeDiscovery.DiscoveredFile> files)
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+		AtomicInteger analyzed = new AtomicInteger();
+		AtomicInteger corrupt = new AtomicInteger();
+		List<CatalogEntry> entries = files.parallel()
+			.map(discovered -> {
+				Path file = discovered.getPath().toAbsolutePath().normalize();
+				long size = discovered.getSize();
+				long mtime = discovered.getMtime();
+				CatalogEntry old = existing.get(file);
+				if (old != null && old.isSameFile(size, mtime)) {
+					return old;
+				}
+				analyzed.incrementAndGet();
+				CatalogEntry entry = analyze(file, size, mtime);
+				if (entry.isCorrupt()) {
+					corrupt.incrementAndGet();
+				}
+				return entry;
+			})
+			.filter(Objects::nonNull)
+			.toList();
+		ActivityCatalog updated = new ActivityCatalog(entries);
+		log.info("Updated catalog: files={} analyzed={} corrupt={} removed={} time={} ms",
+			updated.size(), analyzed, corrupt,
+			existing.entries().stream().filter(entry -> updated.get(entry.getPath()) == null).count(),
+			watch.elapsed(TimeUnit.MILLISECONDS));
+		return updated;
+	}
+
+	/**
+	 * Reads the file and summarizes its content into catalog entry.  If the file cannot be read, the entry is
+	 * marked with error.
+	 *
+	 * @param file
+	 * 	file to analyze
+	 * @param size
+	 * 	size of file
+	 * @param mtime
+	 * 	modification time of file
+	 *
+	 * @return
+	 * 	summarized entry.
+	 */
+	public CatalogEntry analyze(Path file, long size, long mtime)
+	{
+		String filename = file.getFileName().toString();
+		CatalogEntry.CatalogEntryBuilder builder = CatalogEntry.builder()
+			.id(FilenameUtils.removeExtension(FilenameUtils.removeExtension(filename)))
+			.path(file)
+			.size(size)
+			.mtime(mtime)
+			.minLat(Double.NaN)
+			.minLon(Double.NaN)
+			.maxLat(Double.NaN)
+			.maxLon(Double.NaN);
+		byte[] content;
+		try {
+			content = Files.readAllBytes(file);
+		}
+		catch (IOException ex) {
+			log.error("Failed to read file: file={}", file, ex);
+			return builder.error(Objects.toString(ex.getMessage(), ex.getClass().getName())).build();
+		}
+		builder.hash(Hashing.sha256().hashBytes(content).toString());
+		try {
+			summarize(builder, gpxLikeFiles.readGpxDecompressed(new ByteArrayInputStream(content), filename));
+		}
+		catch (IOException|RuntimeException ex) {
+			log.error("Failed to parse file, marking corrupt: file={} : {}", file, ex.getMessage());
+			return builder.error(Objects.toString(ex.getMessage(), ex.getClass().getName())).build();
+		}
+		return builder.build();
+	}
+
+	static CatalogEntry.CatalogEntryBuilder summarize(CatalogEntry.CatalogEntryBuilder builder, GPX gpx)
+	{
+		Instant start = null, end = null;
+		double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		int count = 0;
+		double distance = 0;
+		String sport = null;
+		for (Track track : gpx.getTracks()) {
+			if (sport == null) {
+				sport = track.getType().orElse(null);
+			}
+			for (TrackSegment segment : track.getSegments()) {
+				WayPoint last = null;
+				for (WayPoint point : segment.getPoints()) {
+					double lat = point.getLatitude().doubleValue();
+					double lon = point.getLongitude().doubleValue();
+					minLat = Math.min(minLat, lat);
+					maxLat = Math.max(maxLat, lat);
+					minLon = Math.min(minLon, lon);
+					maxLon = Math.max(maxLon, lon);
+					if (point.getTime().isPresent()) {
+						if (start == null) {
+							start = point.getTime().get();
+						}
+						end = point.getTime().get();
+					}
+					if (last != null) {
+						distance += GeoCalc.distance(last.getLatitude().doubleValue(), last.getLongitude().doubleValue(), lat, lon);
+					}
+					last = point;
+					++count;
+				}
+			}
+		}
+		if (count != 0) {
+			builder
+				.minLat(minLat)
+				.minLon(minLon)
+				.maxLat(maxLat)
+				.maxLon(maxLon);
+		}
+		return builder
+			.start(start)
+			.end(end)
+			.pointCount(count)
+			.distance(distance)
+			.sport(sport)
+			.creator(gpx.getCreator());
+	}
+
+	private static String emptyToNull(String value)
+	{
+		return value.isEmpty() ? null : value;
+	}
+
+	private static Instant parseInstant(String value)
+	{
+		return value.isEmpty() ? null : Instant.parse(value);
+	}
+
+	private static double parseDouble(String value)
+	{
+		return value.isEmpty() ? Double.NaN : Double.parseDouble(value);
+	}
+
+	private static String formatDouble(double value)
+	{
+		return Double.isNaN(value) ? "" : Double.toString(value);
+	}
+}
@@ -0,0 +1,73 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+
+/**
+ * Summary of single activity file, as stored in {@link ActivityCatalog}.
+ */
+@Value
+@Builder(toBuilder = true)
+public class CatalogEntry
+{
+	/** Activity id, derived from file name */
+	String id;
+
+	/** Absolute path of the file */
+	Path path;
+
+	/** File size in bytes */
+	long size;
+
+	/** File modification time in epoch milliseconds */
+	long mtime;
+
+	/** SHA-256 of file content */
+	String hash;
+
+	/** Time of the first timed point, null if none */
+	Instant start;
+
+	/** Time of the last timed point, null if none */
+	Instant end;
+
+	/** Bounding box, NaN if there are no points */
+	double minLat;
+	double minLon;
+	double maxLat;
+	double maxLon;
+
+	/** Number of track points */
+	int pointCount;
+
+	/** Distance in meters */
+	double distance;
+
+	/** Sport (track type), null if unknown */
+	String sport;
+
+	/** Creator (device), null if unknown */
+	String creator;
+
+	/** Error message if the file could not be read, null otherwise */
+	String error;
+
+	public boolean isCorrupt()
+	{
+		return error != null;
+	}
+
+	public boolean hasBounds()
+	{
+		return !Double.isNaN(minLat);
+	}
+
+	public boolean isSameFile(long size, long mtime)
+	{
+		return this.size == size && this.mtime == mtime;
+	}
+}
@@ -0,0 +1,207 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Memo of filter outcomes per file, persisted between runs.
+ *
+ * The outcomes are keyed by file and canonical signature of single filter, each one is valid as long as the file
+ * keeps its identity (size, modification time and hash if known).  So a change of filter chain re-evaluates only
+ * the filters with new signature, and only the new or changed files are read again.  The entries of other
+ * signatures are kept, so alternating between several queries keeps all of them memoized.
+ */
+@Log4j2
+public class FilterMemo
+{
+	private static final String[] HEADER = { "path", "size", "mtime", "hash", "filter", "result", "foundPointLdt" };
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private volatile boolean modified;
+
+	/**
+	 * Reads the memo, empty one if the file does not exist.
+	 *
+	 * @param memoFile
+	 * 	memo file
+	 *
+	 * @return
+	 * 	memo.
+	 */
+	public static FilterMemo readOrEmpty(Path memoFile) throws IOException
+	{
+		FilterMemo memo = new FilterMemo();
+		if (!Files.exists(memoFile)) {
+			return memo;
+		}
+		try (Reader reader = Files.newBufferedReader(memoFile);
+		     CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)
+		) {
+			for (CSVRecord record : parser) {
+				memo.entries.put(
+					new Key(record.get("path"), record.get("filter")),
+					new Entry(
+						new FileIdentity(Long.parseLong(record.get("size")), Long.parseLong(record.get("mtime")), emptyToNull(record.get("hash"))),
+						Boolean.parseBoolean(record.get("result")),
+						emptyToNull(record.get("foundPointLdt"))
+					)
+				);
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IOException("Failed to parse memo: file=" + memoFile + " : " + ex.getMessage(), ex);
+		}
+		return memo;
+	}
+
+	/**
+	 * Writes the memo, if it was modified.
+	 *
+	 * @param memoFile
+	 * 	memo file
+	 */
+	public void write(Path memoFile) throws IOException
+	{
+		log.info("Filter memo: entries={} hits={} misses={}", entries.size(), hits, misses);
+		if (!modified) {
+			return;
+		}
+		Path absolute = memoFile.toAbsolutePath();
+		Path tempFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile);
+			     CSVPrinter printer = CSVFormat.DEFAULT.withHeader(HEADER).print(writer)
+			) {
+				for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+					printer.printRecord(
+						entry.getKey().getPath(),
+						entry.getValue().getIdentity().getSize(),
+						entry.getValue().getIdentity().getMtime(),
+						Objects.toString(entry.getValue().getIdentity().getHash(), ""),
+						entry.getKey().getFilter(),
+						entry.getValue().isResult(),
+						Objects.toString(entry.getValue().getFoundPointLdt(), "")
+					);
+				}
+			}
+			Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Finds the memoized outcome.
+	 *
+	 * @param path
+	 * 	file key
+	 * @param identity
+	 * 	current identity of file
+	 * @param filter
+	 * 	filter signature
+	 *
+	 * @return
+	 * 	memoized outcome or null if not memoized or the file changed.
+	 */
+	public Entry lookup(String path, FileIdentity identity, String filter)
+	{
+		Entry entry = entries.get(new Key(path, filter));
+		if (entry == null || !entry.getIdentity().isSameFile(identity)) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry;
+	}
+
+	/**
+	 * Records the outcome.
+	 *
+	 * @param path
+	 * 	file key
+	 * @param identity
+	 * 	current identity of file
+	 * @param filter
+	 * 	filter signature
+	 * @param result
+	 * 	filter result
+	 * @param foundPointLdt
+	 * 	found local time set by filter, null if none
+	 */
+	public void record(String path, FileIdentity identity, String filter, boolean result, String foundPointLdt)
+	{
+		entries.put(new Key(path, filter), new Entry(identity, result, foundPointLdt));
+		modified = true;
+	}
+
+	private static String emptyToNull(String value)
+	{
+		return value == null || value.isEmpty() ? null : value;
+	}
+
+	@Value
+	public static class FileIdentity
+	{
+		long size;
+
+		long mtime;
+
+		/** Content hash, null if unknown */
+		String hash;
+
+		/**
+		 * Checks whether the identity denotes the same file.  The hashes are compared only if known for both.
+		 *
+		 * @param other
+		 * 	other identity
+		 *
+		 * @return
+		 * 	true if the file is the same.
+		 */
+		public boolean isSameFile(FileIdentity other)
+		{
+			return size == other.size && mtime == other.mtime &&
+				(hash == null || other.hash == null || hash.equals(other.hash));
+		}
+	}
+
+	@Value
+	public static class Entry
+	{
+		FileIdentity identity;
+
+		boolean result;
+
+		String foundPointLdt;
+	}
+
+	@Value
+	private static class Key
+	{
+		String path;
+
+		String filter;
+	}
+}
@@ -0,0 +1,428 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import lombok.Getter;
+import lombok.Value;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+
+/**
+ * Inverted index of fixed-size geographic cells to activities which have any point within the cell.
+ *
+ * The file consists of header, table of indexed files, sorted cell keys, offsets into postings and postings.
+ * Postings are lists of file ordinals, delta-encoded as variable length integers.  The file is memory mapped,
+ * only the file table is decoded on open, cells are looked up by binary search directly in mapped buffer.
+ */
+public class SpatialIndex
+{
+	public static final double DEFAULT_CELL_DEGREES = 0.01;
+
+	private static final int MAGIC = 0x5A475349; // ZGSI
+	private static final int VERSION = 1;
+
+	@Getter
+	private final double cellDegrees;
+
+	private final long columns;
+
+	private final List<IndexedFile> files;
+
+	private final Map<Path, Integer> fileOrdinals;
+
+	private final LongBuffer keys;
+
+	private final IntBuffer offsets;
+
+	private final ByteBuffer postings;
+
+	private SpatialIndex(double cellDegrees, List<IndexedFile> files, LongBuffer keys, IntBuffer offsets, ByteBuffer postings)
+	{
+		this.cellDegrees = cellDegrees;
+		this.columns = columns(cellDegrees);
+		this.files = files;
+		this.keys = keys;
+		this.offsets = offsets;
+		this.postings = postings;
+		this.fileOrdinals = new HashMap<>();
+		for (int i = 0; i < files.size(); ++i) {
+			fileOrdinals.put(files.get(i).getPath(), i);
+		}
+	}
+
+	/**
+	 * Opens existing index file.
+	 *
+	 * @param indexFile
+	 * 	path to index file
+	 *
+	 * @return
+	 * 	opened index
+	 *
+	 * @throws IOException
+	 * 	if the file cannot be read or has wrong format
+	 */
+	public static SpatialIndex open(Path indexFile) throws IOException
+	{
+		Path base = indexFile.toAbsolutePath().getParent();
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("Unsupported spatial index format: file=" + indexFile);
+			}
+			double cellDegrees = buffer.getDouble();
+			int fileCount = buffer.getInt();
+			List<IndexedFile> files = new ArrayList<>(fileCount);
+			for (int i = 0; i < fileCount; ++i) {
+				byte[] name = new byte[buffer.getInt()];
+				buffer.get(name);
+				long size = buffer.getLong();
+				long mtime = buffer.getLong();
+				files.add(new IndexedFile(base.resolve(new String(name, StandardCharsets.UTF_8)).normalize(), size, mtime, null));
+			}
+			int cellCount = buffer.getInt();
+			LongBuffer keys = buffer.slice(buffer.position(), cellCount * Long.BYTES).asLongBuffer();
+			buffer.position(buffer.position() + cellCount * Long.BYTES);
+			IntBuffer offsets = buffer.slice(buffer.position(), (cellCount + 1) * Integer.BYTES).asIntBuffer();
+			buffer.position(buffer.position() + (cellCount + 1) * Integer.BYTES);
+			ByteBuffer postings = buffer.slice(buffer.position(), offsets.get(cellCount));
+			return new SpatialIndex(cellDegrees, Collections.unmodifiableList(files), keys, offsets, postings);
+		}
+		catch (RuntimeException ex) {
+			throw new IOException("Failed to read spatial index: file=" + indexFile + " : " + ex, ex);
+		}
+	}
+
+	/**
+	 * Writes the index file.
+	 *
+	 * @param indexFile
+	 * 	path to index file
+	 * @param cellDegrees
+	 * 	size of cell in degrees
+	 * @param files
+	 * 	indexed files, including their cells
+	 *
+	 * @throws IOException
+	 * 	if writing fails
+	 */
+	public static void write(Path indexFile, double cellDegrees, List<IndexedFile> files) throws IOException
+	{
+		TreeMap<Long, List<Integer>> cells = new TreeMap<>();
+		for (int i = 0; i < files.size(); ++i) {
+			for (long cell : files.get(i).getCells()) {
+				cells.computeIfAbsent(cell, k -> new ArrayList<>()).add(i);
+			}
+		}
+		ByteArrayBuilder postings = new ByteArrayBuilder();
+		int[] offsets = new int[cells.size() + 1];
+		int cellIndex = 0;
+		for (List<Integer> posting : cells.values()) {
+			offsets[cellIndex++] = postings.size();
+			int last = 0;
+			for (int ordinal : posting) {
+				postings.writeVarInt(ordinal - last);
+				last = ordinal;
+			}
+		}
+		offsets[cellIndex] = postings.size();
+
+		Path absolute = indexFile.toAbsolutePath();
+		Path base = absolute.getParent();
+		Path tempFile = Files.createTempFile(base, absolute.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeDouble(cellDegrees);
+				output.writeInt(files.size());
+				for (IndexedFile file : files) {
+					byte[] name = FilenameUtils.separatorsToUnix(base.relativize(file.getPath().toAbsolutePath()).toString())
+						.getBytes(StandardCharsets.UTF_8);
+					output.writeInt(name.length);
+					output.write(name);
+					output.writeLong(file.getSize());
+					output.writeLong(file.getMtime());
+				}
+				output.writeInt(cells.size());
+				for (long key : cells.keySet()) {
+					output.writeLong(key);
+				}
+				for (int offset : offsets) {
+					output.writeInt(offset);
+				}
+				output.write(postings.buffer, 0, postings.size());
+			}
+			Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	public List<IndexedFile> files()
+	{
+		return files;
+	}
+
+	/**
+	 * Looks up the indexed file.
+	 *
+	 * @param path
+	 * 	absolute normalized path
+	 *
+	 * @return
+	 * 	indexed file or null if the file is not indexed.
+	 */
+	public IndexedFile lookup(Path path)
+	{
+		Integer ordinal = fileOrdinals.get(path);
+		return ordinal == null ? null : files.get(ordinal);
+	}
+
+	/**
+	 * Finds files which have any point in cells intersecting the circle.  The result is superset of files which
+	 * have a point within the circle.
+	 *
+	 * @param lat
+	 * 	center latitude
+	 * @param lon
+	 * 	center longitude
+	 * @param radiusMeters
+	 * 	radius in meters
+	 *
+	 * @return
+	 * 	set of candidate paths.
+	 */
+	public Set<Path> findCandidates(double lat, double lon, double radiusMeters)
+	{
+		BitSet ordinals = new BitSet(files.size());
+		lon = lon - 360 * Math.floor((lon + 180) / 360);
+		double angle = radiusMeters / GeoCalc.EARTH_RADIUS;
+		double latMargin = Math.toDegrees(angle) * 1.000001 + 1e-9;
+		long rows = rows(cellDegrees);
+		long rowStart = Math.max(0, row(lat - latMargin)), rowEnd = Math.min(rows - 1, row(lat + latMargin));
+		double lonRatio = Math.sin(Math.min(angle, Math.PI / 2)) / Math.cos(Math.toRadians(lat));
+		boolean allColumns = angle >= Math.PI / 2 || lonRatio >= 0.999;
+		double lonMargin = allColumns ? 0 : Math.toDegrees(Math.asin(lonRatio)) * 1.000001 + 1e-9;
+		long colStart, colEnd;
+		if (allColumns || 2 * lonMargin / cellDegrees + 2 >= columns) {
+			colStart = 0;
+			colEnd = columns - 1;
+		}
+		else {
+			// the range may exceed the columns when crossing antimeridian, it's split into two ranges then
+			colStart = column(lon - lonMargin);
+			colEnd = column(lon + lonMargin);
+		}
+		for (long row = rowStart; row <= rowEnd; ++row) {
+			if (colStart < 0) {
+				collectRange(ordinals, row, colStart + columns, columns - 1);
+				collectRange(ordinals, row, 0, colEnd);
+			}
+			else if (colEnd >= columns) {
+				collectRange(ordinals, row, colStart, columns - 1);
+				collectRange(ordinals, row, 0, colEnd - columns);
+			}
+			else {
+				collectRange(ordinals, row, colStart, colEnd);
+			}
+		}
+		return ordinals.stream()
+			.mapToObj(ordinal -> files.get(ordinal).getPath())
+			.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Finds candidates for multiple circles.
+	 *
+	 * @param circles
+	 * 	circles as lat,lon,radius triples
+	 *
+	 * @return
+	 * 	union of candidates.
+	 */
+	public Set<Path> findCandidates(double[][] circles)
+	{
+		return Arrays.stream(circles)
+			.flatMap(circle -> findCandidates(circle[0], circle[1], circle[2]).stream())
+			.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Reconstructs the cells for each indexed file, used for incremental updates.
+	 *
+	 * @return
+	 * 	list of files with their cells, in the same order as files().
+	 */
+	public List<IndexedFile> invert()
+	{
+		List<List<Long>> cells = new ArrayList<>(files.size());
+		for (int i = 0; i < files.size(); ++i) {
+			cells.add(new ArrayList<>());
+		}
+		for (int i = 0; i < keys.limit(); ++i) {
+			long key = keys.get(i);
+			decodePosting(i, ordinal -> cells.get(ordinal).add(key));
+		}
+		List<IndexedFile> result = new ArrayList<>(files.size());
+		for (int i = 0; i < files.size(); ++i) {
+			IndexedFile file = files.get(i);
+			result.add(new IndexedFile(file.getPath(), file.getSize(), file.getMtime(),
+				cells.get(i).stream().mapToLong(Long::longValue).toArray()));
+		}
+		return result;
+	}
+
+	private void collectRange(BitSet ordinals, long row, long colStart, long colEnd)
+	{
+		long from = row * columns + colStart, to = row * columns + colEnd;
+		for (int i = lowerBound(from); i < keys.limit() && keys.get(i) <= to; ++i) {
+			decodePosting(i, ordinals::set);
+		}
+	}
+
+	private void decodePosting(int cellIndex, IntConsumer consumer)
+	{
+		int position = offsets.get(cellIndex), end = offsets.get(cellIndex + 1);
+		int ordinal = 0;
+		while (position < end) {
+			int value = 0, shift = 0;
+			byte b;
+			do {
+				b = postings.get(position++);
+				value |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			ordinal += value;
+			consumer.accept(ordinal);
+		}
+	}
+
+	private int lowerBound(long key)
+	{
+		int low = 0, high = keys.limit();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (keys.get(mid) < key) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private long row(double lat)
+	{
+		return (long) Math.floor((lat + 90) / cellDegrees);
+	}
+
+	private long column(double lon)
+	{
+		return (long) Math.floor((lon + 180) / cellDegrees);
+	}
+
+	private static long rows(double cellDegrees)
+	{
+		return (long) Math.ceil(180 / cellDegrees) + 1;
+	}
+
+	private static long columns(double cellDegrees)
+	{
+		return (long) Math.ceil(360 / cellDegrees);
+	}
+
+	/**
+	 * Calculates the cell key of the point.
+	 *
+	 * @param cellDegrees
+	 * 	size of cell in degrees
+	 * @param lat
+	 * 	latitude
+	 * @param lon
+	 * 	longitude
+	 *
+	 * @return
+	 * 	cell key.
+	 */
+	public static long cellOf(double cellDegrees, double lat, double lon)
+	{
+		long columns = columns(cellDegrees);
+		long row = (long) Math.floor((lat + 90) / cellDegrees);
+		long column = Math.floorMod((long) Math.floor((lon + 180) / cellDegrees), columns);
+		return row * columns + column;
+	}
+
+	/**
+	 * Indexed file, cells are only available when building or inverting the index.
+	 */
+	@Value
+	public static class IndexedFile
+	{
+		Path path;
+
+		long size;
+
+		long mtime;
+
+		long[] cells;
+
+		public boolean isSameFile(long size, long mtime)
+		{
+			return this.size == size && this.mtime == mtime;
+		}
+	}
+
+	private static class ByteArrayBuilder
+	{
+		byte[] buffer = new byte[4096];
+
+		int size;
+
+		void writeVarInt(int value)
+		{
+			if (size + 5 > buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			while ((value & ~0x7f) != 0) {
+				buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		int size()
+		{
+			return size;
+		}
+	}
+}
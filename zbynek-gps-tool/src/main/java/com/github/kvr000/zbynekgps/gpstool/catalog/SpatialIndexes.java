@@ -0,0 +1,98 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.google.common.base.Stopwatch;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Track;
+import io.jenetics.jpx.TrackSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+
+/**
+ * Builds and incrementally updates {@link SpatialIndex}.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class SpatialIndexes
+{
+	private final GpxLikeFiles gpxLikeFiles;
+
+	/**
+	 * Updates the index file with current list of files.  Only new or changed files are read, the cells of
+	 * unchanged files are taken from existing index.  Files which cannot be read are not indexed.
+	 *
+	 * @param indexFile
+	 * 	path to index file, created if it does not exist
+	 * @param files
+	 * 	current list of files
+	 *
+	 * @throws IOException
+	 * 	if reading existing or writing new index fails
+	 */
+	public void update(Path indexFile, Collection<Path> files) throws IOException
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+		double cellDegrees = SpatialIndex.DEFAULT_CELL_DEGREES;
+		Map<Path, SpatialIndex.IndexedFile> existing = Map.of();
+		if (Files.exists(indexFile)) {
+			SpatialIndex old = SpatialIndex.open(indexFile);
+			cellDegrees = old.getCellDegrees();
+			existing = old.invert().stream()
+				.collect(Collectors.toMap(SpatialIndex.IndexedFile::getPath, Function.identity()));
+		}
+		final double cellDegreesFinal = cellDegrees;
+		final Map<Path, SpatialIndex.IndexedFile> existingFinal = existing;
+		AtomicInteger analyzed = new AtomicInteger();
+		List<SpatialIndex.IndexedFile> indexed = files.parallelStream()
+			.map(file -> file.toAbsolutePath().normalize())
+			.map(file -> {
+				try {
+					BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+					long size = attributes.size();
+					long mtime = attributes.lastModifiedTime().toMillis();
+					SpatialIndex.IndexedFile old = existingFinal.get(file);
+					if (old != null && old.isSameFile(size, mtime)) {
+						return old;
+					}
+					analyzed.incrementAndGet();
+					return new SpatialIndex.IndexedFile(file, size, mtime,
+						collectCells(cellDegreesFinal, gpxLikeFiles.readGpxDecompressed(file)));
+				}
+				catch (IOException|RuntimeException ex) {
+					log.error("Failed to read file, not indexing: file={} : {}", file, ex.getMessage());
+					return null;
+				}
+			})
+			.filter(Objects::nonNull)
+			.toList();
+		SpatialIndex.write(indexFile, cellDegrees, indexed);
+		log.info("Updated spatial index: files={} analyzed={} time={} ms",
+			indexed.size(), analyzed, watch.elapsed(TimeUnit.MILLISECONDS));
+	}
+
+	static long[] collectCells(double cellDegrees, GPX gpx)
+	{
+		return gpx.tracks()
+			.flatMap(Track::segments)
+			.flatMap(TrackSegment::points)
+			.mapToLong(point -> SpatialIndex.cellOf(cellDegrees, point.getLatitude().doubleValue(), point.getLongitude().doubleValue()))
+			.sorted()
+			.distinct()
+			.toArray();
+	}
+}
@@ -0,0 +1,137 @@
+package com.github.kvr000.zbynekgps.gpstool.command;
+
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalog;
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.catalog.CatalogEntry;
+import com.github.kvr000.zbynekgps.gpstool.catalog.SpatialIndexes;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.cmdline.command.AbstractCommand;
+import net.dryuf.cmdline.command.CommandContext;
+
+import jakarta.inject.Inject;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class CatalogCommand extends AbstractCommand
+{
+	final GpxLikeDiscovery gpxLikeDiscovery;
+
+	final ActivityCatalogs activityCatalogs;
+
+	final SpatialIndexes spatialIndexes;
+
+	Options options;
+
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+		case "--source-dir":
+			options.sourceDir = needArgsParam(options.sourceDir, args);
+			return true;
+
+		case "--catalog":
+			options.catalog = needArgsParam(options.catalog, args);
+			return true;
+
+		case "--spatial-index":
+			options.spatialIndex = needArgsParam(options.spatialIndex, args);
+			return true;
+
+		case "--include":
+			options.includes.add(needArgsParam(null, args));
+			return true;
+
+		case "--exclude":
+			options.excludes.add(needArgsParam(null, args));
+			return true;
+
+		default:
+			return super.parseOption(context, arg, args);
+		}
+	}
+
+	@Override
+	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
+	{
+		if (options.sourceDir == null || options.catalog == null) {
+			return usage(context, "--source-dir and --catalog must be specified");
+		}
+		return EXIT_CONTINUE;
+	}
+
+	@Override
+	protected void createOptions(CommandContext context)
+	{
+		this.options = new Options();
+	}
+
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"--source-dir directory", "read files from the directory",
+			"--catalog file", "catalog file to create or update",
+			"--spatial-index file", "spatial index file to create or update, optional",
+			"--include glob", "includes only files matching the glob within source directory, can be repeated",
+			"--exclude glob", "excludes files and directories matching the glob within source directory, can be repeated"
+		);
+	}
+
+	protected Map<String, String> configParametersDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+		);
+	}
+
+	@Override
+	public int execute() throws Exception
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+
+		Path catalogFile = Paths.get(options.catalog);
+		ActivityCatalog existing = activityCatalogs.readOrEmpty(catalogFile);
+		ActivityCatalog updated;
+		try (Stream<GpxLikeDiscovery.DiscoveredFile> files =
+			     gpxLikeDiscovery.discover(Paths.get(options.sourceDir), options.includes, options.excludes)) {
+			updated = activityCatalogs.update(existing, files);
+		}
+		activityCatalogs.write(catalogFile, updated);
+		if (options.spatialIndex != null) {
+			List<Path> files = updated.validEntries().stream()
+				.map(CatalogEntry::getPath)
+				.toList();
+			spatialIndexes.update(Paths.get(options.spatialIndex), files);
+		}
+
+		log.info("Cataloged files in: count={} time={} ms", updated.size(), watch.elapsed(TimeUnit.MILLISECONDS));
+
+		return EXIT_SUCCESS;
+	}
+
+	public static class Options
+	{
+		String sourceDir;
+
+		String catalog;
+
+		String spatialIndex;
+
+		List<String> includes = new ArrayList<>();
+
+		List<String> excludes = new ArrayList<>();
+	}
+}
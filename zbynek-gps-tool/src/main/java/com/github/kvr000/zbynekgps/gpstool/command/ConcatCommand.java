@@ -1,6 +1,7 @@
 package com.github.kvr000.zbynekgps.gpstool.command;
 
 import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.TrackSimplifier;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
@@ -41,6 +42,19 @@ public class ConcatCommand extends AbstractCommand
 
 	private Options options = new Options();
 
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+		case "--simplify":
+			options.simplify = Double.parseDouble(needArgsParam(options.simplify, args));
+			return true;
+
+		default:
+			return super.parseOption(context, arg, args);
+		}
+	}
+
 	@Override
 	protected int parseNonOptions(CommandContext context, ListIterator<String> args) throws Exception
 	{
@@ -84,8 +98,12 @@ public class ConcatCommand extends AbstractCommand
 			.map(td -> td.track)
 			.collect(ImmutableList.toImmutableList())
 		);
+		GPX result = output.build();
+		if (options.simplify != null) {
+			result = TrackSimplifier.simplify(result, options.simplify);
+		}
 		Stopwatch watch = Stopwatch.createStarted();
-		GPX.write(output.build(), Paths.get(mainOptions.getOutput()));
+		GPX.write(result, Paths.get(mainOptions.getOutput()));
 		log.info("Written output in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
 		return EXIT_SUCCESS;
 	}
@@ -205,6 +223,14 @@ public class ConcatCommand extends AbstractCommand
 		}
 	}
 
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+			"--simplify tolerance-meters", "simplifies output geometrically, keeping the shape within tolerance"
+		);
+	}
+
 	protected Map<String, String> configParametersDescription(CommandContext context)
 	{
 		return ImmutableMap.of(
@@ -215,6 +241,8 @@ public class ConcatCommand extends AbstractCommand
 	public static class Options
 	{
 		private List<String> inputs;
+
+		private Double simplify;
 	}
 
 	@EqualsAndHashCode
@@ -1,12 +1,30 @@
 package com.github.kvr000.zbynekgps.gpstool.command;
 
 import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
-import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
-import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import com.github.kvr000.zbynekgps.gpstool.aggregate.Aggregation;
+import com.github.kvr000.zbynekgps.gpstool.aggregate.Histogram;
+import com.github.kvr000.zbynekgps.gpstool.aggregate.PointAttribute;
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.catalog.CatalogEntry;
+import com.github.kvr000.zbynekgps.gpstool.catalog.FilterMemo;
+import com.github.kvr000.zbynekgps.gpstool.catalog.SpatialIndex;
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleGrid;
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleKernel;
+import com.github.kvr000.zbynekgps.gpstool.geo.CorridorGrid;
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCircle;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointBlocks;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.TrackSimplifier;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.github.kvr000.zbynekgps.gpstool.util.AsyncFileWriter;
+import com.github.kvr000.zbynekgps.gpstool.util.StagedPipeline;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Range;
+import com.google.common.hash.Hashing;
 import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Route;
 import io.jenetics.jpx.Track;
 import io.jenetics.jpx.TrackSegment;
 import io.jenetics.jpx.WayPoint;
@@ -22,44 +40,96 @@ import org.apache.commons.lang3.mutable.Mutable;
 import org.apache.commons.lang3.mutable.MutableObject;
 
 import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiPredicate;
+import java.util.function.LongPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 
 @Log4j2
 @RequiredArgsConstructor(onConstructor = @__(@Inject))
 public class FindCommand extends AbstractCommand
 {
+	private static final DateTimeFormatter STRAVA_ACTIVITY_DATE_FORMAT = DateTimeFormatter.ofPattern("MMM d, yyyy, h:mm:ss a", Locale.ENGLISH);
+
+	private static final Pattern FILENAME_DATE_PATTERN = Pattern.compile("(?<!\\d)((?:19|20)\\d{2})-(\\d{2})-(\\d{2})(?!\\d)");
+
+	private static final Duration START_HINT_MARGIN = Duration.ofDays(1);
+
+	/** Upper estimate of bytes per point in uncompressed GPX, including the usual extensions */
+	static final int GPX_BYTES_PER_POINT = 200;
+
+	/** Upper estimate of bytes per point in uncompressed FIT, record message with the usual fields */
+	static final int FIT_BYTES_PER_POINT = 40;
+
 	final GpxLikeFiles gpxLikeFiles;
 
+	final GpxLikeDiscovery gpxLikeDiscovery;
+
+	final ActivityCatalogs activityCatalogs;
+
 	final ZbynekGpsTool.Options mainOptions;
 
 	Options options;
 
+	SpatialIndex spatialIndex;
+
+	ZipFile stravaArchive;
+
+	FilterMemo filterMemo;
+
+	List<BiPredicate<FileData, Mutable<GPX>>> plannedFilters;
+
+	final Map<double[][], Set<Path>> spatialCandidates = new ConcurrentHashMap<>();
+
+	int parallelMinPoints = PointBlocks.PARALLEL_MIN_POINTS;
+
+	/** Pool searching very long activities in parallel, sized by --threads, null to search sequentially */
+	ForkJoinPool searchPool;
+
 	@Override
 	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
 	{
@@ -72,6 +142,22 @@ public class FindCommand extends AbstractCommand
 			options.sourceStravaCsv = needArgsParam(options.sourceStravaCsv, args);
 			return true;
 
+		case "--source-catalog":
+			options.sourceCatalog = needArgsParam(options.sourceCatalog, args);
+			return true;
+
+		case "--spatial-index":
+			options.spatialIndex = needArgsParam(options.spatialIndex, args);
+			return true;
+
+		case "--include":
+			options.includes.add(needArgsParam(null, args));
+			return true;
+
+		case "--exclude":
+			options.excludes.add(needArgsParam(null, args));
+			return true;
+
 		case "--since":
 			Instant since = Instant.parse(needArgsParam(null, args));
 			options.filters.add(new SinceFilter(since));
@@ -83,28 +169,24 @@ public class FindCommand extends AbstractCommand
 			return true;
 
 		case "--find-point":
-			double[][] findPointDefs = Stream.of(needArgsParam(null, args).split(":"))
-					.map(one -> {
-						String[] findPointDefStr = one.split(",");
-						if (findPointDefStr.length != 3) {
-							throw new IllegalArgumentException("--find-point requires arguments lat,lon,radius , possibly multiple separated by :, got: " + one);
-						}
-						return Stream.of(findPointDefStr).mapToDouble(Double::parseDouble).toArray();
-					})
-					.toArray(double[][]::new);
+			double[][] findPointDefs = parseCircles(arg, needArgsParam(null, args));
 			options.filters.add(new FindPointFilter(findPointDefs));
 			return true;
 
+		case "--find-corridor":
+			String[] corridorStr = needArgsParam(null, args).split(",");
+			if (corridorStr.length < 2 || corridorStr.length > 3) {
+				throw new IllegalArgumentException("--find-corridor requires argument file,width[,minCoverage]");
+			}
+			options.filters.add(new FindCorridorFilter(
+				Paths.get(corridorStr[0]),
+				Double.parseDouble(corridorStr[1]),
+				corridorStr.length > 2 ? Double.parseDouble(corridorStr[2]) : 0.9
+			));
+			return true;
+
 		case "--dismiss-if-in-zone":
-			double[][] dismissPointDefs = Stream.of(needArgsParam(null, args).split(":"))
-				.map(one -> {
-					String[] findPointDefStr = one.split(",");
-					if (findPointDefStr.length != 3) {
-						throw new IllegalArgumentException("--dismiss-if-in-zone requires arguments lat,lon,radius , possibly multiple separated by :, got: " + one);
-					}
-					return Stream.of(findPointDefStr).mapToDouble(Double::parseDouble).toArray();
-				})
-				.toArray(double[][]::new);
+			double[][] dismissPointDefs = parseCircles(arg, needArgsParam(null, args));
 			options.filters.add(new DismissIfInZoneFilter(dismissPointDefs));
 			return true;
 
@@ -113,6 +195,11 @@ public class FindCommand extends AbstractCommand
 			options.filters.add(new DecreaseDensityFilter(intervalSeconds));
 			return true;
 
+		case "--simplify":
+			double tolerance = Double.parseDouble(needArgsParam(null, args));
+			options.filters.add(new SimplifyFilter(tolerance));
+			return true;
+
 		case "--remove-extensions":
 			options.filters.add(new RemoveExtensionsFilter());
 			return true;
@@ -131,6 +218,18 @@ public class FindCommand extends AbstractCommand
 			options.commands.add(new ExportGpxCommand(directory));
 			return true;
 
+		case "--export-writers":
+			options.exportWriters = Integer.parseInt(needArgsParam(options.exportWriters, args));
+			return true;
+
+		case "--export-gzip":
+			options.exportGzip = true;
+			return true;
+
+		case "--print-id":
+			options.commands.add(new PrintIdCommand());
+			return true;
+
 		case "--print-id-and-found-time":
 			DateTimeFormatter idFoundTime = DateTimeFormatter.ofPattern(needArgsParam(null, args));
 			options.commands.add(new PrintIdAndTimeCommand(idFoundTime));
@@ -141,10 +240,47 @@ public class FindCommand extends AbstractCommand
 			options.commands.add(new GroupFoundTimeCommand(groupFoundTime));
 			return true;
 
+		case "--aggregate":
+			String[] aggregateStr = needArgsParam(null, args).split(":", 2);
+			options.commands.add(new AggregateCommand(
+				GroupBy.of(aggregateStr[0]),
+				aggregateStr.length > 1 ? PointAttribute.of(aggregateStr[1]) : null,
+				"aggregateKey" + options.commands.size()
+			));
+			return true;
+
 		case "--skip-distance":
 			options.skipDistance = Double.parseDouble(needArgsParam(options.skipDistance, args));
 			return true;
 
+		case "--kernel":
+			options.kernel = CircleKernel.of(needArgsParam(null, args));
+			return true;
+
+		case "--memo":
+			options.memo = needArgsParam(options.memo, args);
+			return true;
+
+		case "--filename-dates":
+			options.filenameDates = true;
+			return true;
+
+		case "--unordered":
+			options.unordered = true;
+			return true;
+
+		case "--threads":
+			options.threads = Integer.parseInt(needArgsParam(options.threads, args));
+			return true;
+
+		case "--io-threads":
+			options.ioThreads = Integer.parseInt(needArgsParam(options.ioThreads, args));
+			return true;
+
+		case "--max-inflight":
+			options.maxInflight = Integer.parseInt(needArgsParam(options.maxInflight, args));
+			return true;
+
 		default:
 			return super.parseOption(context, arg, args);
 		}
@@ -153,8 +289,8 @@ public class FindCommand extends AbstractCommand
 	@Override
 	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
 	{
-		if ((options.sourceDir == null) == (options.sourceStravaCsv == null)) {
-			return usage(context, "One of --source-dir or --source-strava-csv must be specified");
+		if (Stream.of(options.sourceDir, options.sourceStravaCsv, options.sourceCatalog).filter(Objects::nonNull).count() != 1) {
+			return usage(context, "One of --source-dir, --source-strava-csv or --source-catalog must be specified");
 		}
 		return EXIT_CONTINUE;
 	}
@@ -170,18 +306,35 @@ public class FindCommand extends AbstractCommand
 	{
 		return ImmutableMap.<String, String>builder()
 			.put("--source-dir directory", "read files from the directory")
-			.put("--source-strava-csv file", "read files from Strava activities.csv file")
+			.put("--source-strava-csv file", "read files from Strava activities.csv file or export zip archive")
+			.put("--source-catalog file", "read files from catalog created by catalog command")
+			.put("--include glob", "includes only files matching the glob within source directory, can be repeated")
+			.put("--exclude glob", "excludes files and directories matching the glob within source directory, can be repeated")
+			.put("--spatial-index file", "use spatial index created by catalog command to skip files not passing the points")
 			.put("--since time", "filters by activity start time being higher inclusive (YYYY-MM-DDTHH:mm:ssZ)")
 			.put("--till time", "filters by activity start time being lower exclusive (YYYY-MM-DDTHH:mm:ssZ)")
-			.put("--find-point lat,lon,radius:...", "find one of the points with radius distance")
-			.put("--dismiss-if-in-zone lat,lon,radius:...", "excludes activity completely if in zone (full privacy)")
+			.put("--filename-dates", "trusts YYYY-MM-DD in file name as activity start date, --since and --till then skip files without reading them")
+			.put("--find-point lat,lon,radius:...|@file", "find one of the points with radius distance, or points listed in file")
+			.put("--find-corridor file,width[,minCoverage]", "find activities following the route in file within width meters, covering at least minCoverage portion of it (default 0.9)")
+			.put("--dismiss-if-in-zone lat,lon,radius:...|@file", "excludes activity completely if in zone (full privacy), or zones listed in file")
 			.put("--decrease-density interval-seconds", "decreases density of data to interval")
+			.put("--simplify tolerance-meters", "simplifies tracks geometrically, keeping the shape within tolerance")
 			.put("--remove-extensions", "removes all extensions")
+			.put("--print-id", "prints id")
 			.put("--print-id-and-found-time time-format", "prints id and found local time")
 			.put("--group-found-time time-format", "groups and prints found time")
+			.put("--aggregate group[:attribute]", "counts found activities per group (found-hour, found-weekday, found-month, start-hour, start-weekday, start-month, sport, device), with min, percentiles and max of point attribute (elevation, speed, heart-rate)")
 			.put("--export-gpx directory", "exports found files to directory/id.gpx files")
+			.put("--export-writers number", "number of threads writing exported files, default 4")
+			.put("--export-gzip", "compresses exported files into id.gpx.gz")
 			.put("--remove-privacy-zone lat,lon,radius", "removes privacy zone from output")
 			.put("--skip-distance radius", "starts searching after leaving radius from start")
+			.put("--kernel scalar|vector|auto", "kernel evaluating points against zones, default auto")
+			.put("--memo file", "memoizes outcomes of filters per file in the file, reused by next runs for unchanged files")
+			.put("--unordered", "prints results as soon as they are found, not in order of sources")
+			.put("--threads number", "number of threads parsing and filtering files, default number of processors")
+			.put("--io-threads number", "number of concurrent file reads, default twice the threads")
+			.put("--max-inflight number", "maximum number of files being processed at once, default four times the threads")
 			.build();
 	}
 
@@ -190,10 +343,39 @@ public class FindCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
+		if (options.spatialIndex != null) {
+			spatialIndex = SpatialIndex.open(Paths.get(options.spatialIndex));
+		}
+		if (options.memo != null) {
+			filterMemo = FilterMemo.readOrEmpty(Paths.get(options.memo));
+		}
+
+		// own pool, so the CPU workers blocked on parallel search do not oversubscribe beyond --threads:
+		searchPool = new ForkJoinPool(StagedPipeline.Config.of(options.threads, options.ioThreads, options.maxInflight).getThreads());
+		try {
+			return executeFind(watch);
+		}
+		finally {
+			searchPool.shutdown();
+			if (stravaArchive != null) {
+				stravaArchive.close();
+			}
+		}
+	}
+
+	private int executeFind(Stopwatch watch) throws Exception
+	{
+		plannedFilters = planFilters(options.filters);
+		log.debug("Planned filters: {}", plannedFilters);
+
 		LinkedHashMap<String, FileData> inputs = new LinkedHashMap<>();
 
 		if (options.sourceStravaCsv != null) {
-			try (Reader activitiesCsv = Files.newBufferedReader(Paths.get(options.sourceStravaCsv));
+			Path stravaPath = Paths.get(options.sourceStravaCsv);
+			if (stravaPath.getFileName().toString().toLowerCase().endsWith(".zip")) {
+				stravaArchive = new ZipFile(stravaPath.toFile());
+			}
+			try (Reader activitiesCsv = openStravaActivities(stravaPath);
 				 CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(activitiesCsv);
 			) {
 				parser.stream()
@@ -204,11 +386,21 @@ public class FindCommand extends AbstractCommand
 						}
 						FileData fileData = new FileData();
 						fileData.id = record.get("Activity ID");
-						fileData.filename = Paths.get(options.sourceStravaCsv).resolveSibling(filename);
+						if (stravaArchive != null) {
+							fileData.archiveEntry = filename;
+							fileData.filename = stravaPath.resolve(filename);
+						}
+						else {
+							fileData.filename = stravaPath.resolveSibling(filename);
+						}
 						fileData.metadata = ImmutableMap.of(
 							"id", fileData.id,
 							"name", record.get("Activity Name")
 						);
+						fileData.startHint = parseStravaStartHint(record.isMapped("Activity Date") ? record.get("Activity Date") : null);
+						if (fileData.startHint == null && options.filenameDates) {
+							fileData.startHint = parseFilenameStartHint(filename);
+						}
 						return fileData;
 					})
 					.filter(Objects::nonNull)
@@ -223,45 +415,98 @@ public class FindCommand extends AbstractCommand
 					.forEach(fileData -> inputs.put(fileData.id, fileData));
 			}
 		}
-		else {
-			for (Path filename: gpxLikeFiles.listFiles(Paths.get(options.sourceDir))) {
+		else if (options.sourceCatalog != null) {
+			for (CatalogEntry entry: activityCatalogs.read(Paths.get(options.sourceCatalog)).validEntries()) {
 				FileData fileData = new FileData();
-				fileData.filename = filename;
-				fileData.id = FilenameUtils.removeExtension(FilenameUtils.removeExtension(filename.getFileName().toString()));
+				fileData.filename = entry.getPath();
+				fileData.id = entry.getId();
+				fileData.catalogEntry = entry;
 				fileData.metadata = ImmutableMap.of(
 						"id", fileData.id,
 						"name", fileData.id
 				);
-				inputs.put(fileData.filename.getFileName().toString(), fileData);
+				inputs.put(fileData.filename.toString(), fileData);
 			}
 		}
 
-		AtomicLong count = new AtomicLong();
-		AtomicLong found = new AtomicLong();
-		inputs.values().parallelStream()
-				.peek(fileData -> count.incrementAndGet())
-				.map(fileData -> {
-					try {
-						return Map.entry(fileData, new MutableObject<>(readGpxLike(fileData.filename)));
-					} catch (IOException ex) {
-						log.error("Failed to read file: file={}", fileData.filename, ex);
-						return null;
+		// directory files are streamed while walking, so the processing starts immediately:
+		Stream<FileData> sources = options.sourceDir == null ? inputs.values().stream() :
+			gpxLikeDiscovery.discover(Paths.get(options.sourceDir), options.includes, options.excludes)
+				.map(discovered -> {
+					FileData fileData = new FileData();
+					fileData.filename = discovered.getPath();
+					fileData.id = FilenameUtils.removeExtension(FilenameUtils.removeExtension(discovered.getPath().getFileName().toString()));
+					fileData.metadata = ImmutableMap.of(
+							"id", fileData.id,
+							"name", fileData.id
+					);
+					if (options.filenameDates) {
+						fileData.startHint = parseFilenameStartHint(discovered.getPath().getFileName().toString());
 					}
-				})
-				.filter(Objects::nonNull)
-				.filter(e -> options.filters.stream()
-						.map(filter -> filter.test(e.getKey(), e.getValue()))
-						.reduce(true, Boolean::logicalAnd)
-				)
-				.peek(e -> options.commands.forEach(command -> command.collectUnordered(e.getKey(), e.getValue().getValue())))
-				.map(Map.Entry::getKey)
-				.forEachOrdered(fileData -> {
-					options.commands.forEach(command -> command.collectOrdered(fileData));
-					found.incrementAndGet();
+					return fileData;
 				});
 
+		boolean needsGpx = options.commands.stream().anyMatch(Command::needsGpx);
+		options.commands.forEach(Command::start);
+		AtomicLong count = new AtomicLong();
+		AtomicLong found = new AtomicLong();
+		// reading files on I/O stage, decoding and filtering on CPU stage, ordered commands on this thread:
+		StagedPipeline.Config config = StagedPipeline.Config.of(options.threads, options.ioThreads, options.maxInflight);
+		StagedPipeline<FileData, FileData, FileData> pipeline = new StagedPipeline<>(
+			"find",
+			options.unordered ? config.unordered() : config,
+			fileData -> {
+				count.incrementAndGet();
+				if (!testMetadata(fileData)) {
+					return null;
+				}
+				if (fileData.pendingFilters.isEmpty() && !needsGpx) {
+					return fileData;
+				}
+				try {
+					loadContent(fileData);
+					return fileData;
+				}
+				catch (IOException ex) {
+					log.error("Failed to read file: file={}", fileData.filename, ex);
+					return null;
+				}
+			},
+			fileData -> {
+				try {
+					return processContent(fileData, needsGpx) ? fileData : null;
+				}
+				finally {
+					fileData.content = null;
+				}
+			},
+			fileData -> {
+				options.commands.forEach(command -> command.collectOrdered(fileData));
+				found.incrementAndGet();
+			}
+		);
+		try (sources) {
+			pipeline.run(sources);
+		}
+		catch (Throwable ex) {
+			// finish() is skipped on failure, the commands must still release their resources:
+			for (Command command: options.commands) {
+				try {
+					command.abort();
+				}
+				catch (Exception abortEx) {
+					ex.addSuppressed(abortEx);
+				}
+			}
+			throw ex;
+		}
+
 		log.info("Analyzed files in: count={} found={} time={} ms", count, found, watch.elapsed(TimeUnit.MILLISECONDS));
 
+		if (filterMemo != null) {
+			filterMemo.write(Paths.get(options.memo));
+		}
+
 		options.commands.forEach(Command::finish);
 
 		return EXIT_SUCCESS;
@@ -274,244 +519,1165 @@ public class FindCommand extends AbstractCommand
 		);
 	}
 
-	private GPX readGpxLike(Path filePath) throws IOException
+	/**
+	 * Evaluates pending filters on file content and collects the accepted file by unordered commands.
+	 *
+	 * @param fileData
+	 * 	file passed metadata filters
+	 * @param needsGpx
+	 * 	whether commands need the content
+	 *
+	 * @return
+	 * 	true if the file is accepted.
+	 */
+	boolean processContent(FileData fileData, boolean needsGpx)
 	{
-		String filename = filePath.toString();
-		if (filename.endsWith(".gz") && !Files.exists(Paths.get(filename)) && Files.exists(Paths.get(FilenameUtils.removeExtension(filename)))) {
-			filename = FilenameUtils.removeExtension(filename);
+		if (!testStreaming(fileData)) {
+			return false;
 		}
-		try {
-			return gpxLikeFiles.readGpxDecompressed(Paths.get(filename));
+		Mutable<GPX> gpx = new MutableObject<>();
+		if (!fileData.pendingFilters.isEmpty() || needsGpx) {
+			try {
+				gpx.setValue(readGpxLike(fileData));
+			}
+			catch (IOException ex) {
+				log.error("Failed to read file: file={}", fileData.filename, ex);
+				return false;
+			}
 		}
-		catch (IOException ex) {
-			throw new IOException("Failed to read file: " + filename + " : " + ex.getMessage(), ex);
+		for (BiPredicate<FileData, Mutable<GPX>> filter: fileData.pendingFilters) {
+			boolean result = filter.test(fileData, gpx);
+			recordMemo(fileData, filter, result);
+			if (!result) {
+				return false;
+			}
 		}
+		options.commands.forEach(command -> command.collectUnordered(fileData, gpx.getValue()));
+		return true;
 	}
 
-	static Optional<double[]> getFirstPoint(GPX gpx)
+	/**
+	 * Plans order of filters.  The filters modifying content are barriers kept in their declared order, the pure
+	 * filters between them are ordered by ascending rank of cost per rejected file, so the cheap and selective
+	 * ones run first and short-circuit the rest.  The order sensitive filters, such as --find-point setting the found
+	 * time, keep their relative declared order.
+	 *
+	 * @param filters
+	 * 	filters in declared order
+	 *
+	 * @return
+	 * 	filters in evaluation order.
+	 */
+	static List<BiPredicate<FileData, Mutable<GPX>>> planFilters(List<BiPredicate<FileData, Mutable<GPX>>> filters)
 	{
-		return gpx.tracks().flatMap(Track::segments).flatMap(TrackSegment::points)
-			.map(wp -> new double[]{ wp.getLatitude().doubleValue(), wp.getLongitude().doubleValue() })
-			.findFirst();
+		List<BiPredicate<FileData, Mutable<GPX>>> planned = new ArrayList<>(filters.size());
+		List<PureFilter> segment = new ArrayList<>();
+		for (BiPredicate<FileData, Mutable<GPX>> filter: filters) {
+			if (filter instanceof PureFilter pure) {
+				segment.add(pure);
+			}
+			else {
+				flushPlannedSegment(planned, segment);
+				planned.add(filter);
+			}
+		}
+		flushPlannedSegment(planned, segment);
+		return fuseTransforms(planned);
 	}
 
-	@RequiredArgsConstructor
-	public static class SinceFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Fuses consecutive point transforms into single {@link TransformPointsFilter}, so the content is rebuilt only
+	 * once for all of them.
+	 *
+	 * @param filters
+	 * 	filters in evaluation order
+	 *
+	 * @return
+	 * 	filters with runs of transforms fused.
+	 */
+	static List<BiPredicate<FileData, Mutable<GPX>>> fuseTransforms(List<BiPredicate<FileData, Mutable<GPX>>> filters)
 	{
-		final Instant since;
-
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			List<WayPoint> waypoints = gpx.getValue().tracks()
-					.flatMap(track -> track.segments().flatMap(segment -> segment.points()))
-					.toList();
+		List<BiPredicate<FileData, Mutable<GPX>>> fused = new ArrayList<>(filters.size());
+		for (int i = 0; i < filters.size(); ) {
+			int end = i;
+			while (end < filters.size() && filters.get(end) instanceof PointTransform) {
+				++end;
+			}
+			if (end - i >= 2) {
+				fused.add(new TransformPointsFilter(filters.subList(i, end).stream().map(PointTransform.class::cast).toList()));
+				i = end;
+			}
+			else {
+				fused.add(filters.get(i++));
+			}
+		}
+		return fused;
+	}
 
-			for (WayPoint waypoint : waypoints) {
-				if (waypoint.getTime().isPresent()) {
-					return !waypoint.getTime().get().isBefore(since);
-				}
+	@SuppressWarnings("unchecked")
+	private static void flushPlannedSegment(List<BiPredicate<FileData, Mutable<GPX>>> planned, List<PureFilter> segment)
+	{
+		List<PureFilter> sorted = segment.stream()
+			.sorted(Comparator.comparingDouble(filter ->
+				filter.estimatedCost() / Math.max(1.0 - filter.estimatedSelectivity(), 1e-6)))
+			.collect(Collectors.toList());
+		// the order sensitive filters take the positions of sorted ones, but in their declared order:
+		Iterator<PureFilter> declaredSensitive = segment.stream().filter(PureFilter::isOrderSensitive).iterator();
+		for (int i = 0; i < sorted.size(); ++i) {
+			if (sorted.get(i).isOrderSensitive()) {
+				sorted.set(i, declaredSensitive.next());
 			}
-			return false;
 		}
+		sorted.forEach(filter -> planned.add((BiPredicate<FileData, Mutable<GPX>>) filter));
+		segment.clear();
 	}
 
-	@RequiredArgsConstructor
-	public static class TillFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Parses start time range from Strava "Activity Date" column, in UTC.  The range is widened by a day, as the
+	 * first recorded point may differ from activity start and some exports use local time.
+	 *
+	 * @param activityDate
+	 * 	value of Activity Date column, may be null
+	 *
+	 * @return
+	 * 	range of possible start times or null if not parseable.
+	 */
+	static Range<Instant> parseStravaStartHint(String activityDate)
 	{
-		final Instant till;
+		if (activityDate == null || activityDate.isEmpty()) {
+			return null;
+		}
+		try {
+			Instant date = LocalDateTime.parse(activityDate, STRAVA_ACTIVITY_DATE_FORMAT).toInstant(ZoneOffset.UTC);
+			return Range.closed(date.minus(START_HINT_MARGIN), date.plus(START_HINT_MARGIN));
+		}
+		catch (DateTimeParseException ex) {
+			return null;
+		}
+	}
 
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			List<WayPoint> waypoints = gpx.getValue().tracks()
-					.flatMap(track -> track.segments().flatMap(segment -> segment.points()))
-					.toList();
+	/**
+	 * Parses start time range from date in file name, like 2023-05-01-10-20-30.fit .  The time zone of file name
+	 * is unknown, so the range covers whole day in any time zone.  The name may carry other date, such as of export,
+	 * so it is used only when enabled by --filename-dates .
+	 *
+	 * @param filename
+	 * 	name of file
+	 *
+	 * @return
+	 * 	range of possible start times or null if the name does not contain date.
+	 */
+	static Range<Instant> parseFilenameStartHint(String filename)
+	{
+		Matcher matcher = FILENAME_DATE_PATTERN.matcher(filename);
+		if (!matcher.find()) {
+			return null;
+		}
+		try {
+			Instant date = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)))
+				.atStartOfDay(ZoneOffset.UTC)
+				.toInstant();
+			return Range.closed(date.minus(START_HINT_MARGIN), date.plus(Duration.ofDays(1)).plus(START_HINT_MARGIN));
+		}
+		catch (DateTimeException ex) {
+			return null;
+		}
+	}
 
-			for (WayPoint waypoint : waypoints) {
-				if (waypoint.getTime().isPresent()) {
-					return waypoint.getTime().get().isBefore(till);
-				}
-			}
+	/**
+	 * Checks the catalog entry against current file attributes, the same way the spatial index is checked.  If the
+	 * file changed since cataloging, the entry is rebuilt by reading the file, so the metadata filters and commands
+	 * never see stale start time or bounds.
+	 *
+	 * @param fileData
+	 * 	file with catalog entry, the entry is replaced if stale
+	 *
+	 * @return
+	 * 	false if the file cannot be read anymore, true otherwise.
+	 */
+	boolean refreshCatalogEntry(FileData fileData)
+	{
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(fileData.filename, BasicFileAttributes.class);
+		}
+		catch (IOException ex) {
+			log.error("Failed to read cataloged file, skipping: file={}", fileData.filename, ex);
+			return false;
+		}
+		long size = attributes.size();
+		long mtime = attributes.lastModifiedTime().toMillis();
+		if (fileData.catalogEntry.isSameFile(size, mtime)) {
+			return true;
+		}
+		log.debug("Catalog entry is stale, reading file: file={}", fileData.filename);
+		CatalogEntry entry = activityCatalogs.analyze(fileData.filename, size, mtime);
+		if (entry.isCorrupt()) {
 			return false;
 		}
+		fileData.catalogEntry = entry;
+		return true;
 	}
 
-	@RequiredArgsConstructor
-	public class FindPointFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Evaluates filters on metadata, before the file is read.  Only the filters preceding first modifying filter
+	 * are evaluated, as the following ones depend on modifications of content.
+	 *
+	 * @param fileData
+	 * 	file to evaluate, its pendingFilters are set to filters which need to be evaluated on content
+	 *
+	 * @return
+	 * 	false if the file is rejected, true otherwise.
+	 */
+	boolean testMetadata(FileData fileData)
 	{
-		final double[][] searchPoints;
-
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			double[] skippingStart = options.skipDistance != null ? getFirstPoint(gpx.getValue()).orElse(null) : null;
-			List<WayPoint> waypoints = GpxUtil.expandToWaypoints(gpx.getValue());
-
-			for (WayPoint waypoint : waypoints) {
-				double latitude = waypoint.getLatitude().doubleValue();
-				double longitude = waypoint.getLongitude().doubleValue();
-				if (skippingStart != null) {
-					if (GeoCalc.isWithinRadius(latitude, longitude, skippingStart[0], skippingStart[1], options.skipDistance)) {
-						continue;
+		if (fileData.catalogEntry != null && !refreshCatalogEntry(fileData)) {
+			return false;
+		}
+		List<BiPredicate<FileData, Mutable<GPX>>> pending = new ArrayList<>();
+		boolean pushdown = true;
+		for (BiPredicate<FileData, Mutable<GPX>> filter: plannedFilters) {
+			if (!(filter instanceof PureFilter pureFilter)) {
+				pushdown = false;
+			}
+			else if (pushdown) {
+				if (filter instanceof MetadataFilter metadataFilter) {
+					Verdict verdict = metadataFilter.testMetadata(fileData);
+					if (verdict == Verdict.REJECT) {
+						return false;
 					}
-					else {
-						skippingStart = null;
+					else if (verdict == Verdict.ACCEPT) {
+						continue;
 					}
 				}
-				if (waypoint.getTime().isPresent()) {
-					for (double[] point: searchPoints) {
-						if (GeoCalc.isWithinRadius(latitude, longitude, point[0], point[1], point[2])) {
-							LocalDateTime timestamp = waypoint.getTime().get().atZone(ZoneId.systemDefault()).toLocalDateTime();
-							fileData.attributes.put("foundPointLdt", timestamp);
-							return true;
-						}
-					}
+				Verdict memoized = testMemo(fileData, pureFilter);
+				if (memoized == Verdict.REJECT) {
+					return false;
+				}
+				else if (memoized == Verdict.ACCEPT) {
+					continue;
 				}
 			}
-			return false;
+			pending.add(filter);
 		}
+		fileData.pendingFilters = pending;
+		return true;
 	}
 
-	@RequiredArgsConstructor
-	public class DismissIfInZoneFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Looks up memoized outcome of filter.  If not memoized, the filter is marked for recording its outcome, as
+	 * the filters before first modifying one depend only on file content.
+	 *
+	 * @param fileData
+	 * 	file to evaluate
+	 * @param filter
+	 * 	filter preceding first modifying filter
+	 *
+	 * @return
+	 * 	memoized verdict, restoring the attributes set by filter, or UNKNOWN.
+	 */
+	Verdict testMemo(FileData fileData, PureFilter filter)
 	{
-		final double[][] searchPoints;
+		if (filterMemo == null) {
+			return Verdict.UNKNOWN;
+		}
+		if (fileData.identity == null) {
+			try {
+				fileData.identity = fileIdentity(fileData);
+			}
+			catch (IOException ex) {
+				log.warn("Failed to read file attributes, not memoizing: file={} : {}", fileData.filename, ex.getMessage());
+				return Verdict.UNKNOWN;
+			}
+		}
+		FilterMemo.Entry entry = filterMemo.lookup(memoPath(fileData), fileData.identity, filter.signature());
+		if (entry == null) {
+			fileData.memoizedFilters.add(filter);
+			return Verdict.UNKNOWN;
+		}
+		if (entry.getFoundPointLdt() != null) {
+			fileData.attributes.put("foundPointLdt", LocalDateTime.parse(entry.getFoundPointLdt()));
+		}
+		return entry.isResult() ? Verdict.ACCEPT : Verdict.REJECT;
+	}
 
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			List<WayPoint> waypoints = GpxUtil.expandToTimedWaypoints(gpx.getValue());
+	/**
+	 * Records the outcome of filter evaluated on content, if the filter is marked for recording.
+	 *
+	 * @param fileData
+	 * 	evaluated file
+	 * @param filter
+	 * 	evaluated filter
+	 * @param result
+	 * 	result of filter
+	 */
+	void recordMemo(FileData fileData, BiPredicate<FileData, Mutable<GPX>> filter, boolean result)
+	{
+		if (filterMemo == null || !fileData.memoizedFilters.contains(filter)) {
+			return;
+		}
+		Object foundPointLdt = result && filter instanceof FindPointFilter ? fileData.attributes.get("foundPointLdt") : null;
+		filterMemo.record(memoPath(fileData), fileData.identity, ((PureFilter) filter).signature(), result,
+			foundPointLdt == null ? null : foundPointLdt.toString());
+	}
 
-			for (WayPoint waypoint: waypoints) {
-				double latitude = waypoint.getLatitude().doubleValue();
-				double longitude = waypoint.getLongitude().doubleValue();
-				if (waypoint.getTime().isPresent()) {
-					for (double[] point : searchPoints) {
-						if (GeoCalc.isWithinRadius(latitude, longitude, point[0], point[1], point[2])) {
-							return false;
-						}
-					}
-				}
-			}
-			return true;
+	private String memoPath(FileData fileData)
+	{
+		if (fileData.archiveEntry != null) {
+			return stravaArchive.getName() + "!/" + fileData.archiveEntry;
 		}
+		return fileData.filename.toAbsolutePath().normalize().toString();
 	}
 
-	@RequiredArgsConstructor
-	public static class RemovePrivacyZoneFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Builds memo identity from current file attributes.  The catalog hash is added only if the catalog entry
+	 * matches the file, so a changed file never matches memo rows recorded for its previous content.
+	 *
+	 * @param fileData
+	 * 	file to identify
+	 *
+	 * @return
+	 * 	identity of file.
+	 */
+	FilterMemo.FileIdentity fileIdentity(FileData fileData) throws IOException
 	{
-		final double[] privacyZone;
+		if (fileData.archiveEntry != null) {
+			ZipEntry entry = findArchiveEntry(fileData.archiveEntry);
+			return new FilterMemo.FileIdentity(entry.getSize(), entry.getTime(), Long.toHexString(entry.getCrc()));
+		}
+		String filename = fileData.filename.toString();
+		if (filename.endsWith(".gz") && !Files.exists(Paths.get(filename)) && Files.exists(Paths.get(FilenameUtils.removeExtension(filename)))) {
+			filename = FilenameUtils.removeExtension(filename);
+		}
+		BasicFileAttributes attributes = Files.readAttributes(Paths.get(filename), BasicFileAttributes.class);
+		long size = attributes.size();
+		long mtime = attributes.lastModifiedTime().toMillis();
+		String hash = fileData.catalogEntry != null && fileData.catalogEntry.isSameFile(size, mtime) ?
+			fileData.catalogEntry.getHash() : null;
+		return new FilterMemo.FileIdentity(size, mtime, hash);
+	}
 
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			GPX.Builder gpxBuilder = gpx.getValue().toBuilder();
-			{
-				boolean started = false;
-				List<Track> tracks = new ArrayList<>();
-				for (Track track : gpxBuilder.tracks()) {
-					List<TrackSegment> segments = new ArrayList<>();
-					for (TrackSegment segment : track.getSegments()) {
-						List<WayPoint> wayPoints = new ArrayList<>();
-						for (WayPoint wayPoint : segment.getPoints()) {
-							if (!started) {
-								double latitude = wayPoint.getLatitude().doubleValue();
-								double longitude = wayPoint.getLongitude().doubleValue();
-								if (GeoCalc.isWithinRadius(latitude, longitude, privacyZone[0], privacyZone[1], privacyZone[2])) {
-									continue;
-								}
-								else {
-									started = true;
-								}
-							}
-							wayPoints.add(wayPoint);
-						}
-						if (!wayPoints.isEmpty()) {
-							segments.add(segment.toBuilder().points(wayPoints).build());
-						}
+	/**
+	 * Evaluates leading streaming filters of pending ones by scanning the points, without materializing the
+	 * content.  The scanning stops as soon as any filter rejects or all of them decide.  The evaluated filters
+	 * are removed from pending ones, so the content is read later only if needed by remaining filters or commands.
+	 * The streaming prefix ends at filter preferring materialized points, so large files are searched in parallel.
+	 *
+	 * @param fileData
+	 * 	file to evaluate
+	 *
+	 * @return
+	 * 	false if the file is rejected, true otherwise.
+	 */
+	boolean testStreaming(FileData fileData)
+	{
+		List<PointScan> scans = new ArrayList<>();
+		for (BiPredicate<FileData, Mutable<GPX>> filter: fileData.pendingFilters) {
+			if (!(filter instanceof StreamingFilter streamingFilter) || streamingFilter.prefersMaterialized(fileData)) {
+				break;
+			}
+			scans.add(streamingFilter.startScan(fileData));
+		}
+		if (scans.isEmpty()) {
+			return true;
+		}
+		boolean[] decided = new boolean[scans.size()];
+		boolean complete;
+		try {
+			complete = scanGpxLike(fileData, (latitude, longitude, time) -> {
+				boolean undecided = false;
+				for (int i = 0; i < decided.length; ++i) {
+					if (decided[i]) {
+						continue;
 					}
-					if (!segments.isEmpty()) {
-						tracks.add(track.toBuilder().segments(segments).build());
+					if (scans.get(i).accept(latitude, longitude, time)) {
+						undecided = true;
 					}
-				}
-				gpxBuilder.tracks(tracks);
-			}
-			{
-				boolean started = false;
-				List<Track> tracks = new ArrayList<>();
-				tracks.clear();
-				for (Track track : gpxBuilder.tracks().reversed()) {
-					List<TrackSegment> segments = new ArrayList<>();
-					for (TrackSegment segment : track.getSegments().reversed()) {
-						List<WayPoint> wayPoints = new ArrayList<>();
-						for (WayPoint wayPoint : segment.getPoints().reversed()) {
-							if (!started) {
-								double latitude = wayPoint.getLatitude().doubleValue();
-								double longitude = wayPoint.getLongitude().doubleValue();
-								if (GeoCalc.isWithinRadius(latitude, longitude, privacyZone[0], privacyZone[1], privacyZone[2])) {
-									continue;
-								}
-								else {
-									started = true;
-								}
-							}
-							wayPoints.add(wayPoint);
-						}
-						if (!wayPoints.isEmpty()) {
-							segments.add(segment.toBuilder().points(wayPoints.reversed()).build());
-						}
+					else if (!scans.get(i).result()) {
+						recordMemo(fileData, fileData.pendingFilters.get(i), false);
+						return false;
 					}
-					if (!segments.isEmpty()) {
-						tracks.add(track.toBuilder().segments(segments.reversed()).build());
+					else {
+						recordMemo(fileData, fileData.pendingFilters.get(i), true);
+						decided[i] = true;
 					}
 				}
-				gpxBuilder.tracks(tracks.reversed());
+				return undecided;
+			});
+		}
+		catch (IOException ex) {
+			log.error("Failed to read file: file={}", fileData.filename, ex);
+			return false;
+		}
+		for (int i = 0; i < scans.size(); ++i) {
+			if (!decided[i] && complete) {
+				// the whole content was scanned, the result is final:
+				recordMemo(fileData, fileData.pendingFilters.get(i), scans.get(i).result());
+			}
+			if (!scans.get(i).result()) {
+				return false;
 			}
-			gpx.setValue(gpxBuilder.build());
-			return !gpx.getValue().getTracks().isEmpty();
 		}
+		fileData.pendingFilters = new ArrayList<>(fileData.pendingFilters.subList(scans.size(), fileData.pendingFilters.size()));
+		return true;
 	}
 
-	@RequiredArgsConstructor
-	public static abstract class ModifyWaypointsFilter implements BiPredicate<FileData, Mutable<GPX>>
+	/**
+	 * Checks whether the file is large enough for the point search to be split into parallel chunks.  The number
+	 * of points is not known before parsing, so it is estimated from the size of loaded content, pessimistically,
+	 * so the streaming scan is not given up for files which would be searched sequentially anyway.
+	 *
+	 * @param fileData
+	 * 	file to evaluate
+	 *
+	 * @return
+	 * 	true if the file likely has at least {@link PointBlocks#PARALLEL_MIN_POINTS} points.
+	 */
+	boolean isParallelCandidate(FileData fileData)
 	{
-		@Override
-		public boolean test(FileData fileData, Mutable<GPX> gpx)
-		{
-			GPX.Builder gpxBuilder = gpx.getValue().toBuilder();
-			{
-				List<Track> tracks = new ArrayList<>();
-				for (Track track : gpxBuilder.tracks()) {
-					List<TrackSegment> segments = new ArrayList<>();
-					for (TrackSegment segment : track.getSegments()) {
-						List<WayPoint> wayPoints = modifyWayPoints(segment.getPoints());
-						if (!wayPoints.isEmpty()) {
-							segments.add(segment.toBuilder().points(wayPoints).build());
-						}
-					}
-					if (!segments.isEmpty()) {
-						tracks.add(track.toBuilder().segments(segments).build());
-					}
-				}
-				gpxBuilder.tracks(tracks);
+		return searchPool != null && fileData.content != null && estimatePointCount(fileData.content, fileData.contentName) >= parallelMinPoints;
+	}
+
+	/**
+	 * Estimates the lower bound of number of points in file, from its uncompressed size.  The uncompressed size of
+	 * gzip content is taken from its trailer, without inflating.
+	 *
+	 * @param content
+	 * 	raw file content
+	 * @param contentName
+	 * 	name of file, determining the format
+	 *
+	 * @return
+	 * 	estimated number of points.
+	 */
+	static long estimatePointCount(byte[] content, String contentName)
+	{
+		String name = contentName.toLowerCase(Locale.ROOT);
+		long size = content.length;
+		if (name.endsWith(".gz")) {
+			if (content.length < 18) {
+				return 0;
 			}
-			gpx.setValue(gpxBuilder.build());
-			return !gpxBuilder.tracks().isEmpty();
+			// ISIZE, the uncompressed size modulo 4 GiB, little endian at the end of last member:
+			int end = content.length;
+			size = (content[end - 4] & 0xffL) | (content[end - 3] & 0xffL) << 8 | (content[end - 2] & 0xffL) << 16 | (content[end - 1] & 0xffL) << 24;
+			name = name.substring(0, name.length() - 3);
 		}
-
-		public abstract List<WayPoint> modifyWayPoints(List<WayPoint> points);
+		return size / (name.endsWith(".fit") ? FIT_BYTES_PER_POINT : GPX_BYTES_PER_POINT);
 	}
 
-	@RequiredArgsConstructor
-	public static class DecreaseDensityFilter extends ModifyWaypointsFilter
+	private Reader openStravaActivities(Path stravaPath) throws IOException
 	{
-		final long intervalSeconds;
+		if (stravaArchive == null) {
+			return Files.newBufferedReader(stravaPath);
+		}
+		ZipEntry entry = stravaArchive.getEntry("activities.csv");
+		if (entry == null) {
+			throw new IOException("No activities.csv found in archive: " + stravaPath);
+		}
+		return new InputStreamReader(stravaArchive.getInputStream(entry), StandardCharsets.UTF_8);
+	}
 
-		@Override
-		public List<WayPoint> modifyWayPoints(List<WayPoint> points)
-		{
-			List<WayPoint> out = new ArrayList<>();
+	/**
+	 * Reads the raw content of file into memory, so the decoding does not block on I/O.
+	 *
+	 * @param fileData
+	 * 	file to read, its content and contentName are set
+	 */
+	void loadContent(FileData fileData) throws IOException
+	{
+		if (fileData.archiveEntry != null) {
+			ZipEntry entry = findArchiveEntry(fileData.archiveEntry);
+			try (InputStream stream = stravaArchive.getInputStream(entry)) {
+				fileData.content = stream.readAllBytes();
+				fileData.contentName = entry.getName();
+			}
+			catch (IOException ex) {
+				throw new IOException("Failed to read file: " + entry.getName() + " : " + ex.getMessage(), ex);
+			}
+			return;
+		}
+		String filename = fileData.filename.toString();
+		if (filename.endsWith(".gz") && !Files.exists(Paths.get(filename)) && Files.exists(Paths.get(FilenameUtils.removeExtension(filename)))) {
+			filename = FilenameUtils.removeExtension(filename);
+		}
+		try {
+			fileData.content = Files.readAllBytes(Paths.get(filename));
+			fileData.contentName = Paths.get(filename).getFileName().toString();
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to read file: " + filename + " : " + ex.getMessage(), ex);
+		}
+	}
+
+	private GPX readGpxLike(FileData fileData) throws IOException
+	{
+		if (fileData.content != null) {
+			try {
+				return gpxLikeFiles.readGpxDecompressed(new ByteArrayInputStream(fileData.content), fileData.contentName);
+			}
+			catch (IOException ex) {
+				throw new IOException("Failed to read file: " + fileData.filename + " : " + ex.getMessage(), ex);
+			}
+		}
+		if (fileData.archiveEntry != null) {
+			return readArchivedGpxLike(fileData.archiveEntry);
+		}
+		String filename = fileData.filename.toString();
+		if (filename.endsWith(".gz") && !Files.exists(Paths.get(filename)) && Files.exists(Paths.get(FilenameUtils.removeExtension(filename)))) {
+			filename = FilenameUtils.removeExtension(filename);
+		}
+		try {
+			return gpxLikeFiles.readGpxDecompressed(Paths.get(filename));
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to read file: " + filename + " : " + ex.getMessage(), ex);
+		}
+	}
+
+	private boolean scanGpxLike(FileData fileData, PointConsumer consumer) throws IOException
+	{
+		String filename = fileData.archiveEntry != null ? fileData.archiveEntry : fileData.filename.toString();
+		try {
+			if (fileData.content != null) {
+				return gpxLikeFiles.scanPointsDecompressed(new ByteArrayInputStream(fileData.content), fileData.contentName, consumer);
+			}
+			if (fileData.archiveEntry != null) {
+				ZipEntry entry = findArchiveEntry(filename);
+				try (InputStream stream = stravaArchive.getInputStream(entry)) {
+					return gpxLikeFiles.scanPointsDecompressed(stream, entry.getName(), consumer);
+				}
+			}
+			if (filename.endsWith(".gz") && !Files.exists(Paths.get(filename)) && Files.exists(Paths.get(FilenameUtils.removeExtension(filename)))) {
+				filename = FilenameUtils.removeExtension(filename);
+			}
+			return gpxLikeFiles.scanPointsDecompressed(Paths.get(filename), consumer);
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to read file: " + filename + " : " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Reads the file directly from Strava export archive.  The entries are located via central directory and
+	 * inflated independently, so they can be read concurrently without extracting the archive.
+	 *
+	 * @param entryName
+	 * 	name of the entry within archive
+	 *
+	 * @return
+	 * 	parsed file
+	 */
+	private GPX readArchivedGpxLike(String entryName) throws IOException
+	{
+		ZipEntry entry = findArchiveEntry(entryName);
+		try (InputStream stream = stravaArchive.getInputStream(entry)) {
+			return gpxLikeFiles.readGpxDecompressed(stream, entry.getName());
+		}
+		catch (IOException ex) {
+			throw new IOException("Failed to read file: " + entry.getName() + " : " + ex.getMessage(), ex);
+		}
+	}
+
+	private ZipEntry findArchiveEntry(String entryName) throws IOException
+	{
+		ZipEntry entry = stravaArchive.getEntry(entryName);
+		if (entry == null && entryName.endsWith(".gz")) {
+			entry = stravaArchive.getEntry(FilenameUtils.removeExtension(entryName));
+		}
+		if (entry == null) {
+			throw new IOException("Failed to read file: " + entryName + " : entry not found in " + stravaArchive.getName());
+		}
+		return entry;
+	}
+
+	/**
+	 * Checks whether the file is covered by up-to-date spatial index and has no points close to search points.
+	 *
+	 * @param fileData
+	 * 	file to check
+	 * @param searchPoints
+	 * 	search points as lat,lon,radius triples
+	 *
+	 * @return
+	 * 	true if the file is known to have no point close to search points.
+	 */
+	boolean isSpatiallyOutside(FileData fileData, double[][] searchPoints)
+	{
+		return isSpatiallyIndexed(fileData) &&
+			!spatialCandidates.computeIfAbsent(searchPoints, spatialIndex::findCandidates)
+				.contains(fileData.filename.toAbsolutePath().normalize());
+	}
+
+	boolean isSpatiallyIndexed(FileData fileData)
+	{
+		if (spatialIndex == null) {
+			return false;
+		}
+		SpatialIndex.IndexedFile indexed = spatialIndex.lookup(fileData.filename.toAbsolutePath().normalize());
+		if (indexed == null) {
+			return false;
+		}
+		if (fileData.catalogEntry != null) {
+			return indexed.isSameFile(fileData.catalogEntry.getSize(), fileData.catalogEntry.getMtime());
+		}
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(fileData.filename, BasicFileAttributes.class);
+			return indexed.isSameFile(attributes.size(), attributes.lastModifiedTime().toMillis());
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Parses circles, either lat,lon,radius triples separated by colon, or @file with one triple per line.  Empty
+	 * lines and lines starting with # are skipped in the file.
+	 *
+	 * @param option
+	 * 	name of option, for error reporting
+	 * @param value
+	 * 	option value
+	 *
+	 * @return
+	 * 	circles as lat,lon,radius triples.
+	 */
+	static double[][] parseCircles(String option, String value) throws IOException
+	{
+		Stream<String> definitions;
+		if (value.startsWith("@")) {
+			definitions = Files.readAllLines(Paths.get(value.substring(1))).stream()
+				.map(String::trim)
+				.filter(line -> !line.isEmpty() && !line.startsWith("#"));
+		}
+		else {
+			definitions = Stream.of(value.split(":"));
+		}
+		return definitions
+			.map(one -> {
+				String[] circleStr = one.split(",");
+				if (circleStr.length != 3) {
+					throw new IllegalArgumentException(option + " requires arguments lat,lon,radius , possibly multiple separated by : or @file, got: " + one);
+				}
+				return Stream.of(circleStr).map(String::trim).mapToDouble(Double::parseDouble).toArray();
+			})
+			.toArray(double[][]::new);
+	}
+
+	/**
+	 * Computes canonical signature of circles, independent of their order.
+	 *
+	 * @param circles
+	 * 	lat,lon,radius triples
+	 *
+	 * @return
+	 * 	hash of sorted circles.
+	 */
+	static String circlesSignature(double[][] circles)
+	{
+		String canonical = Stream.of(circles)
+			.map(circle -> circle[0] + "," + circle[1] + "," + circle[2])
+			.sorted()
+			.collect(Collectors.joining(":"));
+		return Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString().substring(0, 32);
+	}
+
+	static boolean mayIntersect(CatalogEntry entry, CircleGrid searchCircles)
+	{
+		return searchCircles.mayIntersectBox(entry.getMinLat(), entry.getMinLon(), entry.getMaxLat(), entry.getMaxLon());
+	}
+
+	@RequiredArgsConstructor
+	public static class SinceFilter implements BiPredicate<FileData, Mutable<GPX>>, MetadataFilter, PureFilter, StreamingFilter
+	{
+		final Instant since;
+
+		@Override
+		public Verdict testMetadata(FileData fileData)
+		{
+			if (fileData.catalogEntry == null) {
+				// the hint is approximate, it can only reject, the files without timed points would be accepted otherwise:
+				return fileData.startHint != null && fileData.startHint.upperEndpoint().isBefore(since) ?
+					Verdict.REJECT : Verdict.UNKNOWN;
+			}
+			Instant start = fileData.catalogEntry.getStart();
+			return start != null && !start.isBefore(since) ? Verdict.ACCEPT : Verdict.REJECT;
+		}
+
+		@Override
+		public double estimatedCost()
+		{
+			return 1;
+		}
+
+		@Override
+		public double estimatedSelectivity()
+		{
+			return 0.5;
+		}
+
+		@Override
+		public String signature()
+		{
+			return "since:" + since;
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			List<WayPoint> waypoints = gpx.getValue().tracks()
+					.flatMap(track -> track.segments().flatMap(segment -> segment.points()))
+					.toList();
+
+			for (WayPoint waypoint : waypoints) {
+				if (waypoint.getTime().isPresent()) {
+					return !waypoint.getTime().get().isBefore(since);
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public PointScan startScan(FileData fileData)
+		{
+			return new FirstTimeScan(time -> time >= since.toEpochMilli());
+		}
+	}
+
+	@RequiredArgsConstructor
+	public static class TillFilter implements BiPredicate<FileData, Mutable<GPX>>, MetadataFilter, PureFilter, StreamingFilter
+	{
+		final Instant till;
+
+		@Override
+		public Verdict testMetadata(FileData fileData)
+		{
+			if (fileData.catalogEntry == null) {
+				return fileData.startHint != null && !fileData.startHint.lowerEndpoint().isBefore(till) ?
+					Verdict.REJECT : Verdict.UNKNOWN;
+			}
+			Instant start = fileData.catalogEntry.getStart();
+			return start != null && start.isBefore(till) ? Verdict.ACCEPT : Verdict.REJECT;
+		}
+
+		@Override
+		public double estimatedCost()
+		{
+			return 1;
+		}
+
+		@Override
+		public double estimatedSelectivity()
+		{
+			return 0.5;
+		}
+
+		@Override
+		public String signature()
+		{
+			return "till:" + till;
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			List<WayPoint> waypoints = gpx.getValue().tracks()
+					.flatMap(track -> track.segments().flatMap(segment -> segment.points()))
+					.toList();
+
+			for (WayPoint waypoint : waypoints) {
+				if (waypoint.getTime().isPresent()) {
+					return waypoint.getTime().get().isBefore(till);
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public PointScan startScan(FileData fileData)
+		{
+			return new FirstTimeScan(time -> time < till.toEpochMilli());
+		}
+	}
+
+	public class FindPointFilter implements BiPredicate<FileData, Mutable<GPX>>, MetadataFilter, PureFilter, StreamingFilter
+	{
+		final double[][] searchPoints;
+
+		final CircleGrid searchCircles;
+
+		public FindPointFilter(double[][] searchPoints)
+		{
+			this.searchPoints = searchPoints;
+			this.searchCircles = CircleGrid.of(searchPoints);
+		}
+
+		@Override
+		public Verdict testMetadata(FileData fileData)
+		{
+			CatalogEntry entry = fileData.catalogEntry;
+			if (entry != null && !(entry.hasBounds() && mayIntersect(entry, searchCircles))) {
+				return Verdict.REJECT;
+			}
+			if (isSpatiallyOutside(fileData, searchPoints)) {
+				return Verdict.REJECT;
+			}
+			return Verdict.UNKNOWN;
+		}
+
+		@Override
+		public double estimatedCost()
+		{
+			// scans all points against all search points:
+			return 100 + 20 * searchPoints.length;
+		}
+
+		@Override
+		public double estimatedSelectivity()
+		{
+			return 0.1;
+		}
+
+		@Override
+		public boolean isOrderSensitive()
+		{
+			// the last one sets the found time:
+			return true;
+		}
+
+		@Override
+		public String signature()
+		{
+			// found time is local, so it depends on time zone too:
+			return "find-point:" + circlesSignature(searchPoints) + ":skip=" + options.skipDistance + ":zone=" + ZoneId.systemDefault();
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			PointBlocks blocks = fileData.getPointBlocks(gpx.getValue());
+			int from = 0;
+			if (options.skipDistance != null && blocks.size() > 0) {
+				GeoCircle start = new GeoCircle(blocks.getLatitude(0), blocks.getLongitude(0), options.skipDistance);
+				while (from < blocks.size() && start.contains(blocks.getLatitude(from), blocks.getLongitude(from))) {
+					++from;
+				}
+			}
+			int found = blocks.findFirstWithin(from, searchCircles, true, options.kernel, searchPool);
+			if (found < 0) {
+				return false;
+			}
+			LocalDateTime timestamp = blocks.getPoint(found).getTime().get().atZone(ZoneId.systemDefault()).toLocalDateTime();
+			fileData.attributes.put("foundPointLdt", timestamp);
+			return true;
+		}
+
+		@Override
+		public boolean prefersMaterialized(FileData fileData)
+		{
+			return isParallelCandidate(fileData);
+		}
+
+		@Override
+		public PointScan startScan(FileData fileData)
+		{
+			return new PointScan()
+			{
+				GeoCircle start;
+
+				boolean skipping = options.skipDistance != null;
+
+				boolean found;
+
+				@Override
+				public boolean accept(double latitude, double longitude, long time)
+				{
+					if (skipping) {
+						if (start == null) {
+							start = new GeoCircle(latitude, longitude, options.skipDistance);
+						}
+						if (start.contains(latitude, longitude)) {
+							return true;
+						}
+						skipping = false;
+					}
+					if (time != PointConsumer.NO_TIME && searchCircles.contains(latitude, longitude)) {
+						LocalDateTime timestamp = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDateTime();
+						fileData.attributes.put("foundPointLdt", timestamp);
+						found = true;
+						return false;
+					}
+					return true;
+				}
+
+				@Override
+				public boolean result()
+				{
+					return found;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Finds activities following the reference route.  The activity passes if its points within the corridor cover
+	 * at least minCoverage portion of the route length.  Each track segment and route is separate part of corridor,
+	 * the gaps between them are not required to be covered.
+	 */
+	public class FindCorridorFilter implements BiPredicate<FileData, Mutable<GPX>>, MetadataFilter, PureFilter, StreamingFilter
+	{
+		final double width;
+
+		final double minCoverage;
+
+		final CorridorGrid corridor;
+
+		final String routeSignature;
+
+		public FindCorridorFilter(Path route, double width, double minCoverage) throws IOException
+		{
+			GPX gpx = gpxLikeFiles.readGpxDecompressed(route);
+			List<List<double[]>> polylines = Stream.concat(
+					gpx.tracks().flatMap(Track::segments).map(TrackSegment::getPoints),
+					gpx.routes().map(Route::getPoints)
+				)
+				.map(points -> points.stream()
+					.map(point -> new double[]{ point.getLatitude().doubleValue(), point.getLongitude().doubleValue() })
+					.toList()
+				)
+				.toList();
+			this.width = width;
+			this.minCoverage = minCoverage;
+			this.corridor = CorridorGrid.ofPolylines(polylines, width);
+			this.routeSignature = Hashing.sha256().hashString(
+				polylines.stream()
+					.map(points -> points.stream().map(point -> point[0] + "," + point[1]).collect(Collectors.joining(":")))
+					.collect(Collectors.joining("|")),
+				StandardCharsets.UTF_8
+			).toString().substring(0, 32);
+		}
+
+		@Override
+		public Verdict testMetadata(FileData fileData)
+		{
+			CatalogEntry entry = fileData.catalogEntry;
+			if (entry != null && !(entry.hasBounds() &&
+				corridor.mayIntersectBox(entry.getMinLat(), entry.getMinLon(), entry.getMaxLat(), entry.getMaxLon()))) {
+				return Verdict.REJECT;
+			}
+			return Verdict.UNKNOWN;
+		}
+
+		@Override
+		public double estimatedCost()
+		{
+			// each point is checked against the segments of its grid cell only:
+			return 300;
+		}
+
+		@Override
+		public double estimatedSelectivity()
+		{
+			return 0.1;
+		}
+
+		@Override
+		public String signature()
+		{
+			return "find-corridor:" + routeSignature + ":width=" + width + ":coverage=" + minCoverage;
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			PointBlocks blocks = fileData.getPointBlocks(gpx.getValue());
+			CorridorGrid.Coverage coverage = corridor.newCoverage();
+			for (int i = 0; i < blocks.size(); ++i) {
+				coverage.add(blocks.getLatitude(i), blocks.getLongitude(i));
+			}
+			return coverage.fraction() >= minCoverage;
+		}
+
+		@Override
+		public PointScan startScan(FileData fileData)
+		{
+			return new PointScan()
+			{
+				final CorridorGrid.Coverage coverage = corridor.newCoverage();
+
+				@Override
+				public boolean accept(double latitude, double longitude, long time)
+				{
+					// once covered enough, the rest of points cannot change the verdict:
+					return !coverage.add(latitude, longitude) || coverage.fraction() < minCoverage;
+				}
+
+				@Override
+				public boolean result()
+				{
+					return coverage.fraction() >= minCoverage;
+				}
+			};
+		}
+	}
+
+	public class DismissIfInZoneFilter implements BiPredicate<FileData, Mutable<GPX>>, MetadataFilter, PureFilter, StreamingFilter
+	{
+		final double[][] searchPoints;
+
+		final CircleGrid searchCircles;
+
+		public DismissIfInZoneFilter(double[][] searchPoints)
+		{
+			this.searchPoints = searchPoints;
+			this.searchCircles = CircleGrid.of(searchPoints);
+		}
+
+		@Override
+		public Verdict testMetadata(FileData fileData)
+		{
+			CatalogEntry entry = fileData.catalogEntry;
+			if (entry != null && !(entry.hasBounds() && mayIntersect(entry, searchCircles))) {
+				return Verdict.ACCEPT;
+			}
+			if (isSpatiallyOutside(fileData, searchPoints)) {
+				return Verdict.ACCEPT;
+			}
+			return Verdict.UNKNOWN;
+		}
+
+		@Override
+		public double estimatedCost()
+		{
+			return 100 + 20 * searchPoints.length;
+		}
+
+		@Override
+		public double estimatedSelectivity()
+		{
+			return 0.9;
+		}
+
+		@Override
+		public String signature()
+		{
+			return "dismiss-if-in-zone:" + circlesSignature(searchPoints);
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			return fileData.getPointBlocks(gpx.getValue()).findFirstWithin(0, searchCircles, true, options.kernel, searchPool) < 0;
+		}
+
+		@Override
+		public boolean prefersMaterialized(FileData fileData)
+		{
+			return isParallelCandidate(fileData);
+		}
+
+		@Override
+		public PointScan startScan(FileData fileData)
+		{
+			return new PointScan()
+			{
+				boolean inZone;
+
+				@Override
+				public boolean accept(double latitude, double longitude, long time)
+				{
+					inZone = time != PointConsumer.NO_TIME && searchCircles.contains(latitude, longitude);
+					return !inZone;
+				}
+
+				@Override
+				public boolean result()
+				{
+					return !inZone;
+				}
+			};
+		}
+	}
+
+	public static class RemovePrivacyZoneFilter implements BiPredicate<FileData, Mutable<GPX>>, PointTransform
+	{
+		final GeoCircle privacyZone;
+
+		public RemovePrivacyZoneFilter(double[] privacyZone)
+		{
+			this.privacyZone = new GeoCircle(privacyZone[0], privacyZone[1], privacyZone[2]);
+		}
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			return transformPoints(gpx, List.of(this));
+		}
+
+		@Override
+		public void transform(List<List<WayPoint>> segments)
+		{
+			for (int i = 0; i < segments.size(); ++i) {
+				List<WayPoint> points = segments.get(i);
+				int start = 0;
+				while (start < points.size() && isInZone(points.get(start))) {
+					++start;
+				}
+				if (start > 0) {
+					segments.set(i, points.subList(start, points.size()));
+				}
+				if (start < points.size()) {
+					break;
+				}
+			}
+			for (int i = segments.size(); --i >= 0; ) {
+				List<WayPoint> points = segments.get(i);
+				int end = points.size();
+				while (end > 0 && isInZone(points.get(end - 1))) {
+					--end;
+				}
+				if (end < points.size()) {
+					segments.set(i, points.subList(0, end));
+				}
+				if (end > 0) {
+					break;
+				}
+			}
+		}
+
+		private boolean isInZone(WayPoint wayPoint)
+		{
+			return privacyZone.contains(wayPoint.getLatitude().doubleValue(), wayPoint.getLongitude().doubleValue());
+		}
+	}
+
+	@RequiredArgsConstructor
+	public static abstract class ModifyWaypointsFilter implements BiPredicate<FileData, Mutable<GPX>>, PointTransform
+	{
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			return transformPoints(gpx, List.of(this));
+		}
+
+		@Override
+		public void transform(List<List<WayPoint>> segments)
+		{
+			segments.replaceAll(this::modifyWayPoints);
+		}
+
+		public abstract List<WayPoint> modifyWayPoints(List<WayPoint> points);
+	}
+
+	@RequiredArgsConstructor
+	public static class DecreaseDensityFilter extends ModifyWaypointsFilter
+	{
+		final long intervalSeconds;
+
+		@Override
+		public List<WayPoint> modifyWayPoints(List<WayPoint> points)
+		{
+			List<WayPoint> out = new ArrayList<>();
 			Instant last = Instant.MIN;
 			int i = 0, len = points.size();
 			for (WayPoint wayPoint : points) {
@@ -530,6 +1696,18 @@ public class FindCommand extends AbstractCommand
 		}
 	}
 
+	@RequiredArgsConstructor
+	public static class SimplifyFilter extends ModifyWaypointsFilter
+	{
+		final double tolerance;
+
+		@Override
+		public List<WayPoint> modifyWayPoints(List<WayPoint> points)
+		{
+			return TrackSimplifier.simplify(points, tolerance);
+		}
+	}
+
 	@RequiredArgsConstructor
 	public static class RemoveExtensionsFilter extends ModifyWaypointsFilter
 	{
@@ -537,13 +1715,248 @@ public class FindCommand extends AbstractCommand
 		public List<WayPoint> modifyWayPoints(List<WayPoint> points)
 		{
 			return points.stream()
-				.map(p -> p.toBuilder().extensions(null).build())
+				.map(p -> p.getExtensions().isPresent() ? p.toBuilder().extensions(null).build() : p)
 				.toList();
 		}
 	}
 
+	/**
+	 * Chain of point transforms fused into single pass, the content is rebuilt once after all of them.
+	 */
+	@RequiredArgsConstructor
+	public static class TransformPointsFilter implements BiPredicate<FileData, Mutable<GPX>>
+	{
+		final List<PointTransform> transforms;
+
+		@Override
+		public boolean test(FileData fileData, Mutable<GPX> gpx)
+		{
+			return transformPoints(gpx, transforms);
+		}
+	}
+
+	/**
+	 * Applies the transforms to points of all segments and rebuilds the content once.  The empty segments and
+	 * tracks are removed, the segments and tracks with points untouched by transforms are reused as they are.
+	 *
+	 * @param gpx
+	 * 	content, replaced by transformed one
+	 * @param transforms
+	 * 	transforms to apply in order
+	 *
+	 * @return
+	 * 	true if any track remained.
+	 */
+	static boolean transformPoints(Mutable<GPX> gpx, List<PointTransform> transforms)
+	{
+		List<List<WayPoint>> points = new ArrayList<>();
+		for (Track track : gpx.getValue().getTracks()) {
+			for (TrackSegment segment : track.getSegments()) {
+				points.add(segment.getPoints());
+			}
+		}
+		for (PointTransform transform : transforms) {
+			transform.transform(points);
+		}
+		Iterator<List<WayPoint>> transformed = points.iterator();
+		List<Track> tracks = new ArrayList<>();
+		boolean gpxModified = false;
+		for (Track track : gpx.getValue().getTracks()) {
+			List<TrackSegment> segments = new ArrayList<>();
+			boolean trackModified = false;
+			for (TrackSegment segment : track.getSegments()) {
+				List<WayPoint> wayPoints = transformed.next();
+				if (wayPoints == segment.getPoints() && !wayPoints.isEmpty()) {
+					segments.add(segment);
+					continue;
+				}
+				trackModified = true;
+				if (!wayPoints.isEmpty()) {
+					segments.add(segment.toBuilder().points(wayPoints).build());
+				}
+			}
+			gpxModified |= trackModified || segments.isEmpty();
+			if (segments.isEmpty()) {
+				continue;
+			}
+			tracks.add(trackModified ? track.toBuilder().segments(segments).build() : track);
+		}
+		if (gpxModified) {
+			gpx.setValue(gpx.getValue().toBuilder().tracks(tracks).build());
+		}
+		return !tracks.isEmpty();
+	}
+
+	/**
+	 * Transform of points, which can be fused with other transforms into single pass over content.
+	 */
+	public interface PointTransform
+	{
+		/**
+		 * Transforms the points.
+		 *
+		 * @param segments
+		 * 	points of all segments of all tracks in document order, the transform replaces the elements with
+		 * 	transformed lists and must not modify the lists themselves
+		 */
+		void transform(List<List<WayPoint>> segments);
+	}
+
+	/**
+	 * Filter which can decide based on metadata, before the file is read.
+	 */
+	public interface MetadataFilter
+	{
+		/**
+		 * Evaluates the filter on metadata.
+		 *
+		 * @param fileData
+		 * 	file metadata
+		 *
+		 * @return
+		 * 	ACCEPT or REJECT if the filter can be decided without content, UNKNOWN otherwise.
+		 */
+		Verdict testMetadata(FileData fileData);
+	}
+
+	/**
+	 * Filter which does not modify the content, so it can be reordered with other pure filters.
+	 */
+	public interface PureFilter
+	{
+		/**
+		 * Estimates relative cost of evaluating the filter on content.
+		 *
+		 * @return
+		 * 	relative cost, 1 being the cost of checking single point.
+		 */
+		double estimatedCost();
+
+		/**
+		 * Estimates probability of file passing the filter.
+		 *
+		 * @return
+		 * 	probability between 0 and 1.
+		 */
+		double estimatedSelectivity();
+
+		/**
+		 * Indicates whether the filter sets attributes read by commands, so it must stay in declared order relative
+		 * to other order sensitive filters, the last one setting the final value.
+		 *
+		 * @return
+		 * 	true if the filter is order sensitive.
+		 */
+		default boolean isOrderSensitive()
+		{
+			return false;
+		}
+
+		/**
+		 * Gets canonical signature of the filter, used as key of memoized outcomes.
+		 *
+		 * @return
+		 * 	signature, equal for filters with equal outcomes.
+		 */
+		String signature();
+	}
+
+	/**
+	 * Filter which can be evaluated from streamed points, without materializing the content.
+	 */
+	public interface StreamingFilter
+	{
+		/**
+		 * Starts scanning of the file.
+		 *
+		 * @param fileData
+		 * 	scanned file
+		 *
+		 * @return
+		 * 	scan state consuming the points of file.
+		 */
+		PointScan startScan(FileData fileData);
+
+		/**
+		 * Checks whether the file is better evaluated on materialized content, by regular test.
+		 *
+		 * @param fileData
+		 * 	file to evaluate
+		 *
+		 * @return
+		 * 	true if the streaming should stop before this filter.
+		 */
+		default boolean prefersMaterialized(FileData fileData)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * State of streaming filter for single file.  The consumer returns false once the verdict is known.
+	 */
+	public interface PointScan extends PointConsumer
+	{
+		/**
+		 * Provides the verdict, after the scan stopped or reached end of content.
+		 *
+		 * @return
+		 * 	true if the file passes the filter.
+		 */
+		boolean result();
+	}
+
+	/**
+	 * Scan deciding by time of first timed point.
+	 */
+	@RequiredArgsConstructor
+	static class FirstTimeScan implements PointScan
+	{
+		final LongPredicate test;
+
+		boolean passed;
+
+		@Override
+		public boolean accept(double latitude, double longitude, long time)
+		{
+			if (time == PointConsumer.NO_TIME) {
+				return true;
+			}
+			passed = test.test(time);
+			return false;
+		}
+
+		@Override
+		public boolean result()
+		{
+			return passed;
+		}
+	}
+
+	public enum Verdict
+	{
+		ACCEPT,
+		REJECT,
+		UNKNOWN,
+	}
+
 	public static class Command
 	{
+		/**
+		 * Indicates whether the command needs the file content.
+		 *
+		 * @return
+		 * 	true if collectUnordered needs GPX content.
+		 */
+		public boolean needsGpx()
+		{
+			return false;
+		}
+
+		public void start()
+		{
+		}
+
 		public void collectUnordered(FileData fileData, GPX gpx)
 		{
 		}
@@ -555,6 +1968,22 @@ public class FindCommand extends AbstractCommand
 		public void finish()
 		{
 		}
+
+		/**
+		 * Releases resources when the processing fails, instead of finish().
+		 */
+		public void abort()
+		{
+		}
+	}
+
+	public static class PrintIdCommand extends Command
+	{
+		@Override
+		public void collectOrdered(FileData fileData)
+		{
+			System.out.println(fileData.id);
+		}
 	}
 
 	@RequiredArgsConstructor
@@ -562,52 +1991,227 @@ public class FindCommand extends AbstractCommand
 	{
 		final DateTimeFormatter formatter;
 
-		final ArrayList<Map.Entry<String, String>> fileAndTime = new ArrayList<>();
+		@Override
+		public void collectOrdered(FileData fileData)
+		{
+			String formatted = formatter.format(Optional.ofNullable((TemporalAccessor) fileData.attributes.get("foundPointLdt"))
+					.orElseThrow(() -> new IllegalStateException("foundPointLdt not found, missing --find-point filter")));
+			System.out.printf("%s\t%s\n",
+					fileData.id,
+					formatted);
+		}
+	}
+
+	@RequiredArgsConstructor
+	public static class GroupFoundTimeCommand extends Command
+	{
+		/** Maximum number of ids printed for group */
+		static final int SAMPLE_SIZE = 5;
+
+		final DateTimeFormatter formatter;
+
+		final Aggregation aggregation = new Aggregation(SAMPLE_SIZE, false);
 
 		@Override
 		public void collectOrdered(FileData fileData)
 		{
 			String formatted = formatter.format(Optional.ofNullable((TemporalAccessor) fileData.attributes.get("foundPointLdt"))
 					.orElseThrow(() -> new IllegalStateException("foundPointLdt not found, missing --find-point filter")));
-			fileAndTime.add(Map.entry(fileData.id, formatted));
+			aggregation.bucket(aggregation.keyOf(formatted)).add(fileData.id);
 		}
 
 		@Override
 		public void finish()
 		{
-			fileAndTime.forEach(e ->
-				System.out.printf("%s\t%s\n",
-						e.getKey(),
-						e.getValue())
-			);
+			aggregation.buckets().stream()
+				.map(e -> Map.entry(aggregation.labelOf(e.getKey()), e.getValue()))
+				.sorted(Map.Entry.comparingByKey())
+				.forEach(e -> {
+					System.out.printf("%s\t%d%s\n",
+							e.getKey(),
+							e.getValue().count(),
+							e.getValue().count() <= SAMPLE_SIZE ? "\t" + String.join("\t", e.getValue().sample()) : "");
+				});
 		}
 	}
 
-	@RequiredArgsConstructor
-	public static class GroupFoundTimeCommand extends Command
+	/**
+	 * Aggregates found activities into groups, counting them and computing statistics of point attribute.  The
+	 * group key is computed on CPU stage together with attribute statistics, the sample ids are collected in order.
+	 */
+	public class AggregateCommand extends Command
 	{
-		final DateTimeFormatter formatter;
+		/** Maximum number of ids printed for group */
+		static final int SAMPLE_SIZE = 5;
+
+		final GroupBy groupBy;
+
+		/** Attribute to compute statistics of, null for counting only */
+		final PointAttribute attribute;
+
+		/** Name of file attribute passing the group key to ordered collection */
+		final String keyAttribute;
+
+		final Aggregation aggregation;
+
+		AggregateCommand(GroupBy groupBy, PointAttribute attribute, String keyAttribute)
+		{
+			this.groupBy = groupBy;
+			this.attribute = attribute;
+			this.keyAttribute = keyAttribute;
+			this.aggregation = new Aggregation(SAMPLE_SIZE, attribute != null);
+		}
+
+		@Override
+		public boolean needsGpx()
+		{
+			return attribute != null || (groupBy.needsContent && options.sourceCatalog == null);
+		}
 
-		final ConcurrentHashMap<String, List<String>> counts = new ConcurrentHashMap<>();
+		@Override
+		public void collectUnordered(FileData fileData, GPX gpx)
+		{
+			int key = groupBy.key(fileData, gpx, aggregation);
+			fileData.attributes.put(keyAttribute, key);
+			if (attribute != null) {
+				Aggregation.Bucket bucket = aggregation.bucket(key);
+				attribute.forEachValue(gpx, bucket::record);
+			}
+		}
 
 		@Override
 		public void collectOrdered(FileData fileData)
 		{
-			String formatted = formatter.format(Optional.ofNullable((TemporalAccessor) fileData.attributes.get("foundPointLdt"))
-					.orElseThrow(() -> new IllegalStateException("foundPointLdt not found, missing --find-point filter")));
-			counts.computeIfAbsent(formatted, k -> new CopyOnWriteArrayList<>()).add(fileData.id);
+			aggregation.bucket((Integer) fileData.attributes.get(keyAttribute)).add(fileData.id);
 		}
 
 		@Override
 		public void finish()
 		{
-			counts.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> {
-				System.out.printf("%s\t%d%s\n",
-						e.getKey(),
-						e.getValue().size(),
-						e.getValue().size() <= 5 ? "\t" + String.join("\t", e.getValue()) : "");
-			});
+			aggregation.buckets().stream()
+				.sorted(groupBy.usesDictionary ?
+					Comparator.comparing(e -> aggregation.labelOf(e.getKey())) :
+					Map.Entry.comparingByKey())
+				.forEach(e -> {
+					Aggregation.Bucket bucket = e.getValue();
+					StringBuilder line = new StringBuilder()
+						.append(groupBy.usesDictionary ? aggregation.labelOf(e.getKey()) : groupBy.label(e.getKey()))
+						.append('\t').append(bucket.count());
+					if (attribute != null) {
+						Histogram histogram = bucket.histogram();
+						line.append(String.format(Locale.ROOT, "\t%.1f\t%.1f\t%.1f\t%.1f",
+							histogram.min(), histogram.percentile(50), histogram.percentile(90), histogram.max()));
+					}
+					if (bucket.count() <= SAMPLE_SIZE) {
+						line.append('\t').append(String.join("\t", bucket.sample()));
+					}
+					System.out.println(line);
+				});
+		}
+	}
+
+	/**
+	 * Grouping of found activities.  The time groups use the time value as key directly, the other ones map the
+	 * label to key through the dictionary of aggregation.
+	 */
+	public enum GroupBy
+	{
+		FOUND_HOUR("found-hour", false, false, 24),
+		FOUND_WEEKDAY("found-weekday", false, false, 7),
+		FOUND_MONTH("found-month", false, false, 12),
+		START_HOUR("start-hour", true, false, 24),
+		START_WEEKDAY("start-weekday", true, false, 7),
+		START_MONTH("start-month", true, false, 12),
+		SPORT("sport", true, true, 0),
+		DEVICE("device", true, true, 0),
+		;
+
+		final String name;
+
+		/** Whether the key is taken from content unless known from catalog */
+		final boolean needsContent;
+
+		final boolean usesDictionary;
+
+		/** Key of activities without known time, after all regular time keys */
+		final int unknownKey;
+
+		GroupBy(String name, boolean needsContent, boolean usesDictionary, int unknownKey)
+		{
+			this.name = name;
+			this.needsContent = needsContent;
+			this.usesDictionary = usesDictionary;
+			this.unknownKey = unknownKey;
+		}
+
+		static GroupBy of(String name)
+		{
+			for (GroupBy groupBy: values()) {
+				if (groupBy.name.equals(name)) {
+					return groupBy;
+				}
+			}
+			throw new IllegalArgumentException("--aggregate group must be one of found-hour, found-weekday, found-month, " +
+				"start-hour, start-weekday, start-month, sport, device, got: " + name);
+		}
+
+		int key(FileData fileData, GPX gpx, Aggregation aggregation)
+		{
+			switch (this) {
+			case SPORT:
+				return aggregation.keyOf(Optional.ofNullable(fileData.catalogEntry).map(CatalogEntry::getSport)
+					.or(() -> Optional.ofNullable(gpx).flatMap(content -> content.tracks().flatMap(track -> track.getType().stream()).findFirst()))
+					.orElse("unknown"));
+
+			case DEVICE:
+				return aggregation.keyOf(Optional.ofNullable(fileData.catalogEntry).map(CatalogEntry::getCreator)
+					.or(() -> Optional.ofNullable(gpx).map(GPX::getCreator))
+					.orElse("unknown"));
+
+			default:
+				LocalDateTime time = needsContent ? startTime(fileData, gpx) : (LocalDateTime) fileData.attributes.get("foundPointLdt");
+				if (time == null) {
+					if (!needsContent) {
+						throw new IllegalStateException("foundPointLdt not found, missing --find-point filter");
+					}
+					return unknownKey;
+				}
+				return switch (this) {
+					case FOUND_HOUR, START_HOUR -> time.getHour();
+					case FOUND_WEEKDAY, START_WEEKDAY -> time.getDayOfWeek().ordinal();
+					default -> time.getMonthValue() - 1;
+				};
+			}
+		}
+
+		String label(int key)
+		{
+			if (key == unknownKey) {
+				return "unknown";
+			}
+			return switch (this) {
+				case FOUND_HOUR, START_HOUR -> String.format("%02d", key);
+				case FOUND_WEEKDAY, START_WEEKDAY -> DayOfWeek.of(key + 1).toString();
+				default -> String.format("%02d", key + 1);
+			};
+		}
 
+		private static LocalDateTime startTime(FileData fileData, GPX gpx)
+		{
+			Optional<Instant> start = fileData.catalogEntry != null ?
+				Optional.ofNullable(fileData.catalogEntry.getStart()) :
+				Optional.ofNullable(gpx).flatMap(content -> content.tracks()
+					.flatMap(Track::segments)
+					.flatMap(TrackSegment::points)
+					.flatMap(point -> point.getTime().stream())
+					.findFirst());
+			return start.map(instant -> instant.atZone(ZoneId.systemDefault()).toLocalDateTime()).orElse(null);
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
 		}
 	}
 
@@ -616,17 +2220,51 @@ public class FindCommand extends AbstractCommand
 	{
 		final Path directory;
 
+		AsyncFileWriter writer;
+
+		@Override
+		public boolean needsGpx()
+		{
+			return true;
+		}
+
+		@Override
+		public void start()
+		{
+			int writers = Optional.ofNullable(options.exportWriters).orElse(4);
+			writer = new AsyncFileWriter(writers, writers * 4, options.exportGzip);
+		}
+
 		@Override
 		public void collectUnordered(FileData fileData, GPX gpx)
 		{
+			// serializing on the CPU worker, the file is written in background:
 			Path output = directory.resolve(fileData.id + ".gpx");
 			try {
-				gpxLikeFiles.writeGpx(output, gpx);
+				writer.write(output, gpxLikeFiles.serializeGpx(gpx));
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		@Override
+		public void finish()
+		{
+			try {
+				writer.close();
 			}
 			catch (IOException ex) {
 				throw new UncheckedIOException(ex);
 			}
 		}
+
+		@Override
+		public void abort()
+		{
+			// waits for already submitted files, so no writer thread or temporary file outlives the command:
+			finish();
+		}
 	}
 
 	public static class FileData
@@ -638,6 +2276,50 @@ public class FindCommand extends AbstractCommand
 		Map<String, Object> attributes = new LinkedHashMap<>();
 
 		Path filename;
+
+		String archiveEntry;
+
+		CatalogEntry catalogEntry;
+
+		/** Identity of file for memo, null if not needed yet */
+		FilterMemo.FileIdentity identity;
+
+		/** Filters whose outcome is recorded into memo */
+		Set<PureFilter> memoizedFilters = new HashSet<>();
+
+		/** Raw content loaded by I/O stage, null if not loaded or already processed */
+		byte[] content;
+
+		/** Name of file the content was loaded from, determining its format */
+		String contentName;
+
+		/** Possible range of start time, known from metadata before reading the file */
+		Range<Instant> startHint;
+
+		/** Content for which the pointBlocks were computed */
+		GPX pointBlocksSource;
+
+		PointBlocks pointBlocks;
+
+		/**
+		 * Gets the points split into blocks with bounding boxes, shared by the filters until content is modified.
+		 *
+		 * @param gpx
+		 * 	current content
+		 *
+		 * @return
+		 * 	blocks of points.
+		 */
+		PointBlocks getPointBlocks(GPX gpx)
+		{
+			if (pointBlocksSource != gpx) {
+				pointBlocks = PointBlocks.of(gpx);
+				pointBlocksSource = gpx;
+			}
+			return pointBlocks;
+		}
+
+		List<BiPredicate<FileData, Mutable<GPX>>> pendingFilters;
 	}
 
 	public static class Options
@@ -646,8 +2328,34 @@ public class FindCommand extends AbstractCommand
 
 		String sourceStravaCsv;
 
+		String sourceCatalog;
+
+		String spatialIndex;
+
+		List<String> includes = new ArrayList<>();
+
+		List<String> excludes = new ArrayList<>();
+
 		Double skipDistance;
 
+		CircleKernel kernel = CircleKernel.of("auto");
+
+		String memo;
+
+		boolean filenameDates;
+
+		boolean unordered;
+
+		Integer threads;
+
+		Integer ioThreads;
+
+		Integer maxInflight;
+
+		Integer exportWriters;
+
+		boolean exportGzip;
+
 		List<BiPredicate<FileData, Mutable<GPX>>> filters = new ArrayList<>();
 
 		List<Command> commands = new ArrayList<>();
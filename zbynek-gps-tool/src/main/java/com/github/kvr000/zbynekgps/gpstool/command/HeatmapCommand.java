@@ -0,0 +1,307 @@
+package com.github.kvr000.zbynekgps.gpstool.command;
+
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.catalog.CatalogEntry;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.github.kvr000.zbynekgps.gpstool.heatmap.HeatmapGrid;
+import com.github.kvr000.zbynekgps.gpstool.heatmap.HeatmapRenderer;
+import com.github.kvr000.zbynekgps.gpstool.util.StagedPipeline;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.cmdline.command.AbstractCommand;
+import net.dryuf.cmdline.command.CommandContext;
+import org.apache.commons.lang3.tuple.Pair;
+
+import jakarta.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+
+/**
+ * Renders heatmap of all activities.  The activities are streamed point by point, the segments between points are
+ * rasterized into {@link HeatmapGrid} and the grid is written as PNG or tile pyramid.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class HeatmapCommand extends AbstractCommand
+{
+	final GpxLikeFiles gpxLikeFiles;
+
+	final GpxLikeDiscovery gpxLikeDiscovery;
+
+	final ActivityCatalogs activityCatalogs;
+
+	Options options;
+
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+		case "--source-dir":
+			options.sourceDir = needArgsParam(options.sourceDir, args);
+			return true;
+
+		case "--source-catalog":
+			options.sourceCatalog = needArgsParam(options.sourceCatalog, args);
+			return true;
+
+		case "--include":
+			options.includes.add(needArgsParam(null, args));
+			return true;
+
+		case "--exclude":
+			options.excludes.add(needArgsParam(null, args));
+			return true;
+
+		case "--zoom":
+			options.zoom = Integer.parseInt(needArgsParam(options.zoom, args));
+			return true;
+
+		case "--min-zoom":
+			options.minZoom = Integer.parseInt(needArgsParam(options.minZoom, args));
+			return true;
+
+		case "--bounds":
+			String[] boundsStr = needArgsParam(null, args).split(",");
+			if (boundsStr.length != 4) {
+				throw new IllegalArgumentException("--bounds requires argument minLat,minLon,maxLat,maxLon");
+			}
+			options.bounds = Stream.of(boundsStr).mapToDouble(Double::parseDouble).toArray();
+			return true;
+
+		case "--output-png":
+			options.outputPng = needArgsParam(options.outputPng, args);
+			return true;
+
+		case "--output-tiles":
+			options.outputTiles = needArgsParam(options.outputTiles, args);
+			return true;
+
+		case "--grid-dir":
+			options.gridDir = needArgsParam(options.gridDir, args);
+			return true;
+
+		case "--threads":
+			options.threads = Integer.parseInt(needArgsParam(options.threads, args));
+			return true;
+
+		case "--io-threads":
+			options.ioThreads = Integer.parseInt(needArgsParam(options.ioThreads, args));
+			return true;
+
+		case "--max-inflight":
+			options.maxInflight = Integer.parseInt(needArgsParam(options.maxInflight, args));
+			return true;
+
+		default:
+			return super.parseOption(context, arg, args);
+		}
+	}
+
+	@Override
+	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
+	{
+		if ((options.sourceDir == null) == (options.sourceCatalog == null)) {
+			return usage(context, "One of --source-dir or --source-catalog must be specified");
+		}
+		if (options.zoom == null) {
+			return usage(context, "--zoom must be specified");
+		}
+		if (options.outputPng == null && options.outputTiles == null) {
+			return usage(context, "One of --output-png or --output-tiles must be specified");
+		}
+		if (options.bounds == null && options.sourceCatalog == null) {
+			return usage(context, "--bounds must be specified unless reading from --source-catalog");
+		}
+		if (options.minZoom != null && (options.outputTiles == null || options.minZoom > options.zoom || options.minZoom < 0)) {
+			return usage(context, "--min-zoom requires --output-tiles and must be between 0 and --zoom");
+		}
+		return EXIT_CONTINUE;
+	}
+
+	@Override
+	protected void createOptions(CommandContext context)
+	{
+		this.options = new Options();
+	}
+
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.<String, String>builder()
+			.put("--source-dir directory", "read files from the directory")
+			.put("--source-catalog file", "read files from catalog created by catalog command")
+			.put("--include glob", "includes only files matching the glob within source directory, can be repeated")
+			.put("--exclude glob", "excludes files and directories matching the glob within source directory, can be repeated")
+			.put("--zoom level", "Web Mercator zoom level of heatmap, 256 * 2^level pixels around the world")
+			.put("--bounds minLat,minLon,maxLat,maxLon", "area of heatmap, default bounding box of catalog activities")
+			.put("--output-png file", "writes heatmap into single PNG file")
+			.put("--output-tiles directory", "writes heatmap into directory/zoom/x/y.png tiles")
+			.put("--min-zoom level", "writes also tiles of lower zoom levels down to this one, default --zoom")
+			.put("--grid-dir directory", "directory of memory mapped grid file, default the output directory")
+			.put("--threads number", "number of threads rasterizing files, default number of processors")
+			.put("--io-threads number", "number of concurrent file reads, default twice the threads")
+			.put("--max-inflight number", "maximum number of files being processed at once, default four times the threads")
+			.build();
+	}
+
+	protected Map<String, String> configParametersDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+		);
+	}
+
+	@Override
+	public int execute() throws Exception
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+
+		List<CatalogEntry> entries = options.sourceCatalog == null ? null :
+			activityCatalogs.read(Paths.get(options.sourceCatalog)).validEntries();
+		double[] bounds = options.bounds != null ? options.bounds : catalogBounds(entries);
+		if (bounds == null) {
+			log.error("No activity with points found in catalog: {}", options.sourceCatalog);
+			return EXIT_SUCCESS;
+		}
+
+		Stream<Path> files = entries != null ?
+			entries.stream().map(CatalogEntry::getPath) :
+			gpxLikeDiscovery.discover(Paths.get(options.sourceDir), options.includes, options.excludes)
+				.map(GpxLikeDiscovery.DiscoveredFile::getPath);
+
+		// the default temporary directory is often tmpfs, where the grid would take memory:
+		Path gridDir = options.gridDir != null ? Paths.get(options.gridDir) :
+			options.outputTiles != null ? Paths.get(options.outputTiles) :
+			Paths.get(options.outputPng).toAbsolutePath().getParent();
+		Files.createDirectories(gridDir);
+		try (HeatmapGrid grid = HeatmapGrid.create(gridDir, options.zoom, bounds[0], bounds[1], bounds[2], bounds[3])) {
+			AtomicLong count = new AtomicLong();
+			AtomicLong pixels = new AtomicLong();
+			ThreadLocal<HeatmapGrid.Rasterizer> rasterizers = ThreadLocal.withInitial(grid::newRasterizer);
+			// reading files on I/O stage, rasterizing on CPU stage directly from streamed points:
+			StagedPipeline<Path, Pair<Path, byte[]>, Path> pipeline = new StagedPipeline<>(
+				"heatmap",
+				StagedPipeline.Config.of(options.threads, options.ioThreads, options.maxInflight),
+				file -> {
+					try {
+						return Pair.of(file, Files.readAllBytes(file));
+					}
+					catch (IOException ex) {
+						log.error("Failed to read file: " + file + " : " + ex.getMessage(), ex);
+						return null;
+					}
+				},
+				p -> {
+					HeatmapGrid.Rasterizer rasterizer = rasterizers.get();
+					try {
+						gpxLikeFiles.scanPointsDecompressed(new ByteArrayInputStream(p.getRight()), p.getLeft().getFileName().toString(),
+							(latitude, longitude, time) -> {
+								rasterizer.add(latitude, longitude);
+								return true;
+							});
+					}
+					catch (IOException ex) {
+						log.error("Failed to read file: " + p.getLeft() + " : " + ex.getMessage(), ex);
+					}
+					pixels.addAndGet(rasterizer.finish());
+					return p.getLeft();
+				},
+				file -> count.incrementAndGet()
+			);
+			try (files) {
+				pipeline.run(files);
+			}
+			log.info("Rasterized files in: count={} pixels={} time={} ms", count, pixels, watch.elapsed(TimeUnit.MILLISECONDS));
+
+			HeatmapRenderer renderer = new HeatmapRenderer(grid.max());
+			if (options.outputPng != null) {
+				renderer.writePng(grid, Paths.get(options.outputPng));
+			}
+			if (options.outputTiles != null) {
+				Path directory = Paths.get(options.outputTiles);
+				renderer.writeTiles(grid, directory);
+				HeatmapGrid level = grid;
+				for (int zoom = options.zoom - 1; zoom >= (options.minZoom == null ? options.zoom : options.minZoom); --zoom) {
+					HeatmapGrid lower = level.downsample();
+					if (level != grid) {
+						level.close();
+					}
+					level = lower;
+					renderer.writeTiles(level, directory);
+				}
+				if (level != grid) {
+					level.close();
+				}
+			}
+		}
+
+		log.info("Rendered heatmap in: time={} ms", watch.elapsed(TimeUnit.MILLISECONDS));
+		return EXIT_SUCCESS;
+	}
+
+	/**
+	 * Computes bounding box of all catalog entries.
+	 *
+	 * @param entries
+	 * 	catalog entries
+	 *
+	 * @return
+	 * 	minLat, minLon, maxLat, maxLon or null if no entry has points.
+	 */
+	static double[] catalogBounds(List<CatalogEntry> entries)
+	{
+		double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (CatalogEntry entry: entries) {
+			if (Double.isNaN(entry.getMinLat())) {
+				continue;
+			}
+			bounds[0] = Math.min(bounds[0], entry.getMinLat());
+			bounds[1] = Math.min(bounds[1], entry.getMinLon());
+			bounds[2] = Math.max(bounds[2], entry.getMaxLat());
+			bounds[3] = Math.max(bounds[3], entry.getMaxLon());
+		}
+		return bounds[0] > bounds[2] ? null : bounds;
+	}
+
+	public static class Options
+	{
+		String sourceDir;
+
+		String sourceCatalog;
+
+		List<String> includes = new ArrayList<>();
+
+		List<String> excludes = new ArrayList<>();
+
+		Integer zoom;
+
+		Integer minZoom;
+
+		double[] bounds;
+
+		String outputPng;
+
+		String outputTiles;
+
+		String gridDir;
+
+		Integer threads;
+
+		Integer ioThreads;
+
+		Integer maxInflight;
+	}
+}
@@ -0,0 +1,316 @@
+package com.github.kvr000.zbynekgps.gpstool.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxRepo;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxRepoFactory;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import io.jenetics.jpx.Point;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import net.dryuf.cmdline.command.AbstractCommand;
+import net.dryuf.cmdline.command.CommandContext;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+
+/**
+ * Locates positions for list of timestamps.
+ *
+ * The timestamps are sorted and processed in increasing order, so the repository files are decoded once and
+ * searched from the last position, the results are written in the original order.  The time index is taken from
+ * the catalog, or with --source-dir built by streaming scan of first and last point time, without decoding the
+ * files into memory.
+ */
+@Log4j2
+@RequiredArgsConstructor(onConstructor = @__(@Inject))
+public class LocateCommand extends AbstractCommand
+{
+	private static final List<String> LOCATION_COLUMNS = List.of("lat", "lon", "ele", "method", "file");
+
+	final GpxRepoFactory gpxRepoFactory;
+
+	final ActivityCatalogs activityCatalogs;
+
+	final ZbynekGpsTool.Options mainOptions;
+
+	Options options;
+
+	@Override
+	protected boolean parseOption(CommandContext context, String arg, ListIterator<String> args) throws Exception
+	{
+		switch (arg) {
+		case "--source-dir":
+			options.sourceDir = needArgsParam(options.sourceDir, args);
+			return true;
+
+		case "--source-catalog":
+			options.sourceCatalog = needArgsParam(options.sourceCatalog, args);
+			return true;
+
+		case "--input":
+			options.input = needArgsParam(options.input, args);
+			return true;
+
+		case "--time-column":
+			options.timeColumn = needArgsParam(options.timeColumn, args);
+			return true;
+
+		case "--zone":
+			options.zone = ZoneId.of(needArgsParam(null, args));
+			return true;
+
+		case "--max-gap":
+			options.maxGapMs = (long) (Double.parseDouble(needArgsParam(null, args)) * 1000);
+			return true;
+
+		case "--tolerance":
+			options.toleranceMs = (long) (Double.parseDouble(needArgsParam(null, args)) * 1000);
+			return true;
+
+		case "--format":
+			options.format = needArgsParam(null, args);
+			if (!options.format.equals("csv") && !options.format.equals("jsonl")) {
+				throw new IllegalArgumentException("--format requires csv or jsonl, got: " + options.format);
+			}
+			return true;
+
+		default:
+			return super.parseOption(context, arg, args);
+		}
+	}
+
+	@Override
+	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
+	{
+		if ((options.sourceDir == null) == (options.sourceCatalog == null)) {
+			return usage(context, "One of --source-dir or --source-catalog must be specified");
+		}
+		if (options.input == null) {
+			return usage(context, "--input must be specified");
+		}
+		return EXIT_CONTINUE;
+	}
+
+	@Override
+	protected void createOptions(CommandContext context)
+	{
+		this.options = new Options();
+	}
+
+	@Override
+	protected Map<String, String> configOptionsDescription(CommandContext context)
+	{
+		return ImmutableMap.<String, String>builder()
+			.put("--source-dir directory", "read files from the directory")
+			.put("--source-catalog file", "read files from the catalog instead of directory")
+			.put("--input file", "timestamps, one per line, or CSV file if --time-column is specified")
+			.put("--time-column name", "name of CSV column containing the timestamp")
+			.put("--zone zone-id", "time zone of timestamps without zone, default is system zone")
+			.put("--max-gap seconds", "maximum time between points to interpolate position, default 60")
+			.put("--tolerance seconds", "maximum time distance of nearest point if not interpolated, default 10")
+			.put("--format csv|jsonl", "output format, default csv")
+			.build();
+	}
+
+	protected Map<String, String> configParametersDescription(CommandContext context)
+	{
+		return ImmutableMap.of(
+		);
+	}
+
+	@Override
+	public int execute() throws Exception
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+
+		List<String> inputColumns = new ArrayList<>();
+		List<Request> requests = readRequests(inputColumns);
+
+		final GpxRepo repo = options.sourceCatalog != null ?
+			gpxRepoFactory.fromCatalog(activityCatalogs.read(Paths.get(options.sourceCatalog))) :
+			gpxRepoFactory.fromDir(Paths.get(options.sourceDir), List.of(), List.of());
+
+		// merge join sorted timestamps with time ordered files, each file is decoded once:
+		GpxRepo.Location[] locations = new GpxRepo.Location[requests.size()];
+		GpxRepo.Cursor cursor = repo.cursor();
+		requests.stream()
+			.filter(request -> request.getTime() != null)
+			.sorted(Comparator.comparing(request -> request.getTime()))
+			.forEachOrdered(request -> locations[request.getOrder()] =
+				cursor.locateEpochMilli(request.getTime().toEpochMilli(), options.maxGapMs, options.toleranceMs));
+
+		writeResults(inputColumns, requests, locations);
+
+		CacheStats cacheStats = repo.getCacheStats();
+		log.info("Located timestamps in: count={} found={} loads={} time={} ms",
+			requests.size(), Stream.of(locations).filter(l -> l != null).count(), cacheStats.loadCount(),
+			watch.elapsed(TimeUnit.MILLISECONDS));
+
+		return EXIT_SUCCESS;
+	}
+
+	private List<Request> readRequests(List<String> inputColumns) throws IOException
+	{
+		List<Request> requests = new ArrayList<>();
+		if (options.timeColumn != null) {
+			try (Reader reader = Files.newBufferedReader(Paths.get(options.input));
+			     CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)
+			) {
+				if (!parser.getHeaderNames().contains(options.timeColumn)) {
+					throw new IllegalArgumentException("Time column not found in input: " + options.timeColumn);
+				}
+				inputColumns.addAll(parser.getHeaderNames());
+				for (CSVRecord record: parser) {
+					requests.add(new Request(requests.size(), parseTime(record.get(options.timeColumn)), record.values()));
+				}
+			}
+		}
+		else {
+			inputColumns.add("time");
+			try (Stream<String> lines = Files.lines(Paths.get(options.input))) {
+				lines.map(String::trim)
+					.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+					.forEachOrdered(line -> requests.add(new Request(requests.size(), parseTime(line), new String[]{ line })));
+			}
+		}
+		return requests;
+	}
+
+	private void writeResults(List<String> inputColumns, List<Request> requests, GpxRepo.Location[] locations) throws IOException
+	{
+		try (Writer writer = mainOptions.getOutput() != null ?
+			Files.newBufferedWriter(Paths.get(mainOptions.getOutput())) :
+			new OutputStreamWriter(CloseShieldOutputStream.wrap(System.out), StandardCharsets.UTF_8)
+		) {
+			if (options.format.equals("jsonl")) {
+				ObjectMapper objectMapper = new ObjectMapper();
+				for (Request request: requests) {
+					Map<String, Object> row = new LinkedHashMap<>();
+					for (int i = 0; i < inputColumns.size(); ++i) {
+						row.put(inputColumns.get(i), i < request.getValues().length ? request.getValues()[i] : null);
+					}
+					List<Object> located = formatLocation(locations[request.getOrder()]);
+					for (int i = 0; i < LOCATION_COLUMNS.size(); ++i) {
+						row.put(LOCATION_COLUMNS.get(i), located.get(i));
+					}
+					writer.write(objectMapper.writeValueAsString(row));
+					writer.write('\n');
+				}
+			}
+			else {
+				List<String> header = new ArrayList<>(inputColumns);
+				header.addAll(LOCATION_COLUMNS);
+				try (CSVPrinter printer = CSVFormat.DEFAULT.withHeader(header.toArray(String[]::new)).print(writer)) {
+					for (Request request: requests) {
+						List<Object> row = new ArrayList<>(Arrays.asList(request.getValues()));
+						row.addAll(formatLocation(locations[request.getOrder()]));
+						printer.printRecord(row);
+					}
+				}
+			}
+		}
+	}
+
+	private static List<Object> formatLocation(GpxRepo.Location location)
+	{
+		if (location == null) {
+			return Arrays.asList(null, null, null, "none", null);
+		}
+		Point point = location.getPoint();
+		return Arrays.asList(
+			point.getLatitude().doubleValue(),
+			point.getLongitude().doubleValue(),
+			point.getElevation().map(Number::doubleValue).orElse(null),
+			location.getMethod().name().toLowerCase(),
+			location.getPath().toString()
+		);
+	}
+
+	/**
+	 * Parses the timestamp, either epoch milliseconds, instant or local date time in configured zone.
+	 *
+	 * @param value
+	 * 	timestamp string
+	 *
+	 * @return
+	 * 	parsed time or null if not parseable.
+	 */
+	Instant parseTime(String value)
+	{
+		String trimmed = value.trim();
+		try {
+			if (!trimmed.isEmpty() && trimmed.chars().allMatch(Character::isDigit)) {
+				return Instant.ofEpochMilli(Long.parseLong(trimmed));
+			}
+			try {
+				return Instant.parse(trimmed);
+			}
+			catch (DateTimeParseException ex) {
+				return LocalDateTime.parse(trimmed.replace(' ', 'T')).atZone(options.zone).toInstant();
+			}
+		}
+		catch (DateTimeParseException|NumberFormatException ex) {
+			log.warn("Cannot parse timestamp, skipping: {}", value);
+			return null;
+		}
+	}
+
+	@Value
+	static class Request
+	{
+		int order;
+
+		Instant time;
+
+		String[] values;
+	}
+
+	public static class Options
+	{
+		String sourceDir;
+
+		String sourceCatalog;
+
+		String input;
+
+		String timeColumn;
+
+		ZoneId zone = ZoneId.systemDefault();
+
+		long maxGapMs = 60_000;
+
+		long toleranceMs = 10_000;
+
+		String format = "csv";
+	}
+}
@@ -1,37 +1,54 @@
 package com.github.kvr000.zbynekgps.gpstool.command;
 
 import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
-import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.catalog.CatalogEntry;
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleKernel;
 import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxRepo;
 import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxRepoFactory;
 import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.github.kvr000.zbynekgps.gpstool.util.StagedPipeline;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import net.dryuf.cmdline.command.AbstractCommand;
 import net.dryuf.cmdline.command.CommandContext;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import jakarta.inject.Inject;
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 
 @Log4j2
 @RequiredArgsConstructor(onConstructor = @__(@Inject))
 public class MatchCommand extends AbstractCommand
 {
+	/** Maximum distance of points at the same time, in meters */
+	private static final double MATCH_RADIUS = 50;
+
 	final GpxLikeFiles gpxLikeFiles;
+	final GpxLikeDiscovery gpxLikeDiscovery;
 	final GpxRepoFactory gpxRepoFactory;
+	final ActivityCatalogs activityCatalogs;
 
 	Options options;
 
@@ -47,6 +64,38 @@ public class MatchCommand extends AbstractCommand
 			options.sourceDir2 = needArgsParam(options.sourceDir2, args);
 			return true;
 
+		case "--source-catalog-1":
+			options.sourceCatalog1 = needArgsParam(options.sourceCatalog1, args);
+			return true;
+
+		case "--source-catalog-2":
+			options.sourceCatalog2 = needArgsParam(options.sourceCatalog2, args);
+			return true;
+
+		case "--include":
+			options.includes.add(needArgsParam(null, args));
+			return true;
+
+		case "--exclude":
+			options.excludes.add(needArgsParam(null, args));
+			return true;
+
+		case "--kernel":
+			options.kernel = CircleKernel.of(needArgsParam(null, args));
+			return true;
+
+		case "--threads":
+			options.threads = Integer.parseInt(needArgsParam(options.threads, args));
+			return true;
+
+		case "--io-threads":
+			options.ioThreads = Integer.parseInt(needArgsParam(options.ioThreads, args));
+			return true;
+
+		case "--max-inflight":
+			options.maxInflight = Integer.parseInt(needArgsParam(options.maxInflight, args));
+			return true;
+
 		default:
 			return super.parseOption(context, arg, args);
 		}
@@ -55,8 +104,11 @@ public class MatchCommand extends AbstractCommand
 	@Override
 	protected int validateOptions(CommandContext context, ListIterator<String> args) throws Exception
 	{
-		if ((options.sourceDir1 == null) || (options.sourceDir2 == null)) {
-			return usage(context, "--source-dir-1 and --source-dir-2 must be specified");
+		if ((options.sourceDir1 == null) == (options.sourceCatalog1 == null)) {
+			return usage(context, "One of --source-dir-1 or --source-catalog-1 must be specified");
+		}
+		if ((options.sourceDir2 == null) == (options.sourceCatalog2 == null)) {
+			return usage(context, "One of --source-dir-2 or --source-catalog-2 must be specified");
 		}
 		return EXIT_CONTINUE;
 	}
@@ -70,10 +122,18 @@ public class MatchCommand extends AbstractCommand
 	@Override
 	protected Map<String, String> configOptionsDescription(CommandContext context)
 	{
-		return ImmutableMap.of(
-				"--source-dir-1 directory", "read files from the directory",
-				"--source-dir-2 directory", "read files from the directory"
-		);
+		return ImmutableMap.<String, String>builder()
+				.put("--source-dir-1 directory", "read files from the directory")
+				.put("--source-dir-2 directory", "read files from the directory")
+				.put("--source-catalog-1 file", "read files from the catalog instead of directory")
+				.put("--source-catalog-2 file", "read files from the catalog instead of directory")
+				.put("--include glob", "includes only files matching the glob within source directories, can be repeated")
+				.put("--exclude glob", "excludes files and directories matching the glob within source directories, can be repeated")
+				.put("--kernel scalar|vector|auto", "kernel evaluating distance of matched points, default auto")
+				.put("--threads number", "number of threads parsing and matching files, default number of processors")
+				.put("--io-threads number", "number of concurrent file reads, default twice the threads")
+				.put("--max-inflight number", "maximum number of files being processed at once, default four times the threads")
+				.build();
 	}
 
 	protected Map<String, String> configParametersDescription(CommandContext context)
@@ -87,36 +147,137 @@ public class MatchCommand extends AbstractCommand
 	{
 		Stopwatch watch = Stopwatch.createStarted();
 
-		final GpxRepo two = gpxRepoFactory.fromDir(Paths.get(options.sourceDir2));
-
-		List<Path> oneFiles = FileUtils.listFiles(Paths.get(options.sourceDir1).toFile(), new String[]{".gpx", ".gpx.gz", ".fit", ".fit.gz"}, false).stream()
-			.map(File::toPath)
-			.toList();
-
-		oneFiles.parallelStream()
-			.map(file -> Pair.of(file, gpxLikeFiles.readGpxLikeSafe(file)))
-			.filter(p -> p.getRight() != null)
-			.map(p -> GpxUtil.expandToTimedWaypoints(p.getRight()).stream()
-				.map(wp -> Pair.of(wp, two.getEpochMilli(wp.getTime().get().toEpochMilli())))
-				.filter(pp -> pp.getRight() != null)
-				.filter(pp -> GeoCalc.isWithinRadius(pp.getLeft(), pp.getRight().getLeft(), 50))
-				.findFirst()
-				.map(pp -> Pair.of(pp.getLeft().getTime(), Pair.of(p.getLeft(), pp.getRight().getRight())))
-			)
-			.filter(Optional::isPresent)
-			.map(Optional::get)
-			.forEachOrdered(found -> System.out.println(String.format("Found matching activity: time=%s source1=%s source2=%s",
-					found.getLeft().get(), found.getRight().getLeft(), found.getRight().getRight()))
-			);
-
-		log.info("Analyzed files in: count={} time={} ms", oneFiles.size(), watch.elapsed(TimeUnit.MILLISECONDS));
+		final GpxRepo two = options.sourceCatalog2 != null ?
+			gpxRepoFactory.fromCatalog(activityCatalogs.read(Paths.get(options.sourceCatalog2))) :
+			gpxRepoFactory.fromDir(Paths.get(options.sourceDir2), options.includes, options.excludes);
+
+		Stream<Path> oneFiles = options.sourceCatalog1 != null ?
+			activityCatalogs.read(Paths.get(options.sourceCatalog1)).validEntries().stream()
+				.map(CatalogEntry::getPath) :
+			gpxLikeDiscovery.discover(Paths.get(options.sourceDir1), options.includes, options.excludes)
+				.map(GpxLikeDiscovery.DiscoveredFile::getPath);
+
+		AtomicLong count = new AtomicLong();
+		// reading files on I/O stage, decoding and matching on CPU stage, printing in order on this thread:
+		StagedPipeline<Path, Pair<Path, byte[]>, Pair<Optional<Instant>, Pair<Path, Path>>> pipeline = new StagedPipeline<>(
+			"match",
+			StagedPipeline.Config.of(options.threads, options.ioThreads, options.maxInflight),
+			file -> {
+				count.incrementAndGet();
+				try {
+					return Pair.of(file, Files.readAllBytes(file));
+				}
+				catch (IOException ex) {
+					log.error("Failed to read file: " + file + " : " + ex.getMessage(), ex);
+					return null;
+				}
+			},
+			p -> {
+				GPX gpx;
+				try {
+					gpx = gpxLikeFiles.readGpxDecompressed(new ByteArrayInputStream(p.getRight()), p.getLeft().getFileName().toString());
+				}
+				catch (IOException ex) {
+					log.error("Failed to read file: " + p.getLeft() + " : " + ex.getMessage(), ex);
+					return null;
+				}
+				return findMatch(gpx, two)
+					.map(pp -> Pair.of(pp.getLeft().getTime(), Pair.of(p.getLeft(), pp.getRight().getRight())))
+					.orElse(null);
+			},
+			found -> System.out.println(String.format("Found matching activity: time=%s source1=%s source2=%s",
+				found.getLeft().get(), found.getRight().getLeft(), found.getRight().getRight()))
+		);
+		try (oneFiles) {
+			pipeline.run(oneFiles);
+		}
+
+		log.info("Analyzed files in: count={} time={} ms", count, watch.elapsed(TimeUnit.MILLISECONDS));
+		CacheStats cacheStats = two.getCacheStats();
+		log.info("Repo cache: hits={} misses={} loads={} evictions={} loadTime={} ms",
+			cacheStats.hitCount(), cacheStats.missCount(), cacheStats.loadCount(), cacheStats.evictionCount(),
+			TimeUnit.NANOSECONDS.toMillis(cacheStats.totalLoadTime()));
 
 		return EXIT_SUCCESS;
 	}
 
+	/**
+	 * Finds first point matching the point of repository at the same time.  The pairs of points are collected into
+	 * batches and evaluated by the kernel.
+	 *
+	 * @param gpx
+	 * 	content to match
+	 * @param two
+	 * 	repository to match against
+	 *
+	 * @return
+	 * 	first matching point and the matched point of repository with its file, empty if not found.
+	 */
+	private Optional<Pair<WayPoint, Pair<WayPoint, Path>>> findMatch(GPX gpx, GpxRepo two)
+	{
+		// the points are in increasing time order, the cursor gallops from the last position:
+		GpxRepo.Cursor cursor = two.cursor();
+		PairBatch batch = new PairBatch();
+		for (WayPoint point: GpxUtil.expandToTimedWaypoints(gpx)) {
+			for (Pair<WayPoint, Path> other: cursor.getAllEpochMilli(point.getTime().get().toEpochMilli())) {
+				if (batch.size == PairBatch.CAPACITY) {
+					Optional<Pair<WayPoint, Pair<WayPoint, Path>>> found = batch.findFirst(options.kernel);
+					if (found.isPresent()) {
+						return found;
+					}
+					batch.clear();
+				}
+				batch.add(point, other);
+			}
+		}
+		return batch.findFirst(options.kernel);
+	}
+
+	static class PairBatch
+	{
+		static final int CAPACITY = 4 * CircleKernel.MASK_SIZE;
+
+		final double[] latitudes1 = new double[CAPACITY];
+		final double[] longitudes1 = new double[CAPACITY];
+		final double[] latitudes2 = new double[CAPACITY];
+		final double[] longitudes2 = new double[CAPACITY];
+		final List<Pair<WayPoint, Pair<WayPoint, Path>>> pairs = new ArrayList<>(CAPACITY);
+		int size;
+
+		void add(WayPoint point, Pair<WayPoint, Path> other)
+		{
+			latitudes1[size] = point.getLatitude().doubleValue();
+			longitudes1[size] = point.getLongitude().doubleValue();
+			latitudes2[size] = other.getLeft().getLatitude().doubleValue();
+			longitudes2[size] = other.getLeft().getLongitude().doubleValue();
+			pairs.add(Pair.of(point, other));
+			++size;
+		}
+
+		Optional<Pair<WayPoint, Pair<WayPoint, Path>>> findFirst(CircleKernel kernel)
+		{
+			int found = kernel.findFirstPairWithin(latitudes1, longitudes1, latitudes2, longitudes2, 0, size, MATCH_RADIUS);
+			return found < 0 ? Optional.empty() : Optional.of(pairs.get(found));
+		}
+
+		void clear()
+		{
+			pairs.clear();
+			size = 0;
+		}
+	}
+
 	public static class Options
 	{
 		String sourceDir1;
 		String sourceDir2;
+		String sourceCatalog1;
+		String sourceCatalog2;
+		List<String> includes = new ArrayList<>();
+		List<String> excludes = new ArrayList<>();
+		CircleKernel kernel = CircleKernel.of("auto");
+		Integer threads;
+		Integer ioThreads;
+		Integer maxInflight;
 	}
 }
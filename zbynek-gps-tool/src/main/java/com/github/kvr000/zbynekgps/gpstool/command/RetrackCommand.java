@@ -4,6 +4,7 @@ import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
 import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxFiles;
 import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpsCalculation;
 import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.TrackSimplifier;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
 import com.github.kvr000.zbynekgps.gpstool.util.TreeIterators;
 import com.google.common.base.Stopwatch;
@@ -82,6 +83,10 @@ public class RetrackCommand extends AbstractCommand
 			options.mergeTimeout = Integer.parseInt(needArgsParam(options.mergeTimeout, args));
 			return true;
 
+		case "--simplify":
+			options.simplify = Double.parseDouble(needArgsParam(options.simplify, args));
+			return true;
+
 		default:
 			return super.parseOption(context, arg, args);
 		}
@@ -163,6 +168,10 @@ public class RetrackCommand extends AbstractCommand
 		GPX output = enrichLocations(gpxs.get(0), pointSources);
 		log.info("Retracked locations in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
 
+		if (options.simplify != null) {
+			output = TrackSimplifier.simplify(output, options.simplify);
+		}
+
 		watch.reset(); watch.start();
 		gpxLikeFiles.writeGpx(Paths.get(mainOptions.getOutput()), output);
 		log.info("Written output in {} ms", watch.elapsed(TimeUnit.MILLISECONDS));
@@ -182,7 +191,8 @@ public class RetrackCommand extends AbstractCommand
 			"--position-prio", "comma separated source file indexes to obtain position from, 0 refers to main file - example 0,2,1",
 			"--elevation-prio", "comma separated source file indexes to obtain elevation from, 0 refers to main file - example 0,2,1",
 			"--calc-missing", "calculate missing points",
-			"--merge-timeout", "minimum timeout to include point from different source"
+			"--merge-timeout", "minimum timeout to include point from different source",
+			"--simplify", "simplifies output geometrically, keeping the shape within tolerance meters"
 		);
 	}
 
@@ -364,5 +374,7 @@ public class RetrackCommand extends AbstractCommand
 		boolean calculateMissing = false;
 
 		Integer mergeTimeout;
+
+		Double simplify;
 	}
 }
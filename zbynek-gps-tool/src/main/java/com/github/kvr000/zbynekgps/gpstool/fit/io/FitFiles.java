@@ -11,6 +11,7 @@ import com.garmin.fit.RecordMesgListener;
 import com.garmin.fit.SportMesgListener;
 import com.github.kvr000.zbynekgps.gpstool.compress.AutoDecompressInputStream;
 import com.github.kvr000.zbynekgps.gpstool.fit.FitConstants;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
 import com.google.common.base.Stopwatch;
 import io.jenetics.jpx.GPX;
 import io.jenetics.jpx.Metadata;
@@ -165,11 +166,120 @@ public class FitFiles
 		}
 	}
 
+	/**
+	 * Scans the positions of fit file records, without materializing the content.  The points are the same as
+	 * the track points returned by {@link #readFit(InputStream)}, in the same order.
+	 *
+	 * @param fitFile
+	 * 		fit InputStream
+	 * @param consumer
+	 * 		consumer of points, may stop the scanning
+	 *
+	 * @return
+	 * 		true if whole file was scanned, false if stopped by consumer.
+	 *
+	 * @throws IOException
+	 * 		if reading fit file fails.
+	 */
+	public boolean scanFit(InputStream fitFile, PointConsumer consumer) throws IOException
+	{
+		PointScanner scanner = new PointScanner(consumer);
+		try {
+			Decode decode = new Decode();
+			MesgBroadcaster mesgBroadcaster = new MesgBroadcaster(decode);
+
+			mesgBroadcaster.addListener((LapMesgListener) (mesg) -> {
+				scanner.flush();
+			});
+
+			mesgBroadcaster.addListener((RecordMesgListener) (recordMesg) -> {
+				if (recordMesg.getPositionLat() != null && recordMesg.getPositionLong() != null) {
+					scanner.lastLon = recordMesg.getPositionLong() * (180.0 / Math.pow(2, 31));
+					scanner.lastLat = recordMesg.getPositionLat() * (180.0 / Math.pow(2, 31));
+				}
+				if (!Double.isNaN(scanner.lastLon) && !Double.isNaN(scanner.lastLat)) {
+					scanner.record(recordMesg.getTimestamp() == null ?
+						PointConsumer.NO_TIME : recordMesg.getTimestamp().getDate().getTime());
+				}
+			});
+
+			decode.read(fitFile, mesgBroadcaster);
+
+			scanner.flush();
+			return true;
+		}
+		catch (StopScanException ex) {
+			return false;
+		}
+		catch (FitRuntimeException ex) {
+			if (ex.getCause() instanceof StopScanException) {
+				return false;
+			}
+			throw new IOException("Failed to read fit file: " + ex.getMessage(), ex);
+		}
+	}
+
 	public GPX readFitDecompressed(InputStream fitFile) throws IOException
 	{
 		return readFit(new AutoDecompressInputStream(fitFile));
 	}
 
+	/**
+	 * Holds back the last point, as {@link #readFit(InputStream)} merges the records with the same time within lap.
+	 */
+	private static class PointScanner
+	{
+		final PointConsumer consumer;
+
+		double lastLat = Double.NaN;
+
+		double lastLon = Double.NaN;
+
+		boolean pending;
+
+		double pendingLat;
+
+		double pendingLon;
+
+		long pendingTime;
+
+		PointScanner(PointConsumer consumer)
+		{
+			this.consumer = consumer;
+		}
+
+		void record(long time)
+		{
+			if (pending && (pendingTime != time || time == PointConsumer.NO_TIME)) {
+				flush();
+			}
+			pending = true;
+			pendingLat = lastLat;
+			pendingLon = lastLon;
+			pendingTime = time;
+		}
+
+		void flush()
+		{
+			if (pending) {
+				pending = false;
+				if (!consumer.accept(pendingLat, pendingLon, pendingTime)) {
+					throw StopScanException.INSTANCE;
+				}
+			}
+		}
+	}
+
+	private static class StopScanException extends RuntimeException
+	{
+		static final StopScanException INSTANCE = new StopScanException();
+
+		StopScanException()
+		{
+			super("Scan stopped", null, false, false);
+		}
+	}
+
 	private static void copyExtension(Document extensions, String sub, String name, RecordMesg mesg, Function<RecordMesg, Object> extractor)
 	{
 		Object value = extractor.apply(mesg);
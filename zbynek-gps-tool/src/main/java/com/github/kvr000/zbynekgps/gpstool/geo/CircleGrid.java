@@ -0,0 +1,257 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Uniform latitude/longitude grid of circles, finding the circles possibly intersecting an area.
+ *
+ * Each circle is registered in all cells covered by its bounding box, the lookups check only the cells of the
+ * searched area, so the cost of lookup does not grow with number of circles far from the area.  The cell size is
+ * derived from typical circle size, the circles spanning too many cells, including the ones containing pole, are
+ * kept aside and returned for every lookup.
+ */
+public class CircleGrid
+{
+	/** Number of circles up to which the lookups simply check all of them */
+	private static final int LINEAR_LIMIT = 4;
+
+	/** Maximum number of cells per circle, larger circles are checked for every lookup */
+	private static final int MAX_CIRCLE_CELLS = 64;
+
+	/** Maximum number of cells per lookup, larger areas check all circles */
+	private static final int MAX_LOOKUP_CELLS = 256;
+
+	private final GeoCircle[] circles;
+
+	private final double cellDegrees;
+
+	private final long columns;
+
+	/** circle ordinals per cell */
+	private final Map<Long, int[]> cells;
+
+	/** ordinals of circles checked for every lookup */
+	private final int[] large;
+
+	private CircleGrid(GeoCircle[] circles)
+	{
+		this.circles = circles;
+		if (circles.length <= LINEAR_LIMIT) {
+			this.cellDegrees = 0;
+			this.columns = 0;
+			this.cells = null;
+			this.large = null;
+			return;
+		}
+		// cell twice the size of 90th percentile circle, most circles then cover up to four cells:
+		double[] sizes = Arrays.stream(circles).mapToDouble(circle -> circle.latMargin).sorted().toArray();
+		// columns cover exactly 360 degrees, so the columns wrapped around antimeridian match:
+		this.columns = (long) Math.ceil(360 / Math.max(1e-4, Math.min(10, 2 * sizes[sizes.length * 9 / 10])));
+		this.cellDegrees = 360.0 / columns;
+
+		Map<Long, List<Integer>> building = new HashMap<>();
+		List<Integer> buildingLarge = new ArrayList<>();
+		for (int i = 0; i < circles.length; ++i) {
+			GeoCircle circle = circles[i];
+			if (Double.isInfinite(circle.lonMargin)) {
+				buildingLarge.add(i);
+				continue;
+			}
+			long rowStart = row(circle.getLatitude() - circle.latMargin), rowEnd = row(circle.getLatitude() + circle.latMargin);
+			long colStart = rawColumn(circle.getLongitude() - circle.lonMargin), colEnd = rawColumn(circle.getLongitude() + circle.lonMargin);
+			if ((rowEnd - rowStart + 1) * (colEnd - colStart + 1) > MAX_CIRCLE_CELLS) {
+				buildingLarge.add(i);
+				continue;
+			}
+			for (long row = rowStart; row <= rowEnd; ++row) {
+				for (long col = colStart; col <= colEnd; ++col) {
+					building.computeIfAbsent(cell(row, col), k -> new ArrayList<>()).add(i);
+				}
+			}
+		}
+		this.cells = new HashMap<>(building.size() * 2);
+		building.forEach((cell, ordinals) -> cells.put(cell, ordinals.stream().mapToInt(Integer::intValue).toArray()));
+		this.large = buildingLarge.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Builds the grid.
+	 *
+	 * @param circles
+	 * 	circles to index
+	 *
+	 * @return
+	 * 	grid of circles.
+	 */
+	public static CircleGrid of(GeoCircle[] circles)
+	{
+		return new CircleGrid(circles);
+	}
+
+	/**
+	 * Builds the grid from lat,lon,radius triples.
+	 *
+	 * @param triples
+	 * 	circles as lat,lon,radius triples
+	 *
+	 * @return
+	 * 	grid of circles.
+	 */
+	public static CircleGrid of(double[][] triples)
+	{
+		return new CircleGrid(GeoCircle.of(triples));
+	}
+
+	public int size()
+	{
+		return circles.length;
+	}
+
+	/**
+	 * Finds the circles which may intersect the bounding box, see {@link GeoCircle#mayIntersectBox(double, double, double, double)}.
+	 *
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	circles possibly intersecting the box, in their original order.
+	 */
+	public List<GeoCircle> findCandidates(double minLat, double minLon, double maxLat, double maxLon)
+	{
+		List<GeoCircle> result = new ArrayList<>();
+		BitSet ordinals = collectOrdinals(minLat, minLon, maxLat, maxLon);
+		for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+			if (circles[i].mayIntersectBox(minLat, minLon, maxLat, maxLon)) {
+				result.add(circles[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether any of circles may intersect the bounding box.
+	 *
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	false if all circles are definitely outside of box, true otherwise.
+	 */
+	public boolean mayIntersectBox(double minLat, double minLon, double maxLat, double maxLon)
+	{
+		BitSet ordinals = collectOrdinals(minLat, minLon, maxLat, maxLon);
+		for (int i = ordinals.nextSetBit(0); i >= 0; i = ordinals.nextSetBit(i + 1)) {
+			if (circles[i].mayIntersectBox(minLat, minLon, maxLat, maxLon)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether the point is within any of circles.
+	 *
+	 * @param lat
+	 * 	point latitude
+	 * @param lon
+	 * 	point longitude
+	 *
+	 * @return
+	 * 	true if the point is within any circle.
+	 */
+	public boolean contains(double lat, double lon)
+	{
+		if (cells == null) {
+			for (GeoCircle circle: circles) {
+				if (circle.contains(lat, lon)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (int i: large) {
+			if (circles[i].contains(lat, lon)) {
+				return true;
+			}
+		}
+		int[] ordinals = cells.get(cell(row(lat), Math.floorMod(rawColumn(lon), columns)));
+		if (ordinals != null) {
+			for (int i: ordinals) {
+				if (circles[i].contains(lat, lon)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private BitSet collectOrdinals(double minLat, double minLon, double maxLat, double maxLon)
+	{
+		BitSet ordinals = new BitSet(circles.length);
+		if (cells == null) {
+			ordinals.set(0, circles.length);
+			return ordinals;
+		}
+		long rowStart = row(minLat), rowEnd = row(maxLat);
+		long colStart = rawColumn(minLon), colEnd = rawColumn(maxLon);
+		if ((rowEnd - rowStart + 1) * (colEnd - colStart + 1) > MAX_LOOKUP_CELLS) {
+			ordinals.set(0, circles.length);
+			return ordinals;
+		}
+		for (int i: large) {
+			ordinals.set(i);
+		}
+		for (long row = rowStart; row <= rowEnd; ++row) {
+			for (long col = colStart; col <= colEnd; ++col) {
+				int[] found = cells.get(cell(row, col));
+				if (found != null) {
+					for (int i: found) {
+						ordinals.set(i);
+					}
+				}
+			}
+		}
+		return ordinals;
+	}
+
+	private long row(double lat)
+	{
+		return (long) Math.floor((Math.max(-90, Math.min(90, lat)) + 90) / cellDegrees);
+	}
+
+	/** Column, possibly outside of range when crossing antimeridian */
+	private long rawColumn(double lon)
+	{
+		return (long) Math.floor((lon + 180) / cellDegrees);
+	}
+
+	private long cell(long row, long col)
+	{
+		return row * columns + Math.floorMod(col, columns);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CircleGrid{circles=" + circles.length + " cellDegrees=" + cellDegrees +
+			" cells=" + (cells == null ? 0 : cells.size()) + " large=" + (large == null ? 0 : large.length) + "}";
+	}
+}
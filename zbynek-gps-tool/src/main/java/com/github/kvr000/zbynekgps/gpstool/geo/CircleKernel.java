@@ -0,0 +1,191 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+
+/**
+ * Kernel evaluating radius checks over blocks of coordinates stored in primitive arrays.
+ *
+ * All implementations give the same results as {@link GeoCircle#contains(double, double)} and
+ * {@link GeoCalc#isWithinRadius(double, double, double, double, double)}, they differ only in speed.
+ */
+public interface CircleKernel
+{
+	/** Maximum number of points evaluated by single mask call */
+	int MASK_SIZE = 64;
+
+	/**
+	 * Evaluates which points are within the circle.
+	 *
+	 * @param latitudes
+	 * 	point latitudes
+	 * @param longitudes
+	 * 	point longitudes
+	 * @param from
+	 * 	index of first point
+	 * @param to
+	 * 	index after last point, at most {@link #MASK_SIZE} after from
+	 * @param circle
+	 * 	circle to check
+	 *
+	 * @return
+	 * 	bitmap of points within the circle, bit 0 corresponding to from.
+	 */
+	long maskWithin(double[] latitudes, double[] longitudes, int from, int to, GeoCircle circle);
+
+	/**
+	 * Evaluates which pairs of points are within the radius.
+	 *
+	 * @param latitudes1
+	 * 	first point latitudes
+	 * @param longitudes1
+	 * 	first point longitudes
+	 * @param latitudes2
+	 * 	second point latitudes
+	 * @param longitudes2
+	 * 	second point longitudes
+	 * @param from
+	 * 	index of first pair
+	 * @param to
+	 * 	index after last pair, at most {@link #MASK_SIZE} after from
+	 * @param radiusMeters
+	 * 	radius
+	 *
+	 * @return
+	 * 	bitmap of pairs within the radius, bit 0 corresponding to from.
+	 */
+	long maskPairsWithin(double[] latitudes1, double[] longitudes1, double[] latitudes2, double[] longitudes2,
+			     int from, int to, double radiusMeters);
+
+	/**
+	 * Finds first point within the circle.
+	 *
+	 * @param latitudes
+	 * 	point latitudes
+	 * @param longitudes
+	 * 	point longitudes
+	 * @param from
+	 * 	index of first point
+	 * @param to
+	 * 	index after last point
+	 * @param circle
+	 * 	circle to check
+	 *
+	 * @return
+	 * 	index of first point within the circle or -1 if none.
+	 */
+	default int findFirstWithin(double[] latitudes, double[] longitudes, int from, int to, GeoCircle circle)
+	{
+		for (int start = from; start < to; start += MASK_SIZE) {
+			long mask = maskWithin(latitudes, longitudes, start, Math.min(start + MASK_SIZE, to), circle);
+			if (mask != 0) {
+				return start + Long.numberOfTrailingZeros(mask);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds first pair of points within the radius.
+	 *
+	 * @param latitudes1
+	 * 	first point latitudes
+	 * @param longitudes1
+	 * 	first point longitudes
+	 * @param latitudes2
+	 * 	second point latitudes
+	 * @param longitudes2
+	 * 	second point longitudes
+	 * @param from
+	 * 	index of first pair
+	 * @param to
+	 * 	index after last pair
+	 * @param radiusMeters
+	 * 	radius
+	 *
+	 * @return
+	 * 	index of first pair within the radius or -1 if none.
+	 */
+	default int findFirstPairWithin(double[] latitudes1, double[] longitudes1, double[] latitudes2, double[] longitudes2,
+					int from, int to, double radiusMeters)
+	{
+		for (int start = from; start < to; start += MASK_SIZE) {
+			long mask = maskPairsWithin(latitudes1, longitudes1, latitudes2, longitudes2,
+				start, Math.min(start + MASK_SIZE, to), radiusMeters);
+			if (mask != 0) {
+				return start + Long.numberOfTrailingZeros(mask);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the scalar kernel.
+	 *
+	 * @return
+	 * 	scalar kernel.
+	 */
+	static CircleKernel scalar()
+	{
+		return ScalarCircleKernel.INSTANCE;
+	}
+
+	/**
+	 * Gets the kernel by name.
+	 *
+	 * @param name
+	 * 	scalar, vector or auto, the auto takes vector kernel if supported by runtime and hardware, scalar otherwise
+	 *
+	 * @return
+	 * 	kernel.
+	 *
+	 * @throws IllegalArgumentException
+	 * 	if the name is unknown or the vector kernel is requested but not available
+	 */
+	static CircleKernel of(String name)
+	{
+		switch (name) {
+		case "scalar":
+			return scalar();
+
+		case "vector":
+			try {
+				return loadVector();
+			}
+			catch (ReflectiveOperationException|LinkageError ex) {
+				throw new IllegalArgumentException("Vector kernel not available, run with " +
+					"JDK_JAVA_OPTIONS=--add-modules=jdk.incubator.vector : " + ex, ex);
+			}
+
+		case "auto":
+			try {
+				CircleKernel vector = loadVector();
+				return (Boolean) vector.getClass().getMethod("isEfficient").invoke(null) ? vector : scalar();
+			}
+			catch (ReflectiveOperationException|LinkageError ex) {
+				return scalar();
+			}
+
+		default:
+			throw new IllegalArgumentException("Unknown kernel, expected scalar, vector or auto: " + name);
+		}
+	}
+
+	/**
+	 * Loads the vector kernel by reflection, so the rest of code does not link against incubator module, which
+	 * is added to runtime only on request.
+	 *
+	 * @return
+	 * 	vector kernel.
+	 *
+	 * @throws ClassNotFoundException
+	 * 	if jdk.incubator.vector module is not present in runtime
+	 */
+	private static CircleKernel loadVector() throws ReflectiveOperationException
+	{
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			throw new ClassNotFoundException("Module jdk.incubator.vector not present");
+		}
+		return (CircleKernel) Class.forName(CircleKernel.class.getPackageName() + ".VectorCircleKernel")
+			.getField("INSTANCE")
+			.get(null);
+	}
+}
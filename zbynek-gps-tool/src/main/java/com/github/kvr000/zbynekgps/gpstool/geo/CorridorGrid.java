@@ -0,0 +1,288 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Corridor around reference polylines, indexed in uniform latitude/longitude grid of their segments.
+ *
+ * The polylines are densified, so no segment is longer than the corridor width, and each segment is registered in
+ * all cells covered by its bounding box extended by the width.  A point is then tested only against the segments of
+ * its own cell, so the cost per point does not grow with the length of reference route.  The coverage is tracked
+ * per segment, a segment is covered once any point lies within the width from it.
+ */
+public class CorridorGrid
+{
+	private static final double METERS_PER_DEGREE = GeoCalc.EARTH_RADIUS * Math.PI / 180;
+
+	private final double width;
+
+	/** vertex coordinates of all polylines */
+	private final double[] latitudes;
+
+	private final double[] longitudes;
+
+	/** first vertex of segments, segment i connects vertices starts[i] and starts[i] + 1 */
+	private final int[] starts;
+
+	private final double[] lengths;
+
+	private final double totalLength;
+
+	private final double cellDegrees;
+
+	private final long columns;
+
+	/** segment ordinals per cell */
+	private final Map<Long, int[]> cells;
+
+	/** minLat, minLon, maxLat, maxLon of corridor, including the width */
+	private final double[] bounds;
+
+	private CorridorGrid(double[] latitudes, double[] longitudes, int[] starts, double width)
+	{
+		this.width = width;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.starts = starts;
+		int segments = starts.length;
+		this.lengths = new double[segments];
+		double total = 0;
+		for (int i = 0; i < segments; ++i) {
+			int v = starts[i];
+			lengths[i] = GeoCalc.distance(latitudes[v], longitudes[v], latitudes[v + 1], longitudes[v + 1]);
+			total += lengths[i];
+		}
+		this.totalLength = total;
+		// cell twice the width, the segments are not longer than width, so each one covers up to nine cells:
+		double latMargin = width / METERS_PER_DEGREE * 1.000001 + 1e-9;
+		this.columns = (long) Math.ceil(360 / Math.max(1e-4, Math.min(10, 2 * latMargin)));
+		this.cellDegrees = 360.0 / columns;
+
+		Map<Long, List<Integer>> building = new HashMap<>();
+		double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < segments; ++i) {
+			int v = starts[i];
+			double minLat = Math.min(latitudes[v], latitudes[v + 1]) - latMargin;
+			double maxLat = Math.max(latitudes[v], latitudes[v + 1]) + latMargin;
+			double lonMargin = latMargin / Math.max(0.01, Math.cos(Math.toRadians(Math.max(Math.abs(minLat), Math.abs(maxLat)))));
+			double minLon = Math.min(longitudes[v], longitudes[v + 1]) - lonMargin;
+			double maxLon = Math.max(longitudes[v], longitudes[v + 1]) + lonMargin;
+			for (long row = row(minLat), rowEnd = row(maxLat); row <= rowEnd; ++row) {
+				for (long col = rawColumn(minLon), colEnd = rawColumn(maxLon); col <= colEnd; ++col) {
+					building.computeIfAbsent(cell(row, col), k -> new ArrayList<>()).add(i);
+				}
+			}
+			bounds[0] = Math.min(bounds[0], minLat);
+			bounds[1] = Math.min(bounds[1], minLon);
+			bounds[2] = Math.max(bounds[2], maxLat);
+			bounds[3] = Math.max(bounds[3], maxLon);
+		}
+		this.bounds = bounds;
+		this.cells = new HashMap<>(building.size() * 2);
+		building.forEach((cell, ordinals) -> cells.put(cell, ordinals.stream().mapToInt(Integer::intValue).toArray()));
+	}
+
+	/**
+	 * Creates the corridor.
+	 *
+	 * @param points
+	 * 	reference polyline as lat,lon pairs
+	 * @param width
+	 * 	maximum distance from polyline in meters
+	 *
+	 * @return
+	 * 	corridor grid.
+	 */
+	public static CorridorGrid of(List<double[]> points, double width)
+	{
+		return ofPolylines(List.of(points), width);
+	}
+
+	/**
+	 * Creates the corridor around several polylines, such as segments of track.  The gaps between polylines are
+	 * not part of corridor.
+	 *
+	 * @param polylines
+	 * 	reference polylines, each as list of lat,lon pairs
+	 * @param width
+	 * 	maximum distance from polylines in meters
+	 *
+	 * @return
+	 * 	corridor grid.
+	 */
+	public static CorridorGrid ofPolylines(List<List<double[]>> polylines, double width)
+	{
+		if (!(width > 0)) {
+			throw new IllegalArgumentException("Corridor width must be positive, got: " + width);
+		}
+		List<double[]> densified = new ArrayList<>();
+		List<Integer> starts = new ArrayList<>();
+		for (List<double[]> points: polylines) {
+			if (points.isEmpty()) {
+				continue;
+			}
+			densified.add(points.get(0));
+			for (int i = 1; i < points.size(); ++i) {
+				double[] previous = points.get(i - 1), current = points.get(i);
+				int parts = Math.max(1, (int) Math.ceil(GeoCalc.distance(previous[0], previous[1], current[0], current[1]) / width));
+				for (int part = 1; part <= parts; ++part) {
+					starts.add(densified.size() - 1);
+					if (part == parts) {
+						densified.add(current);
+					}
+					else {
+						double fraction = (double) part / parts;
+						densified.add(new double[]{
+							previous[0] + (current[0] - previous[0]) * fraction,
+							previous[1] + (current[1] - previous[1]) * fraction
+						});
+					}
+				}
+			}
+		}
+		if (starts.isEmpty()) {
+			throw new IllegalArgumentException("Corridor requires at least two points in polyline, got: " + densified.size() + " points");
+		}
+		return new CorridorGrid(
+			densified.stream().mapToDouble(p -> p[0]).toArray(),
+			densified.stream().mapToDouble(p -> p[1]).toArray(),
+			starts.stream().mapToInt(Integer::intValue).toArray(),
+			width
+		);
+	}
+
+	public int segmentCount()
+	{
+		return lengths.length;
+	}
+
+	public double getTotalLength()
+	{
+		return totalLength;
+	}
+
+	/**
+	 * Checks whether the corridor may intersect the bounding box.
+	 *
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	false if the corridor is definitely outside of box, true otherwise.
+	 */
+	public boolean mayIntersectBox(double minLat, double minLon, double maxLat, double maxLon)
+	{
+		if (bounds[2] < minLat || bounds[0] > maxLat) {
+			return false;
+		}
+		for (double shift = -360; shift <= 360; shift += 360) {
+			if (bounds[1] + shift <= maxLon && bounds[3] + shift >= minLon) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts tracking coverage of corridor.
+	 *
+	 * @return
+	 * 	new coverage state.
+	 */
+	public Coverage newCoverage()
+	{
+		return new Coverage();
+	}
+
+	private static double segmentDistanceSquared(double lat, double lon, double lat1, double lon1, double lat2, double lon2)
+	{
+		// local equirectangular projection around the point, precise enough for segments not longer than width:
+		double lonScale = Math.cos(Math.toRadians(lat));
+		double px = Math.IEEEremainder(lon - lon1, 360) * lonScale, py = lat - lat1;
+		double dx = Math.IEEEremainder(lon2 - lon1, 360) * lonScale, dy = lat2 - lat1;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+		double ex = px - t * dx, ey = py - t * dy;
+		return (ex * ex + ey * ey) * (METERS_PER_DEGREE * METERS_PER_DEGREE);
+	}
+
+	private long row(double lat)
+	{
+		return (long) Math.floor((lat + 90) / cellDegrees);
+	}
+
+	private long rawColumn(double lon)
+	{
+		return (long) Math.floor((lon + 180) / cellDegrees);
+	}
+
+	private long cell(long row, long col)
+	{
+		return row * columns + Math.floorMod(col, columns);
+	}
+
+	/**
+	 * Coverage of corridor by points of single activity.
+	 */
+	public class Coverage
+	{
+		private final BitSet covered = new BitSet(lengths.length);
+
+		private double coveredLength;
+
+		/**
+		 * Adds the point, marking all segments within the width as covered.
+		 *
+		 * @param lat
+		 * 	point latitude
+		 * @param lon
+		 * 	point longitude
+		 *
+		 * @return
+		 * 	true if the point is within corridor.
+		 */
+		public boolean add(double lat, double lon)
+		{
+			int[] candidates = cells.get(cell(row(lat), rawColumn(lon)));
+			if (candidates == null) {
+				return false;
+			}
+			double widthSquared = width * width;
+			boolean within = false;
+			for (int segment: candidates) {
+				int v = starts[segment];
+				if (segmentDistanceSquared(lat, lon, latitudes[v], longitudes[v],
+						latitudes[v + 1], longitudes[v + 1]) <= widthSquared) {
+					within = true;
+					if (!covered.get(segment)) {
+						covered.set(segment);
+						coveredLength += lengths[segment];
+					}
+				}
+			}
+			return within;
+		}
+
+		/**
+		 * Gets the covered portion of corridor.
+		 *
+		 * @return
+		 * 	covered length divided by total length, between 0 and 1.
+		 */
+		public double fraction()
+		{
+			return totalLength == 0 ? (covered.isEmpty() ? 0 : 1) : coveredLength / totalLength;
+		}
+	}
+}
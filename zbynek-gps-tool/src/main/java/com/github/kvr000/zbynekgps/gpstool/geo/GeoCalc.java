@@ -6,17 +6,27 @@ import io.jenetics.jpx.WayPoint;
 
 public class GeoCalc
 {
-	public static boolean isWithinRadius(double lat1, double lon1, double lat2, double lon2, double radiusMeters)
+	public static final double EARTH_RADIUS = 6371000; // Radius of Earth in meters
+
+	public static double distance(double lat1, double lon1, double lat2, double lon2)
 	{
-		final double EARTH_RADIUS = 6371000; // Radius of Earth in meters
 		double latDistance = Math.toRadians(lat2 - lat1);
 		double lonDistance = Math.toRadians(lon2 - lon1);
 		double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2) +
 			Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
 				Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
 		double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-		double distance = EARTH_RADIUS * c;
-		return distance <= radiusMeters;
+		return EARTH_RADIUS * c;
+	}
+
+	public static boolean isWithinRadius(double lat1, double lon1, double lat2, double lon2, double radiusMeters)
+	{
+		// latitude difference alone is lower bound of distance, cheap reject without trigonometry:
+		double latMargin = radiusMeters / EARTH_RADIUS * (180 / Math.PI) * 1.000001 + 1e-9;
+		if (lat1 - lat2 > latMargin || lat2 - lat1 > latMargin) {
+			return false;
+		}
+		return distance(lat1, lon1, lat2, lon2) <= radiusMeters;
 	}
 
 	public static boolean isWithinRadius(WayPoint one, WayPoint two, double radiusMeters)
@@ -27,4 +37,49 @@ public class GeoCalc
 			radiusMeters
 		);
 	}
+
+	/**
+	 * Checks whether the circle may intersect the bounding box.  The check is conservative, it may return true
+	 * even if the circle is slightly outside but never returns false if any point of the box is within radius.
+	 *
+	 * @param lat
+	 * 	center latitude
+	 * @param lon
+	 * 	center longitude
+	 * @param radiusMeters
+	 * 	radius of the circle
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	false if the circle is definitely outside of box, true otherwise.
+	 */
+	public static boolean mayIntersectBox(double lat, double lon, double radiusMeters,
+					      double minLat, double minLon, double maxLat, double maxLon)
+	{
+		double angle = radiusMeters / EARTH_RADIUS;
+		double latMargin = Math.toDegrees(angle) * 1.000001 + 1e-9;
+		if (lat + latMargin < minLat || lat - latMargin > maxLat) {
+			return false;
+		}
+		// maximum longitude extent of spherical cap, it contains pole if the ratio reaches 1:
+		double lonRatio = Math.sin(Math.min(angle, Math.PI / 2)) / Math.cos(Math.toRadians(lat));
+		if (angle >= Math.PI / 2 || lonRatio >= 0.999) {
+			return true;
+		}
+		double lonMargin = Math.toDegrees(Math.asin(lonRatio)) * 1.000001 + 1e-9;
+		for (double shift = -360; shift <= 360; shift += 360) {
+			double shifted = lon + shift;
+			if (shifted + lonMargin >= minLon && shifted - lonMargin <= maxLon) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
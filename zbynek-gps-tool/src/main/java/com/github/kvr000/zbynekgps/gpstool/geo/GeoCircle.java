@@ -0,0 +1,155 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import lombok.Getter;
+
+import java.util.stream.Stream;
+
+
+/**
+ * Circle on Earth surface, prepared for repeated checks of points.
+ *
+ * The center is converted once.  The check rejects points outside of bounding box first, then decides by
+ * equirectangular distance if the point is clearly inside or outside, the exact haversine is calculated only for
+ * points close to the boundary.  The results are the same as of {@link GeoCalc#isWithinRadius(double, double, double, double, double)}.
+ */
+public class GeoCircle
+{
+	/** Maximum angular radius where the equirectangular approximation is used */
+	static final double MAX_APPROXIMATION_ANGLE = 0.01;
+
+	/** Maximum relative error band where the equirectangular approximation is used */
+	static final double MAX_APPROXIMATION_ERROR = 0.1;
+
+	@Getter
+	private final double latitude;
+
+	@Getter
+	private final double longitude;
+
+	@Getter
+	private final double radius;
+
+	final double latMargin;
+
+	/** Longitude margin in degrees or infinity if the circle contains pole */
+	final double lonMargin;
+
+	final double cosLat;
+
+	/** Squared radius in radians, decreased by error band */
+	final double innerSquare;
+
+	/** Squared radius in radians, increased by error band, zero if approximation is not used */
+	final double outerSquare;
+
+	public GeoCircle(double latitude, double longitude, double radius)
+	{
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.radius = radius;
+		double angle = radius / GeoCalc.EARTH_RADIUS;
+		this.latMargin = Math.toDegrees(angle) * 1.000001 + 1e-9;
+		double lonRatio = Math.sin(Math.min(angle, Math.PI / 2)) / Math.cos(Math.toRadians(latitude));
+		this.lonMargin = angle >= Math.PI / 2 || lonRatio >= 0.999 ?
+			Double.POSITIVE_INFINITY :
+			Math.toDegrees(Math.asin(lonRatio)) * 1.000001 + 1e-9;
+		this.cosLat = Math.cos(Math.toRadians(latitude));
+		double error = approximationError(angle, Math.abs(Math.toRadians(latitude)));
+		if (angle <= MAX_APPROXIMATION_ANGLE && error <= MAX_APPROXIMATION_ERROR) {
+			this.innerSquare = angle * angle * (1 - error) * (1 - error);
+			this.outerSquare = angle * angle * (1 + error) * (1 + error);
+		}
+		else {
+			this.innerSquare = -1;
+			this.outerSquare = 0;
+		}
+	}
+
+	/**
+	 * Calculates relative error of equirectangular distance, compared to haversine, for points within the angle.
+	 * The error comes mostly from using cosine of the center latitude instead of the mean one.
+	 *
+	 * @param angle
+	 * 	angular radius
+	 * @param absLatitude
+	 * 	absolute center latitude, in radians
+	 *
+	 * @return
+	 * 	conservative relative error bound of distance.
+	 */
+	static double approximationError(double angle, double absLatitude)
+	{
+		double delta = angle * 1.01;
+		double extremeLat = absLatitude + delta;
+		return extremeLat < Math.PI / 2 ? 2 * (Math.tan(extremeLat) * delta + delta * delta) + 1e-12 : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Prepares circles from lat,lon,radius triples.
+	 *
+	 * @param triples
+	 * 	circles as lat,lon,radius triples
+	 *
+	 * @return
+	 * 	prepared circles.
+	 */
+	public static GeoCircle[] of(double[][] triples)
+	{
+		return Stream.of(triples)
+			.map(triple -> new GeoCircle(triple[0], triple[1], triple[2]))
+			.toArray(GeoCircle[]::new);
+	}
+
+	/**
+	 * Checks whether the point is within radius.
+	 *
+	 * @param lat
+	 * 	point latitude
+	 * @param lon
+	 * 	point longitude
+	 *
+	 * @return
+	 * 	true if the point is within radius.
+	 */
+	public boolean contains(double lat, double lon)
+	{
+		double dLat = lat - latitude;
+		if (dLat > latMargin || dLat < -latMargin) {
+			return false;
+		}
+		double dLon = lon - longitude;
+		if (dLon > 180) {
+			dLon -= 360;
+		}
+		else if (dLon < -180) {
+			dLon += 360;
+		}
+		if (dLon > lonMargin || dLon < -lonMargin) {
+			return false;
+		}
+		if (outerSquare > 0) {
+			double x = Math.toRadians(dLon) * cosLat;
+			double y = Math.toRadians(dLat);
+			double square = x * x + y * y;
+			if (square <= innerSquare) {
+				return true;
+			}
+			else if (square > outerSquare) {
+				return false;
+			}
+		}
+		return GeoCalc.isWithinRadius(lat, lon, latitude, longitude, radius);
+	}
+
+	/**
+	 * Checks whether the circle may intersect the bounding box, see
+	 * {@link GeoCalc#mayIntersectBox(double, double, double, double, double, double, double)}.
+	 */
+	public boolean mayIntersectBox(double minLat, double minLon, double maxLat, double maxLon)
+	{
+		if (latitude + latMargin < minLat || latitude - latMargin > maxLat) {
+			return false;
+		}
+		return GeoCalc.mayIntersectBox(latitude, longitude, radius, minLat, minLon, maxLat, maxLon);
+	}
+}
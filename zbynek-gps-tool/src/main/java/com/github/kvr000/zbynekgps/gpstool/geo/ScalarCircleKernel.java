@@ -0,0 +1,50 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+
+/**
+ * Circle kernel checking one point at a time.
+ */
+public class ScalarCircleKernel implements CircleKernel
+{
+	public static final ScalarCircleKernel INSTANCE = new ScalarCircleKernel();
+
+	@Override
+	public long maskWithin(double[] latitudes, double[] longitudes, int from, int to, GeoCircle circle)
+	{
+		checkRange(from, to);
+		long mask = 0;
+		for (int i = from; i < to; ++i) {
+			if (circle.contains(latitudes[i], longitudes[i])) {
+				mask |= 1L << (i - from);
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public long maskPairsWithin(double[] latitudes1, double[] longitudes1, double[] latitudes2, double[] longitudes2,
+				    int from, int to, double radiusMeters)
+	{
+		checkRange(from, to);
+		long mask = 0;
+		for (int i = from; i < to; ++i) {
+			if (GeoCalc.isWithinRadius(latitudes1[i], longitudes1[i], latitudes2[i], longitudes2[i], radiusMeters)) {
+				mask |= 1L << (i - from);
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "scalar";
+	}
+
+	static void checkRange(int from, int to)
+	{
+		if (to - from > MASK_SIZE) {
+			throw new IllegalArgumentException("Range exceeds mask size: from=" + from + " to=" + to);
+		}
+	}
+}
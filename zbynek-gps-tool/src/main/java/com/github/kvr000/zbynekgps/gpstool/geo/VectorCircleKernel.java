@@ -0,0 +1,149 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Circle kernel checking multiple points at once, using Vector API.
+ *
+ * The lanes are decided by bounding box and equirectangular distance, only the lanes falling into error band
+ * around the radius are checked by scalar haversine, so the results are the same as of {@link ScalarCircleKernel}.
+ * Requires {@code --add-modules jdk.incubator.vector} at runtime, the class is compiled separately and loaded only
+ * by {@link CircleKernel#of(String)}, so the rest of code runs without the incubator module.
+ */
+public class VectorCircleKernel implements CircleKernel
+{
+	public static final VectorCircleKernel INSTANCE = new VectorCircleKernel();
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+
+	/** Maximum absolute latitude of pairs decided by equirectangular distance, the rest is checked by haversine */
+	private static final double MAX_PAIR_APPROXIMATION_LATITUDE = Math.toRadians(80);
+
+	/**
+	 * Checks whether the hardware has wide enough vectors so the kernel is faster than scalar one.
+	 *
+	 * @return
+	 * 	true if vector kernel is expected to be faster.
+	 */
+	public static boolean isEfficient()
+	{
+		return SPECIES.length() >= 4;
+	}
+
+	@Override
+	public long maskWithin(double[] latitudes, double[] longitudes, int from, int to, GeoCircle circle)
+	{
+		ScalarCircleKernel.checkRange(from, to);
+		long mask = 0;
+		int i = from;
+		for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+			DoubleVector dLat = DoubleVector.fromArray(SPECIES, latitudes, i).sub(circle.getLatitude());
+			DoubleVector dLon = normalizeLongitude(DoubleVector.fromArray(SPECIES, longitudes, i).sub(circle.getLongitude()));
+			VectorMask<Double> candidates = dLat.abs().compare(VectorOperators.LE, circle.latMargin)
+				.and(dLon.abs().compare(VectorOperators.LE, circle.lonMargin));
+			if (!candidates.anyTrue()) {
+				continue;
+			}
+			long undecided;
+			if (circle.outerSquare > 0) {
+				DoubleVector x = dLon.mul(DEGREES_TO_RADIANS).mul(circle.cosLat);
+				DoubleVector y = dLat.mul(DEGREES_TO_RADIANS);
+				DoubleVector square = x.mul(x).add(y.mul(y));
+				mask |= candidates.and(square.compare(VectorOperators.LE, circle.innerSquare)).toLong() << (i - from);
+				undecided = candidates.and(square.compare(VectorOperators.GT, circle.innerSquare))
+					.and(square.compare(VectorOperators.LE, circle.outerSquare))
+					.toLong();
+			}
+			else {
+				undecided = candidates.toLong();
+			}
+			for (; undecided != 0; undecided &= undecided - 1) {
+				int index = i + Long.numberOfTrailingZeros(undecided);
+				if (circle.contains(latitudes[index], longitudes[index])) {
+					mask |= 1L << (index - from);
+				}
+			}
+		}
+		for (; i < to; ++i) {
+			if (circle.contains(latitudes[i], longitudes[i])) {
+				mask |= 1L << (i - from);
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public long maskPairsWithin(double[] latitudes1, double[] longitudes1, double[] latitudes2, double[] longitudes2,
+				    int from, int to, double radiusMeters)
+	{
+		ScalarCircleKernel.checkRange(from, to);
+		double angle = radiusMeters / GeoCalc.EARTH_RADIUS;
+		double latMargin = Math.toDegrees(angle) * 1.000001 + 1e-9;
+		double error = GeoCircle.approximationError(angle, MAX_PAIR_APPROXIMATION_LATITUDE);
+		boolean approximate = angle <= GeoCircle.MAX_APPROXIMATION_ANGLE && error <= GeoCircle.MAX_APPROXIMATION_ERROR;
+		double lonMargin = approximate ?
+			Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(MAX_PAIR_APPROXIMATION_LATITUDE + angle * 1.01))) * 1.000001 + 1e-9 :
+			Double.POSITIVE_INFINITY;
+		double innerSquare = angle * angle * (1 - error) * (1 - error);
+		double outerSquare = angle * angle * (1 + error) * (1 + error);
+
+		long mask = 0;
+		int i = from;
+		for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+			DoubleVector lat1 = DoubleVector.fromArray(SPECIES, latitudes1, i);
+			DoubleVector dLat = DoubleVector.fromArray(SPECIES, latitudes2, i).sub(lat1);
+			VectorMask<Double> candidates = dLat.abs().compare(VectorOperators.LE, latMargin);
+			if (!candidates.anyTrue()) {
+				continue;
+			}
+			long undecided;
+			if (approximate) {
+				DoubleVector dLon = normalizeLongitude(DoubleVector.fromArray(SPECIES, longitudes2, i)
+					.sub(DoubleVector.fromArray(SPECIES, longitudes1, i)));
+				DoubleVector lat1Radians = lat1.mul(DEGREES_TO_RADIANS);
+				VectorMask<Double> approximated = candidates.and(lat1Radians.abs().compare(VectorOperators.LE, MAX_PAIR_APPROXIMATION_LATITUDE));
+				VectorMask<Double> inRange = approximated.and(dLon.abs().compare(VectorOperators.LE, lonMargin));
+				DoubleVector x = dLon.mul(DEGREES_TO_RADIANS).mul(lat1Radians.lanewise(VectorOperators.COS));
+				DoubleVector y = dLat.mul(DEGREES_TO_RADIANS);
+				DoubleVector square = x.mul(x).add(y.mul(y));
+				mask |= inRange.and(square.compare(VectorOperators.LE, innerSquare)).toLong() << (i - from);
+				undecided = candidates.andNot(approximated)
+					.or(inRange.and(square.compare(VectorOperators.GT, innerSquare)).and(square.compare(VectorOperators.LE, outerSquare)))
+					.toLong();
+			}
+			else {
+				undecided = candidates.toLong();
+			}
+			for (; undecided != 0; undecided &= undecided - 1) {
+				int index = i + Long.numberOfTrailingZeros(undecided);
+				if (GeoCalc.isWithinRadius(latitudes1[index], longitudes1[index], latitudes2[index], longitudes2[index], radiusMeters)) {
+					mask |= 1L << (index - from);
+				}
+			}
+		}
+		for (; i < to; ++i) {
+			if (GeoCalc.isWithinRadius(latitudes1[i], longitudes1[i], latitudes2[i], longitudes2[i], radiusMeters)) {
+				mask |= 1L << (i - from);
+			}
+		}
+		return mask;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "vector(" + SPECIES.length() + ")";
+	}
+
+	private static DoubleVector normalizeLongitude(DoubleVector dLon)
+	{
+		return dLon.sub(360, dLon.compare(VectorOperators.GT, 180))
+			.add(360, dLon.compare(VectorOperators.LT, -180));
+	}
+}
@@ -1,6 +1,7 @@
 package com.github.kvr000.zbynekgps.gpstool.gpx.io;
 
 import com.github.kvr000.zbynekgps.gpstool.compress.AutoDecompressInputStream;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
 import io.jenetics.jpx.GPX;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -11,11 +12,24 @@ import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 
 import jakarta.inject.Singleton;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -28,6 +42,8 @@ public class GpxFiles
 {
 	public static final GPX.Writer GPX_WRITER = GPX.Writer.of(GPX.Writer.Indent.TAB1);
 
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
 	public GPX readGpx(InputStream input) throws IOException
 	{
 		return GPX.Reader.DEFAULT.read(input);
@@ -45,6 +61,86 @@ public class GpxFiles
 		}
 	}
 
+	/**
+	 * Scans the track points of GPX file, without materializing the content.  The points are the same as the
+	 * track points returned by {@link #readGpx(InputStream)}, in the same order.
+	 *
+	 * @param input
+	 * 	GPX InputStream, not closed by this method
+	 * @param consumer
+	 * 	consumer of points, may stop the scanning
+	 *
+	 * @return
+	 * 	true if whole file was scanned, false if stopped by consumer.
+	 *
+	 * @throws IOException
+	 * 	if reading or parsing fails
+	 */
+	public boolean scanGpx(InputStream input, PointConsumer consumer) throws IOException
+	{
+		XMLStreamReader reader = null;
+		try {
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !reader.getLocalName().equals("trkpt")) {
+					continue;
+				}
+				String latitudeStr = reader.getAttributeValue(null, "lat");
+				String longitudeStr = reader.getAttributeValue(null, "lon");
+				if (latitudeStr == null || longitudeStr == null) {
+					throw new IOException("Failed to parse GPX: trkpt without lat or lon at line " + reader.getLocation().getLineNumber());
+				}
+				double latitude = Double.parseDouble(latitudeStr);
+				double longitude = Double.parseDouble(longitudeStr);
+				long time = PointConsumer.NO_TIME;
+				for (int depth = 1; depth > 0; ) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						if (depth == 1 && reader.getLocalName().equals("time")) {
+							time = parseTime(reader.getElementText());
+						}
+						else {
+							++depth;
+						}
+					}
+					else if (event == XMLStreamConstants.END_ELEMENT) {
+						--depth;
+					}
+				}
+				if (!consumer.accept(latitude, longitude, time)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		catch (XMLStreamException|NumberFormatException ex) {
+			throw new IOException("Failed to parse GPX: " + ex.getMessage(), ex);
+		}
+		finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException ex) {
+					// ignore, the input is closed by caller
+				}
+			}
+		}
+	}
+
+	private static long parseTime(String value)
+	{
+		try {
+			TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parse(value.trim());
+			return parsed.isSupported(ChronoField.OFFSET_SECONDS) ?
+				Instant.from(parsed).toEpochMilli() :
+				LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+		}
+		catch (DateTimeException ex) {
+			return PointConsumer.NO_TIME;
+		}
+	}
+
 	/**
 	 * Writes the given GPX object to {@code output}.
 	 * <p>
@@ -60,23 +156,34 @@ public class GpxFiles
 	 */
 	public void writeGpx(Path output, GPX gpx) throws IOException
 	{
-		Path absoluteOutput = output.toAbsolutePath();
-		Path tempFile = Files.createTempFile(absoluteOutput.getParent(), absoluteOutput.getFileName().toString(), ".tmp");
-		try {
-			GPX_WRITER.write(gpx, tempFile);
+		Files.write(output, serializeGpx(gpx));
+	}
 
-			Document document = readDocument(tempFile);
-			hoistRepeatedNamespaces(document.getRootElement());
-			writeDocument(document, output);
-		}
-		finally {
-			Files.deleteIfExists(tempFile);
-		}
+	/**
+	 * Serializes the given GPX object in the same form as {@link #writeGpx(Path, GPX)} does, without touching the
+	 * filesystem.  This allows formatting the document on CPU thread and leaving the write to I/O thread.
+	 *
+	 * @param gpx
+	 * 	GPX object
+	 *
+	 * @return
+	 * 	serialized document.
+	 */
+	public byte[] serializeGpx(GPX gpx) throws IOException
+	{
+		ByteArrayOutputStream jpxOutput = new ByteArrayOutputStream();
+		GPX_WRITER.write(gpx, jpxOutput);
+
+		Document document = readDocument(new ByteArrayInputStream(jpxOutput.toByteArray()));
+		hoistRepeatedNamespaces(document.getRootElement());
+		ByteArrayOutputStream output = new ByteArrayOutputStream(jpxOutput.size());
+		writeDocument(document, output);
+		return output.toByteArray();
 	}
 
-	private static Document readDocument(Path file) throws IOException
+	private static Document readDocument(InputStream input) throws IOException
 	{
-		try (InputStream input = Files.newInputStream(file)) {
+		try {
 			return new SAXReader().read(input);
 		}
 		catch (DocumentException e) {
@@ -84,18 +191,16 @@ public class GpxFiles
 		}
 	}
 
-	private static void writeDocument(Document document, Path output) throws IOException
+	private static void writeDocument(Document document, OutputStream out) throws IOException
 	{
 		OutputFormat format = OutputFormat.createPrettyPrint();
 		format.setIndent("\t");
 		format.setLineSeparator("\n");
 		format.setEncoding("UTF-8");
 
-		try (OutputStream out = Files.newOutputStream(output)) {
-			XMLWriter writer = new XMLWriter(out, format);
-			writer.write(document);
-			writer.flush();
-		}
+		XMLWriter writer = new XMLWriter(out, format);
+		writer.write(document);
+		writer.flush();
 	}
 
 	/**
@@ -134,4 +239,12 @@ public class GpxFiles
 			collectNamespaces(it.next(), canonical, conflicting);
 		}
 	}
+
+	private static XMLInputFactory createXmlInputFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newFactory();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
 }
@@ -1,53 +1,74 @@
 package com.github.kvr000.zbynekgps.gpstool.gpx.io;
 
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpsCalculation;
 import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PackedPoints;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.github.kvr000.zbynekgps.gpstool.util.IntervalIndex;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import io.jenetics.jpx.Point;
 import io.jenetics.jpx.WayPoint;
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.mutable.MutableLong;
+import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.commons.lang3.tuple.Pair;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
+/**
+ * Repository of files indexed by time.
+ *
+ * The decoded files are kept in concurrent cache bounded by total number of points.  The lookups of cached files
+ * do not lock and each file is loaded at most once at a time, even if requested by multiple threads concurrently.
+ *
+ * The files are indexed as intervals, so the activities overlapping in time (recorded by multiple devices or
+ * long recordings spanning shorter ones) are all found, {@link OverlapPolicy} decides which one is picked.
+ */
 @Log4j2
 public class GpxRepo
 {
+	/** Default maximum number of points kept in cache */
+	public static final long DEFAULT_CACHE_POINTS = 2_000_000;
+
+	/** Maximum distance of point before the requested time */
+	public static final long POINT_TOLERANCE_MS = 10_000;
+
 	private final GpxLikeFiles gpxLikeFiles;
-	private final TreeMap<Long, Map.Entry<Long, Path>> timeToFiles;
+	private final IntervalIndex<FileRange> timeToFiles;
 
-	private Path lastPath;
-	private TreeMap<Long, WayPoint> content;
+	private final LoadingCache<Path, PackedPoints> contents;
 
 	public GpxRepo(GpxLikeFiles gpxLikeFiles, Collection<Path> files)
 	{
 		this.gpxLikeFiles = gpxLikeFiles;
+		this.contents = createCache(DEFAULT_CACHE_POINTS);
 		Stopwatch watch = Stopwatch.createStarted();
 		log.info("Indexing files: count={}", files.size());
 		try {
-			timeToFiles = files.parallelStream()
-				.map(file -> Pair.of(file, gpxLikeFiles.readGpxLikeSafe(file)))
-				.filter(p -> p.getRight() != null)
-				.map(p -> Pair.of(p.getLeft(), GpxUtil.expandToTimedWaypoints(p.getRight())))
-				.filter(p -> !p.getRight().isEmpty())
-				.map(p -> Map.entry(p.getRight().getFirst().getTime().get().toEpochMilli(),
-					Map.entry(p.getRight().getLast().getTime().get().toEpochMilli(), p.getLeft())
-				))
-				.collect(Collectors.toMap(
-					e -> e.getKey(),
-					e -> e.getValue(),
-					(a, b) -> a,
-					TreeMap::new
-				));
+			// streaming the points without materializing, the content is decoded into cache only when looked up:
+			timeToFiles = index(files.parallelStream()
+				.map(this::scanRange)
+				.filter(Objects::nonNull)
+			);
 			log.debug("timeToFiles: {}", timeToFiles);
 		}
 		finally {
@@ -56,36 +77,360 @@ public class GpxRepo
 
 	}
 
-	public synchronized Pair<WayPoint, Path> getEpochMilli(long milli)
+	/**
+	 * Scans the file for time of first and last timed track point.
+	 *
+	 * @param file
+	 * 	file to scan
+	 *
+	 * @return
+	 * 	time range of file, null if the file has no timed points or cannot be read.
+	 */
+	private FileRange scanRange(Path file)
 	{
-		Map.Entry<Long, Map.Entry<Long, Path>> found = timeToFiles.floorEntry(milli);
-		if (found == null) {
+		MutableLong first = new MutableLong(PointConsumer.NO_TIME);
+		MutableLong last = new MutableLong(PointConsumer.NO_TIME);
+		try {
+			gpxLikeFiles.scanPointsDecompressed(file, (latitude, longitude, time) -> {
+				if (time != PointConsumer.NO_TIME) {
+					if (first.longValue() == PointConsumer.NO_TIME) {
+						first.setValue(time);
+					}
+					last.setValue(time);
+				}
+				return true;
+			});
+		}
+		catch (IOException ex) {
+			log.error("Failed to read file: " + file + " : " + ex.getMessage(), ex);
 			return null;
 		}
-		final Map.Entry<Long, Path> mapping = found.getValue();
-		if (!mapping.getValue().equals(lastPath)) {
-			try {
-				content =
-					GpxUtil.expandToTimedWaypoints(gpxLikeFiles.readGpxDecompressed(mapping.getValue())).stream()
-					.collect(Collectors.toMap(
-						p -> p.getTime().get().toEpochMilli(),
-						p -> p,
-						(a, b) -> a,
-						TreeMap::new
-					));
-				lastPath = mapping.getValue();
+		return first.longValue() == PointConsumer.NO_TIME ? null : new FileRange(first.longValue(), last.longValue(), file);
+	}
+
+	/**
+	 * Creates repository from already known time ranges, without reading the files.
+	 *
+	 * @param gpxLikeFiles
+	 * 	reader of files
+	 * @param ranges
+	 * 	time ranges of files
+	 */
+	public GpxRepo(GpxLikeFiles gpxLikeFiles, Stream<FileRange> ranges)
+	{
+		this.gpxLikeFiles = gpxLikeFiles;
+		this.contents = createCache(DEFAULT_CACHE_POINTS);
+		this.timeToFiles = index(ranges);
+		log.info("Indexed repo from known ranges: files={}", timeToFiles.size());
+	}
+
+	private static IntervalIndex<FileRange> index(Stream<FileRange> ranges)
+	{
+		// the point may be found shortly after the end of file, extend the intervals by tolerance:
+		return new IntervalIndex<>(ranges.toList(), FileRange::getStart, range -> range.getEnd() + POINT_TOLERANCE_MS);
+	}
+
+	private LoadingCache<Path, PackedPoints> createCache(long maxPoints)
+	{
+		return CacheBuilder.newBuilder()
+			.maximumWeight(maxPoints)
+			.<Path, PackedPoints>weigher((path, content) -> Math.max(1, content.size()))
+			.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+			.recordStats()
+			.build(new CacheLoader<>()
+			{
+				@Override
+				public PackedPoints load(Path path) throws IOException
+				{
+					return PackedPoints.of(GpxUtil.expandToTimedWaypoints(gpxLikeFiles.readGpxDecompressed(path)));
+				}
+			});
+	}
+
+	/**
+	 * Finds the point at or shortly before the time, using {@link OverlapPolicy#NEAREST_POINT} policy.  The point
+	 * is rebuilt from packed content, it has only latitude, longitude, elevation and time, the extensions of
+	 * original point are not kept.
+	 *
+	 * @param milli
+	 * 	epoch milli to search
+	 *
+	 * @return
+	 * 	found point reduced to position and time, and its file, or null if not found.
+	 */
+	public Pair<WayPoint, Path> getEpochMilli(long milli)
+	{
+		return getEpochMilli(milli, OverlapPolicy.NEAREST_POINT);
+	}
+
+	/**
+	 * Finds the point at or shortly before the time.  The point is rebuilt from packed content, it has only latitude,
+	 * longitude, elevation and time, the extensions of original point are not kept.
+	 *
+	 * @param milli
+	 * 	epoch milli to search
+	 * @param policy
+	 * 	policy selecting the file if multiple files cover the time
+	 *
+	 * @return
+	 * 	found point reduced to position and time, and its file, or null if not found.
+	 */
+	public Pair<WayPoint, Path> getEpochMilli(long milli, OverlapPolicy policy)
+	{
+		List<FileRange> covering = timeToFiles.findCovering(milli);
+		Pair<WayPoint, Path> best = null;
+		switch (policy) {
+		case FIRST_STARTED:
+			for (FileRange range: covering) {
+				if ((best = findInFile(range.getPath(), milli, null)) != null) {
+					break;
+				}
+			}
+			break;
+
+		case LAST_STARTED:
+			for (FileRange range: covering.reversed()) {
+				if ((best = findInFile(range.getPath(), milli, null)) != null) {
+					break;
+				}
+			}
+			break;
+
+		case NEAREST_POINT:
+			for (FileRange range: covering) {
+				Pair<WayPoint, Path> found = findInFile(range.getPath(), milli, null);
+				if (found != null && (best == null ||
+					found.getLeft().getTime().get().isAfter(best.getLeft().getTime().get()))) {
+					best = found;
+				}
+			}
+			break;
+
+		default:
+			throw new IllegalArgumentException("Unsupported policy: " + policy);
+		}
+		return best;
+	}
+
+	/**
+	 * Finds the points at or shortly before the time in all files covering the time.
+	 *
+	 * @param milli
+	 * 	epoch milli to search
+	 *
+	 * @return
+	 * 	found points and their files, ordered by file start.
+	 */
+	public List<Pair<WayPoint, Path>> getAllEpochMilli(long milli)
+	{
+		List<Pair<WayPoint, Path>> result = new ArrayList<>(2);
+		timeToFiles.findCovering(milli, range -> {
+			Pair<WayPoint, Path> found = findInFile(range.getPath(), milli, null);
+			if (found != null) {
+				result.add(found);
 			}
-			catch (IOException e) {
-				throw new UncheckedIOException(e);
+		});
+		return result;
+	}
+
+	/**
+	 * Creates cursor for lookups in increasing time order.
+	 *
+	 * @return
+	 * 	new cursor, to be used by single thread.
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	private PackedPoints load(Path path)
+	{
+		try {
+			return contents.get(path);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException cause) {
+				throw new UncheckedIOException(cause);
 			}
+			throw new RuntimeException(ex.getCause());
 		}
-		Map.Entry<Long, WayPoint> entry = content.floorEntry(milli);
-		if (entry == null) {
+	}
+
+	private Pair<WayPoint, Path> findInFile(Path path, long milli, Map<Path, Integer> hints)
+	{
+		PackedPoints content = load(path);
+		int index;
+		if (hints != null) {
+			index = content.floorIndex(milli, hints.getOrDefault(path, -1));
+			hints.put(path, index);
+		}
+		else {
+			index = content.floorIndex(milli);
+		}
+		if (index < 0) {
 			return null;
 		}
-		if (milli - entry.getKey() >= 10_000) {
+		if (milli - content.getTime(index) >= POINT_TOLERANCE_MS) {
+			return null;
+		}
+		return Pair.of(content.toWayPoint(index), path);
+	}
+
+	/**
+	 * Gets statistics of decoded files cache.
+	 *
+	 * @return
+	 * 	cache statistics, including hits, misses and load times.
+	 */
+	public CacheStats getCacheStats()
+	{
+		return contents.stats();
+	}
+
+	/**
+	 * Cursor remembering the last found positions in files, so the following lookups with increasing time gallop
+	 * from there instead of searching whole file.
+	 */
+	public class Cursor
+	{
+		private final Map<Path, Integer> hints = new HashMap<>();
+
+		/**
+		 * Finds the points at or shortly before the time in all files covering the time.
+		 *
+		 * @param milli
+		 * 	epoch milli to search
+		 *
+		 * @return
+		 * 	found points and their files, ordered by file start.
+		 */
+		public List<Pair<WayPoint, Path>> getAllEpochMilli(long milli)
+		{
+			List<Pair<WayPoint, Path>> result = new ArrayList<>(2);
+			timeToFiles.findCovering(milli, range -> {
+				Pair<WayPoint, Path> found = findInFile(range.getPath(), milli, hints);
+				if (found != null) {
+					result.add(found);
+				}
+			});
+			return result;
+		}
+
+		/**
+		 * Locates the position at the time.  The position is interpolated between surrounding points if they are
+		 * close enough in time, otherwise the nearest point within tolerance is taken.  Interpolated positions are
+		 * preferred over nearest points when multiple files cover the time.
+		 *
+		 * @param milli
+		 * 	epoch milli to locate
+		 * @param maxGapMs
+		 * 	maximum time between surrounding points to interpolate
+		 * @param toleranceMs
+		 * 	maximum time distance of nearest point, if not interpolated
+		 *
+		 * @return
+		 * 	found location or null if not found.
+		 */
+		public Location locateEpochMilli(long milli, long maxGapMs, long toleranceMs)
+		{
+			MutableObject<Location> best = new MutableObject<>();
+			MutableLong bestDistance = new MutableLong(Long.MAX_VALUE);
+			long window = Math.max(maxGapMs, toleranceMs);
+			timeToFiles.findOverlapping(milli - window, milli + window, range -> {
+				PackedPoints content = load(range.getPath());
+				int index = content.floorIndex(milli, hints.getOrDefault(range.getPath(), -1));
+				hints.put(range.getPath(), index);
+				Location found = locateInFile(content, index, milli, maxGapMs, toleranceMs, range.getPath());
+				if (found != null) {
+					long distance = found.getMethod() == LocationMethod.NEAREST ?
+						Math.abs(found.getPoint().getTime().get().toEpochMilli() - milli) : 0;
+					if (distance < bestDistance.longValue()) {
+						best.setValue(found);
+						bestDistance.setValue(distance);
+					}
+				}
+			});
+			return best.getValue();
+		}
+	}
+
+	private static Location locateInFile(PackedPoints content, int index, long milli, long maxGapMs, long toleranceMs, Path path)
+	{
+		if (index >= 0 && content.getTime(index) == milli) {
+			return new Location(content.toWayPoint(index), path, LocationMethod.EXACT);
+		}
+		boolean hasNext = index + 1 < content.size();
+		if (index >= 0 && hasNext && content.getTime(index + 1) - content.getTime(index) <= maxGapMs) {
+			return new Location(
+				GpsCalculation.calculateMidpoint(content.toWayPoint(index), content.toWayPoint(index + 1), Instant.ofEpochMilli(milli)),
+				path,
+				LocationMethod.INTERPOLATED
+			);
+		}
+		long before = index >= 0 ? milli - content.getTime(index) : Long.MAX_VALUE;
+		long after = hasNext ? content.getTime(index + 1) - milli : Long.MAX_VALUE;
+		if (Math.min(before, after) > toleranceMs) {
 			return null;
 		}
-		return Pair.of(entry.getValue(), lastPath);
+		return new Location(content.toWayPoint(before <= after ? index : index + 1), path, LocationMethod.NEAREST);
+	}
+
+	/**
+	 * Located position.
+	 */
+	@Value
+	public static class Location
+	{
+		/** Position, with time of the nearest point if not interpolated */
+		Point point;
+
+		/** File containing the position */
+		Path path;
+
+		/** Method of locating */
+		LocationMethod method;
+	}
+
+	/**
+	 * Method how the location was determined.
+	 */
+	public enum LocationMethod
+	{
+		/** Point exists at the time */
+		EXACT,
+		/** Interpolated between surrounding points */
+		INTERPOLATED,
+		/** Nearest point within tolerance */
+		NEAREST,
+	}
+
+	/**
+	 * Policy of picking the file when multiple files cover the requested time.
+	 */
+	public enum OverlapPolicy
+	{
+		/** The file with point closest to requested time */
+		NEAREST_POINT,
+		/** The earliest started file having the point */
+		FIRST_STARTED,
+		/** The latest started file having the point */
+		LAST_STARTED,
+	}
+
+	/**
+	 * Time range covered by single file.
+	 */
+	@Value
+	public static class FileRange
+	{
+		/** Epoch milli of first timed point */
+		long start;
+
+		/** Epoch milli of last timed point */
+		long end;
+
+		/** File path */
+		Path path;
 	}
 }
@@ -1,15 +1,15 @@
 package com.github.kvr000.zbynekgps.gpstool.gpx.io;
 
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalog;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
 import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
 
 import jakarta.inject.Inject;
-import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 
 @RequiredArgsConstructor(onConstructor = @__(@Inject))
@@ -18,14 +18,25 @@ public class GpxRepoFactory
 {
 	private final GpxLikeFiles gpxLikeFiles; // TODO: make it a factory
 
+	private final GpxLikeDiscovery gpxLikeDiscovery;
+
 	public GpxRepo openRepo(Collection<Path> files)
 	{
 		return new GpxRepo(gpxLikeFiles, files);
 	}
 
-	public GpxRepo fromDir(Path dir) throws IOException
+	public GpxRepo fromCatalog(ActivityCatalog catalog)
+	{
+		return new GpxRepo(gpxLikeFiles, catalog.validEntries().stream()
+			.filter(entry -> entry.getStart() != null)
+			.map(entry -> new GpxRepo.FileRange(entry.getStart().toEpochMilli(), entry.getEnd().toEpochMilli(), entry.getPath()))
+		);
+	}
+
+	public GpxRepo fromDir(Path dir, Collection<String> includes, Collection<String> excludes)
 	{
-		Collection<File> files = FileUtils.listFiles(dir.toFile(), new String[]{".gpx", ".gpx.gz", ".fit", ".fit.gz"}, false);
-		return openRepo(files.stream().map(File::toPath).toList());
+		try (Stream<GpxLikeDiscovery.DiscoveredFile> files = gpxLikeDiscovery.discover(dir, includes, excludes)) {
+			return openRepo(files.map(GpxLikeDiscovery.DiscoveredFile::getPath).toList());
+		}
 	}
 }
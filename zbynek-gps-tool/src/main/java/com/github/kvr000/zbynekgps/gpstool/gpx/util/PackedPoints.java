@@ -0,0 +1,160 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import io.jenetics.jpx.WayPoint;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Timed points packed into primitive arrays, sorted by time.
+ *
+ * The times are kept in sorted long array, the coordinates in parallel double array of latitude, longitude and
+ * elevation triples.  This takes a fraction of memory of WayPoint objects and allows binary search without boxing.
+ * Points with duplicate time are dropped, the first one is kept.
+ */
+public class PackedPoints
+{
+	private final long[] times;
+
+	/** latitude, longitude, elevation triples, elevation is NaN if missing */
+	private final double[] coordinates;
+
+	private PackedPoints(long[] times, double[] coordinates)
+	{
+		this.times = times;
+		this.coordinates = coordinates;
+	}
+
+	/**
+	 * Packs the points.  The points must have time.
+	 *
+	 * @param points
+	 * 	timed points, in any order
+	 *
+	 * @return
+	 * 	packed points.
+	 */
+	public static PackedPoints of(List<WayPoint> points)
+	{
+		WayPoint[] sorted = points.toArray(WayPoint[]::new);
+		// stable sort, so the first of duplicates is kept:
+		Arrays.sort(sorted, Comparator.comparing(p -> p.getTime().get()));
+		long[] times = new long[sorted.length];
+		double[] coordinates = new double[sorted.length * 3];
+		int count = 0;
+		for (WayPoint point: sorted) {
+			long time = point.getTime().get().toEpochMilli();
+			if (count > 0 && times[count - 1] == time) {
+				continue;
+			}
+			times[count] = time;
+			coordinates[count * 3] = point.getLatitude().doubleValue();
+			coordinates[count * 3 + 1] = point.getLongitude().doubleValue();
+			coordinates[count * 3 + 2] = point.getElevation().map(Number::doubleValue).orElse(Double.NaN);
+			++count;
+		}
+		return new PackedPoints(
+			count == times.length ? times : Arrays.copyOf(times, count),
+			count == times.length ? coordinates : Arrays.copyOf(coordinates, count * 3)
+		);
+	}
+
+	public int size()
+	{
+		return times.length;
+	}
+
+	public long getTime(int index)
+	{
+		return times[index];
+	}
+
+	public double getLatitude(int index)
+	{
+		return coordinates[index * 3];
+	}
+
+	public double getLongitude(int index)
+	{
+		return coordinates[index * 3 + 1];
+	}
+
+	public double getElevation(int index)
+	{
+		return coordinates[index * 3 + 2];
+	}
+
+	/**
+	 * Materializes the point.  Only latitude, longitude, elevation and time are packed, so the other attributes and
+	 * extensions (such as heart rate or cadence) of the original point are not available.
+	 *
+	 * @param index
+	 * 	index of point
+	 *
+	 * @return
+	 * 	new WayPoint with latitude, longitude, time and elevation if known.
+	 */
+	public WayPoint toWayPoint(int index)
+	{
+		WayPoint.Builder builder = WayPoint.builder()
+			.lat(getLatitude(index))
+			.lon(getLongitude(index))
+			.time(Instant.ofEpochMilli(times[index]));
+		double elevation = getElevation(index);
+		if (!Double.isNaN(elevation)) {
+			builder.ele(elevation);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Finds the index of last point at or before the time.
+	 *
+	 * @param time
+	 * 	epoch milli
+	 *
+	 * @return
+	 * 	index of point or -1 if all points are after the time.
+	 */
+	public int floorIndex(long time)
+	{
+		return floorIndex(time, 0, times.length);
+	}
+
+	/**
+	 * Finds the index of last point at or before the time, galloping from the previously found index.  This is
+	 * faster than plain binary search when the callers query in increasing time order.
+	 *
+	 * @param time
+	 * 	epoch milli
+	 * @param hint
+	 * 	previously found index, may be -1
+	 *
+	 * @return
+	 * 	index of point or -1 if all points are after the time.
+	 */
+	public int floorIndex(long time, int hint)
+	{
+		if (hint < 0 || hint >= times.length || times[hint] > time) {
+			return floorIndex(time);
+		}
+		int low = hint;
+		int step = 1;
+		int high = hint + step;
+		while (high < times.length && times[high] <= time) {
+			low = high;
+			step <<= 1;
+			high = low + step;
+		}
+		return floorIndex(time, low, Math.min(high, times.length));
+	}
+
+	private int floorIndex(long time, int from, int to)
+	{
+		int found = Arrays.binarySearch(times, from, to, time);
+		return found >= 0 ? found : -found - 2;
+	}
+}
@@ -0,0 +1,222 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleGrid;
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleKernel;
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCircle;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Points split into fixed size blocks with precomputed bounding boxes.
+ *
+ * The searches test the circles against block bounding box first and skip whole blocks which cannot contain any
+ * matching point, so the searches far from the track cost only a few checks per file.  The points of remaining
+ * blocks are evaluated by {@link CircleKernel} into bitmap, one block fitting single mask.  Very long activities
+ * are split into chunks evaluated in parallel by ForkJoin pool provided by caller, still returning the first match.
+ */
+public class PointBlocks
+{
+	public static final int BLOCK_SIZE = CircleKernel.MASK_SIZE;
+
+	/** Minimum number of points to search in parallel, shorter activities are searched sequentially */
+	public static final int PARALLEL_MIN_POINTS = 64 * 1024;
+
+	/** Number of blocks in chunk of parallel search */
+	static final int PARALLEL_CHUNK_BLOCKS = 256;
+
+	private final List<WayPoint> points;
+
+	private final double[] latitudes;
+
+	private final double[] longitudes;
+
+	/** bitmap of points with time, per block */
+	private final long[] timedMasks;
+
+	/** minLat, minLon, maxLat, maxLon quadruples per block */
+	private final double[] boxes;
+
+	private PointBlocks(List<WayPoint> points)
+	{
+		this.points = points;
+		int size = points.size();
+		this.latitudes = new double[size];
+		this.longitudes = new double[size];
+		this.timedMasks = new long[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		this.boxes = new double[(size + BLOCK_SIZE - 1) / BLOCK_SIZE * 4];
+		for (int i = 0; i < size; ++i) {
+			WayPoint point = points.get(i);
+			latitudes[i] = point.getLatitude().doubleValue();
+			longitudes[i] = point.getLongitude().doubleValue();
+			if (point.getTime().isPresent()) {
+				timedMasks[i / BLOCK_SIZE] |= 1L << (i % BLOCK_SIZE);
+			}
+		}
+		for (int block = 0, start = 0; start < size; ++block, start += BLOCK_SIZE) {
+			double minLat = Double.POSITIVE_INFINITY, minLon = Double.POSITIVE_INFINITY;
+			double maxLat = Double.NEGATIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+			for (int i = start, end = Math.min(start + BLOCK_SIZE, size); i < end; ++i) {
+				minLat = Math.min(minLat, latitudes[i]);
+				maxLat = Math.max(maxLat, latitudes[i]);
+				minLon = Math.min(minLon, longitudes[i]);
+				maxLon = Math.max(maxLon, longitudes[i]);
+			}
+			boxes[block * 4] = minLat;
+			boxes[block * 4 + 1] = minLon;
+			boxes[block * 4 + 2] = maxLat;
+			boxes[block * 4 + 3] = maxLon;
+		}
+	}
+
+	/**
+	 * Creates blocks from all track points of GPX, in their order.
+	 *
+	 * @param gpx
+	 * 	source content
+	 *
+	 * @return
+	 * 	blocks of points.
+	 */
+	public static PointBlocks of(GPX gpx)
+	{
+		return new PointBlocks(GpxUtil.expandToWaypoints(gpx));
+	}
+
+	public int size()
+	{
+		return points.size();
+	}
+
+	public WayPoint getPoint(int index)
+	{
+		return points.get(index);
+	}
+
+	public double getLatitude(int index)
+	{
+		return latitudes[index];
+	}
+
+	public double getLongitude(int index)
+	{
+		return longitudes[index];
+	}
+
+	/**
+	 * Finds first point within any of circles.
+	 *
+	 * @param from
+	 * 	index of point to start from
+	 * @param circles
+	 * 	circles as lat,lon,radius triples
+	 * @param timedOnly
+	 * 	whether to consider only points with time
+	 *
+	 * @return
+	 * 	index of first matching point or -1 if none matches.
+	 */
+	public int findFirstWithin(int from, double[][] circles, boolean timedOnly)
+	{
+		return findFirstWithin(from, CircleGrid.of(circles), timedOnly, CircleKernel.scalar(), null);
+	}
+
+	/**
+	 * Finds first point within any of circles of the grid.  Only the circles registered in cells of block bounding
+	 * box are evaluated for each block.
+	 *
+	 * @param from
+	 * 	index of point to start from
+	 * @param circles
+	 * 	grid of circles
+	 * @param timedOnly
+	 * 	whether to consider only points with time
+	 * @param kernel
+	 * 	kernel evaluating the points
+	 * @param pool
+	 * 	pool searching long activities in parallel, null to search sequentially
+	 *
+	 * @return
+	 * 	index of first matching point or -1 if none matches.
+	 */
+	public int findFirstWithin(int from, CircleGrid circles, boolean timedOnly, CircleKernel kernel, ForkJoinPool pool)
+	{
+		return findFirstWithin(from, circles, timedOnly, kernel, pool, PARALLEL_MIN_POINTS);
+	}
+
+	int findFirstWithin(int from, CircleGrid circles, boolean timedOnly, CircleKernel kernel, ForkJoinPool pool, int parallelMinPoints)
+	{
+		int blockCount = timedMasks.length;
+		if (pool == null || latitudes.length - from < parallelMinPoints) {
+			return findFirstInBlocks(from, from / BLOCK_SIZE, blockCount, circles, timedOnly, kernel, null);
+		}
+		// the first match found so far bounds the search, the chunks after it stop early:
+		AtomicInteger bound = new AtomicInteger(Integer.MAX_VALUE);
+		return pool.invoke(new FindFirstTask(from, from / BLOCK_SIZE, blockCount, circles, timedOnly, kernel, bound));
+	}
+
+	private int findFirstInBlocks(int from, int blockStart, int blockEnd, CircleGrid circles, boolean timedOnly, CircleKernel kernel,
+				      AtomicInteger bound)
+	{
+		for (int block = blockStart, start = block * BLOCK_SIZE; block < blockEnd; ++block, start += BLOCK_SIZE) {
+			if (bound != null && start >= bound.get()) {
+				return -1;
+			}
+			int end = Math.min(start + BLOCK_SIZE, latitudes.length);
+			long allowed = (timedOnly ? timedMasks[block] : -1L) & (-1L << Math.max(from - start, 0));
+			if (allowed == 0) {
+				continue;
+			}
+			long found = 0;
+			for (GeoCircle circle: circles.findCandidates(boxes[block * 4], boxes[block * 4 + 1], boxes[block * 4 + 2], boxes[block * 4 + 3])) {
+				found |= kernel.maskWithin(latitudes, longitudes, start, end, circle) & allowed;
+			}
+			if (found != 0) {
+				int index = start + Long.numberOfTrailingZeros(found);
+				if (bound != null) {
+					bound.accumulateAndGet(index, Math::min);
+				}
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	@RequiredArgsConstructor
+	private class FindFirstTask extends RecursiveTask<Integer>
+	{
+		final int from;
+
+		final int blockStart;
+
+		final int blockEnd;
+
+		final CircleGrid circles;
+
+		final boolean timedOnly;
+
+		final CircleKernel kernel;
+
+		final AtomicInteger bound;
+
+		@Override
+		protected Integer compute()
+		{
+			if (blockEnd - blockStart <= PARALLEL_CHUNK_BLOCKS) {
+				return findFirstInBlocks(from, blockStart, blockEnd, circles, timedOnly, kernel, bound);
+			}
+			int middle = (blockStart + blockEnd) >>> 1;
+			FindFirstTask tail = new FindFirstTask(from, middle, blockEnd, circles, timedOnly, kernel, bound);
+			tail.fork();
+			int head = new FindFirstTask(from, blockStart, middle, circles, timedOnly, kernel, bound).compute();
+			int tailFound = tail.join();
+			return head >= 0 ? head : tailFound;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+
+/**
+ * Consumer of track points streamed from file, without materializing the content.
+ */
+@FunctionalInterface
+public interface PointConsumer
+{
+	/** Time of point without time */
+	long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * Consumes the point.
+	 *
+	 * @param latitude
+	 * 	point latitude
+	 * @param longitude
+	 * 	point longitude
+	 * @param time
+	 * 	epoch milli or {@link #NO_TIME} if the point has no time
+	 *
+	 * @return
+	 * 	true to continue, false to stop scanning.
+	 */
+	boolean accept(double latitude, double longitude, long time);
+}
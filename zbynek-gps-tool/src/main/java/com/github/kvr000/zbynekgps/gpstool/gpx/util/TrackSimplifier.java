@@ -0,0 +1,155 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Track;
+import io.jenetics.jpx.TrackSegment;
+import io.jenetics.jpx.WayPoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Geometric simplification of tracks by Douglas-Peucker algorithm.
+ *
+ * The points are projected into local plane in meters and the algorithm keeps only the points deviating from the
+ * simplified line by more than tolerance.  It runs iteratively with explicit stack over primitive arrays, so no
+ * recursion depth limit applies.  The typical cost is O(n log n), the worst case is O(n^2) when each split separates
+ * single point only, such as for spiral.  The first and last point are always kept.
+ */
+public class TrackSimplifier
+{
+	/**
+	 * Simplifies the points in plane.
+	 *
+	 * @param x
+	 * 	x coordinates in meters
+	 * @param y
+	 * 	y coordinates in meters
+	 * @param tolerance
+	 * 	maximum distance of removed point from simplified line, in meters
+	 *
+	 * @return
+	 * 	flags of points to keep.
+	 */
+	public static boolean[] simplify(double[] x, double[] y, double tolerance)
+	{
+		int count = x.length;
+		boolean[] keep = new boolean[count];
+		if (count <= 2) {
+			Arrays.fill(keep, true);
+			return keep;
+		}
+		keep[0] = keep[count - 1] = true;
+		double toleranceSquared = tolerance * tolerance;
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while (top > 0) {
+			int end = stack[--top];
+			int start = stack[--top];
+			double dx = x[end] - x[start], dy = y[end] - y[start];
+			double lengthSquared = dx * dx + dy * dy;
+			double maxDistance = -1;
+			int farthest = -1;
+			for (int i = start + 1; i < end; ++i) {
+				double distance = segmentDistanceSquared(x[i] - x[start], y[i] - y[start], dx, dy, lengthSquared);
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					farthest = i;
+				}
+			}
+			if (maxDistance > toleranceSquared) {
+				keep[farthest] = true;
+				if (top + 4 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				if (farthest - start > 1) {
+					stack[top++] = start;
+					stack[top++] = farthest;
+				}
+				if (end - farthest > 1) {
+					stack[top++] = farthest;
+					stack[top++] = end;
+				}
+			}
+		}
+		return keep;
+	}
+
+	/**
+	 * Simplifies the points.
+	 *
+	 * @param points
+	 * 	points of single segment
+	 * @param tolerance
+	 * 	maximum distance of removed point from simplified line, in meters
+	 *
+	 * @return
+	 * 	kept points, the original list if none was removed.
+	 */
+	public static List<WayPoint> simplify(List<WayPoint> points, double tolerance)
+	{
+		int count = points.size();
+		if (count <= 2) {
+			return points;
+		}
+		double[] x = new double[count];
+		double[] y = new double[count];
+		double metersPerDegree = GeoCalc.EARTH_RADIUS * Math.PI / 180;
+		double lonScale = metersPerDegree * Math.cos(Math.toRadians(points.get(0).getLatitude().doubleValue()));
+		double previousLon = points.get(0).getLongitude().doubleValue();
+		double unwrappedLon = previousLon;
+		for (int i = 0; i < count; ++i) {
+			WayPoint point = points.get(i);
+			double lon = point.getLongitude().doubleValue();
+			// unwrapping longitude, so crossing antimeridian does not jump around the world:
+			unwrappedLon += Math.IEEEremainder(lon - previousLon, 360);
+			previousLon = lon;
+			x[i] = unwrappedLon * lonScale;
+			y[i] = point.getLatitude().doubleValue() * metersPerDegree;
+		}
+		boolean[] keep = simplify(x, y, tolerance);
+		List<WayPoint> out = new ArrayList<>();
+		for (int i = 0; i < count; ++i) {
+			if (keep[i]) {
+				out.add(points.get(i));
+			}
+		}
+		return out.size() == count ? points : out;
+	}
+
+	/**
+	 * Simplifies all segments of all tracks.
+	 *
+	 * @param gpx
+	 * 	GPX content
+	 * @param tolerance
+	 * 	maximum distance of removed point from simplified line, in meters
+	 *
+	 * @return
+	 * 	simplified content.
+	 */
+	public static GPX simplify(GPX gpx, double tolerance)
+	{
+		List<Track> tracks = new ArrayList<>(gpx.getTracks().size());
+		for (Track track: gpx.getTracks()) {
+			List<TrackSegment> segments = new ArrayList<>(track.getSegments().size());
+			for (TrackSegment segment: track.getSegments()) {
+				segments.add(segment.toBuilder().points(simplify(segment.getPoints(), tolerance)).build());
+			}
+			tracks.add(track.toBuilder().segments(segments).build());
+		}
+		return gpx.toBuilder().tracks(tracks).build();
+	}
+
+	private static double segmentDistanceSquared(double px, double py, double dx, double dy, double lengthSquared)
+	{
+		double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+		double ex = px - t * dx, ey = py - t * dy;
+		return ex * ex + ey * ey;
+	}
+}
@@ -0,0 +1,295 @@
+package com.github.kvr000.zbynekgps.gpstool.gpxlike.io;
+
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * Discovers GPX like files in directory tree.
+ *
+ * The directories are listed in parallel, each one by separate virtual thread, ahead of the consumer, so the
+ * processing can start before the whole tree is walked.  The files are still streamed in deterministic order, depth
+ * first with entries of each directory sorted by name.  The entries which disappear or cannot be read during the
+ * walk are skipped with warning, failure to list a directory fails the stream.
+ */
+@Log4j2
+public class GpxLikeDiscovery
+{
+	public static final List<String> DEFAULT_INCLUDES = List.of("**.{gpx,gpx.gz,fit,fit.gz}");
+
+	/** Maximum number of directories listed ahead of consumer */
+	private static final int LOOKAHEAD_DIRECTORIES = 256;
+
+	/**
+	 * Discovers the files with default extensions.
+	 *
+	 * @param root
+	 * 	root directory
+	 *
+	 * @return
+	 * 	stream of found files, must be closed to stop walking.
+	 */
+	public Stream<DiscoveredFile> discover(Path root)
+	{
+		return discover(root, List.of(), List.of());
+	}
+
+	/**
+	 * Discovers the files matching the globs.  The globs are matched against path relative to root directory,
+	 * excludes are applied to directories too, skipping their whole subtree.
+	 *
+	 * @param root
+	 * 	root directory
+	 * @param includes
+	 * 	globs to include, default GPX and FIT extensions if empty
+	 * @param excludes
+	 * 	globs to exclude
+	 *
+	 * @return
+	 * 	stream of found files, must be closed to stop walking.
+	 */
+	public Stream<DiscoveredFile> discover(Path root, Collection<String> includes, Collection<String> excludes)
+	{
+		FileSystem fileSystem = root.getFileSystem();
+		List<PathMatcher> includeMatchers = (includes.isEmpty() ? DEFAULT_INCLUDES : includes).stream()
+			.map(glob -> fileSystem.getPathMatcher("glob:" + glob))
+			.toList();
+		List<PathMatcher> excludeMatchers = excludes.stream()
+			.map(glob -> fileSystem.getPathMatcher("glob:" + glob))
+			.toList();
+		Walker walker = new Walker(root, includeMatchers, excludeMatchers);
+		walker.start();
+		return StreamSupport.stream(walker, false)
+			.onClose(walker::close);
+	}
+
+	@Value
+	public static class DiscoveredFile
+	{
+		Path path;
+
+		long size;
+
+		long mtime;
+	}
+
+	private static class Walker extends Spliterators.AbstractSpliterator<DiscoveredFile>
+	{
+		private final Path root;
+
+		private final List<PathMatcher> includes;
+
+		private final List<PathMatcher> excludes;
+
+		private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+		/** permits for directories listed ahead of consumer */
+		private final Semaphore lookahead = new Semaphore(LOOKAHEAD_DIRECTORIES);
+
+		/** iterators over listed directories on the path to current entry */
+		private final Deque<Iterator<Object>> stack = new ArrayDeque<>();
+
+		private final Listing rootListing;
+
+		public Walker(Path root, List<PathMatcher> includes, List<PathMatcher> excludes)
+		{
+			super(Long.MAX_VALUE, Spliterator.NONNULL | Spliterator.DISTINCT | Spliterator.ORDERED);
+			this.root = root;
+			this.includes = includes;
+			this.excludes = excludes;
+			this.rootListing = new Listing(root);
+			stack.push(List.<Object>of(rootListing).iterator());
+		}
+
+		public void start()
+		{
+			rootListing.start(false);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super DiscoveredFile> action)
+		{
+			while (!stack.isEmpty()) {
+				Iterator<Object> top = stack.peek();
+				if (!top.hasNext()) {
+					stack.pop();
+					continue;
+				}
+				Object item = top.next();
+				if (item instanceof Listing listing) {
+					stack.push(open(listing).iterator());
+					continue;
+				}
+				action.accept((DiscoveredFile) item);
+				return true;
+			}
+			return false;
+		}
+
+		public void close()
+		{
+			stack.clear();
+			executor.shutdownNow();
+		}
+
+		private List<Object> open(Listing listing)
+		{
+			listing.start(false);
+			try {
+				return listing.entries.get();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex) {
+				close();
+				throw new UncheckedIOException(
+					new IOException("Failed to list directory: " + listing.dir + " : " + ex.getCause().getMessage(), ex.getCause()));
+			}
+			finally {
+				if (listing.prefetched) {
+					lookahead.release();
+				}
+			}
+		}
+
+		/**
+		 * Lists the directory into entries sorted by name, the files as DiscoveredFile and the subdirectories as
+		 * Listing.
+		 */
+		private List<Object> listDirectory(Path dir) throws IOException
+		{
+			List<Path> paths = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				entries.forEach(paths::add);
+			}
+			paths.sort(Comparator.comparing(path -> path.getFileName().toString()));
+			List<Object> result = new ArrayList<>();
+			for (Path entry: paths) {
+				Path relative = root.relativize(entry);
+				if (excludes.stream().anyMatch(matcher -> matcher.matches(relative))) {
+					continue;
+				}
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				}
+				catch (IOException ex) {
+					log.warn("Failed to read attributes, skipping: file={} : {}", entry, ex.getMessage());
+					continue;
+				}
+				if (attributes.isSymbolicLink()) {
+					// follow links to files only, links to directories may create cycles:
+					try {
+						attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+					}
+					catch (IOException ex) {
+						log.warn("Failed to resolve link, skipping: file={} : {}", entry, ex.getMessage());
+						continue;
+					}
+					if (attributes.isDirectory()) {
+						continue;
+					}
+				}
+				if (attributes.isDirectory()) {
+					result.add(new Listing(entry));
+				}
+				else if (attributes.isRegularFile() && includes.stream().anyMatch(matcher -> matcher.matches(relative))) {
+					result.add(new DiscoveredFile(entry, attributes.size(), attributes.lastModifiedTime().toMillis()));
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Directory listed in background.  The consumer waits for the listing once it reaches the directory, the
+		 * subdirectories are listed ahead while the lookahead permits are available.
+		 */
+		private class Listing
+		{
+			final Path dir;
+
+			final AtomicBoolean started = new AtomicBoolean();
+
+			final CompletableFuture<List<Object>> entries = new CompletableFuture<>();
+
+			/** whether listed ahead, holding lookahead permit until opened */
+			volatile boolean prefetched;
+
+			Listing(Path dir)
+			{
+				this.dir = dir;
+			}
+
+			boolean start(boolean prefetch)
+			{
+				if (!started.compareAndSet(false, true)) {
+					return false;
+				}
+				prefetched = prefetch;
+				try {
+					executor.execute(this::list);
+				}
+				catch (RejectedExecutionException ex) {
+					// the walk was closed:
+					entries.completeExceptionally(ex);
+				}
+				return true;
+			}
+
+			private void list()
+			{
+				List<Object> listed;
+				try {
+					listed = listDirectory(dir);
+				}
+				catch (IOException|RuntimeException ex) {
+					// DirectoryIteratorException and others, the consumer must not wait forever:
+					entries.completeExceptionally(ex);
+					return;
+				}
+				entries.complete(listed);
+				for (Object entry: listed) {
+					if (entry instanceof Listing child) {
+						if (!lookahead.tryAcquire()) {
+							break;
+						}
+						if (!child.start(true)) {
+							lookahead.release();
+						}
+					}
+				}
+			}
+		}
+	}
+}
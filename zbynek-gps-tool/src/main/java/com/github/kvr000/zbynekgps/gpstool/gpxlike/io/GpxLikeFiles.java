@@ -3,21 +3,19 @@ package com.github.kvr000.zbynekgps.gpstool.gpxlike.io;
 import com.github.kvr000.zbynekgps.gpstool.compress.AutoDecompressInputStream;
 import com.github.kvr000.zbynekgps.gpstool.fit.io.FitFiles;
 import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
 import com.google.common.base.Stopwatch;
 import io.jenetics.jpx.GPX;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import jakarta.inject.Inject;
 import java.io.BufferedInputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
@@ -54,32 +52,117 @@ public class GpxLikeFiles
 	{
 		Stopwatch stopwatch = Stopwatch.createStarted();
 		try (InputStream stream = Files.newInputStream(input)) {
-			InputStream real = stream;
-			String filename = input.getFileName().toString();
-			String ext = FilenameUtils.getExtension(filename);
-			if (ext.equals("gz")) {
-				real = new GZIPInputStream(stream);
-				filename = FilenameUtils.removeExtension(filename);
-				ext = FilenameUtils.getExtension(filename);
+			return readGpxDecompressed(stream, input.getFileName().toString());
+		}
+		finally {
+			log.debug("Read GPX like file: file={} time={}us", input, stopwatch.elapsed(TimeUnit.MICROSECONDS));
+		}
+	}
+
+	/**
+	 * Reads GPX like content, detecting the format from file name extension.
+	 *
+	 * @param stream
+	 * 	input stream, not closed by this method
+	 * @param filename
+	 * 	name of the file the content comes from
+	 *
+	 * @return
+	 * 	parsed content
+	 *
+	 * @throws IOException
+	 * 	if reading or parsing fails
+	 */
+	public GPX readGpxDecompressed(InputStream stream, String filename) throws IOException
+	{
+		InputStream real = stream;
+		String ext = FilenameUtils.getExtension(filename);
+		if (ext.equals("gz")) {
+			real = new GZIPInputStream(stream);
+			filename = FilenameUtils.removeExtension(filename);
+			ext = FilenameUtils.getExtension(filename);
+		}
+		if (ext.equals("fit")) {
+			return fitFiles.readFit(real);
+		}
+		else if (ext.equals("gpx")) {
+			return gpxFiles.readGpx(real);
+		}
+		else {
+			try {
+				// let try autodetect, sometimes it has weird extension:
+				return readGpx(real);
 			}
-			if (ext.equals("fit")) {
-				return fitFiles.readFit(real);
+			catch (IOException ex) {
+				throw new IOException("Unsupported extension: " + ext);
 			}
-			else if (ext.equals("gpx")) {
-				return gpxFiles.readGpx(real);
+		}
+	}
+
+	/**
+	 * Scans track points of GPX like content, detecting the format from file name extension.  The content is not
+	 * materialized and the decoding ends as soon as consumer stops.
+	 *
+	 * @param stream
+	 * 	input stream, not closed by this method
+	 * @param filename
+	 * 	name of the file the content comes from
+	 * @param consumer
+	 * 	consumer of points, may stop the scanning
+	 *
+	 * @return
+	 * 	true if whole content was scanned, false if stopped by consumer.
+	 *
+	 * @throws IOException
+	 * 	if reading or parsing fails
+	 */
+	public boolean scanPointsDecompressed(InputStream stream, String filename, PointConsumer consumer) throws IOException
+	{
+		InputStream real = stream;
+		String ext = FilenameUtils.getExtension(filename);
+		if (ext.equals("gz")) {
+			real = new GZIPInputStream(stream);
+			filename = FilenameUtils.removeExtension(filename);
+			ext = FilenameUtils.getExtension(filename);
+		}
+		if (ext.equals("fit")) {
+			return fitFiles.scanFit(real, consumer);
+		}
+		else if (ext.equals("gpx")) {
+			return gpxFiles.scanGpx(real, consumer);
+		}
+		else {
+			try {
+				return scanPoints(real, consumer);
 			}
-			else {
-				try {
-					// let try autodetect, sometimes it has weird extension:
-					return readGpx(real);
-				}
-				catch (IOException ex) {
-					throw new IOException("Unsupported extension: " + ext);
-				}
+			catch (IOException ex) {
+				throw new IOException("Unsupported extension: " + ext);
 			}
 		}
+	}
+
+	public boolean scanPointsDecompressed(Path input, PointConsumer consumer) throws IOException
+	{
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		try (InputStream stream = Files.newInputStream(input)) {
+			return scanPointsDecompressed(stream, input.getFileName().toString(), consumer);
+		}
 		finally {
-			log.debug("Read GPX like file: file={} time={}us", input, stopwatch.elapsed(TimeUnit.MICROSECONDS));
+			log.debug("Scanned GPX like file: file={} time={}us", input, stopwatch.elapsed(TimeUnit.MICROSECONDS));
+		}
+	}
+
+	private boolean scanPoints(InputStream input, PointConsumer consumer) throws IOException
+	{
+		InputStream buffered = new BufferedInputStream(input, 1024);
+		buffered.mark(12);
+		byte[] header = buffered.readNBytes(12);
+		buffered.reset();
+		if (header.length == 12 && header[8] == '.' && header[9] == 'F' && header[10] == 'I' && header[11] == 'T') {
+			return fitFiles.scanFit(buffered, consumer);
+		}
+		else {
+			return gpxFiles.scanGpx(buffered, consumer);
 		}
 	}
 
@@ -99,9 +182,8 @@ public class GpxLikeFiles
 		gpxFiles.writeGpx(output, gpx);
 	}
 
-	public List<Path> listFiles(Path dir) throws IOException
+	public byte[] serializeGpx(GPX gpx) throws IOException
 	{
-		return FileUtils.listFiles(dir.toFile(), new String[]{ "gpx", "gpx.gz", "fit", "fit.gz" }, false)
-			.stream().map(File::toPath).toList();
+		return gpxFiles.serializeGpx(gpx);
 	}
 }
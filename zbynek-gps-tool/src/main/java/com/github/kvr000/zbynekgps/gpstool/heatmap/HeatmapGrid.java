@@ -0,0 +1,362 @@
+package com.github.kvr000.zbynekgps.gpstool.heatmap;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Grid of activity counters over Web Mercator pixels of single zoom level, limited to bounding box.
+ *
+ * The counters live in memory mapped temporary file, so the grid can be much larger than heap and the pages not
+ * touched by any activity do not consume memory at all.  The file should be on disk rather than tmpfs, otherwise the
+ * touched pages still count against memory.  The activities are rasterized by {@link Rasterizer}, which
+ * collects the pixels of one activity privately and then merges them into grid by atomic increments, so each
+ * activity counts at most once per pixel and any number of threads can rasterize concurrently.
+ */
+@Log4j2
+public class HeatmapGrid implements Closeable
+{
+	/** Size of tile in pixels */
+	public static final int TILE_SIZE = 256;
+
+	/** Maximum latitude of Web Mercator projection */
+	public static final double MAX_LATITUDE = 85.05112878;
+
+	/** Longest segment drawn as line, longer ones are considered as gap in recording */
+	static final double MAX_SEGMENT_METERS = 10_000;
+
+	private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	/** Number of counters per mapped chunk */
+	private static final int CHUNK_SHIFT = 28;
+
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	@Getter
+	private final int zoom;
+
+	/** Global pixel coordinates of top left corner */
+	@Getter
+	private final long originX;
+
+	@Getter
+	private final long originY;
+
+	@Getter
+	private final int width;
+
+	@Getter
+	private final int height;
+
+	/** Directory of backing file, null for default temporary directory */
+	private final Path directory;
+
+	private final MappedByteBuffer[] chunks;
+
+	private HeatmapGrid(Path directory, int zoom, long originX, long originY, int width, int height) throws IOException
+	{
+		this.directory = directory;
+		this.zoom = zoom;
+		this.originX = originX;
+		this.originY = originY;
+		this.width = width;
+		this.height = height;
+		long size = (long) width * height;
+		this.chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+		Path file = directory == null ? Files.createTempFile("heatmap", ".grid") :
+			Files.createTempFile(directory, "heatmap", ".grid");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			for (int i = 0; i < chunks.length; ++i) {
+				long start = (long) i << CHUNK_SHIFT;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start * Integer.BYTES,
+					Math.min(CHUNK_MASK + 1, size - start) * Integer.BYTES);
+			}
+		}
+		finally {
+			// the mapping stays valid after the file is removed:
+			try {
+				Files.delete(file);
+			}
+			catch (IOException ex) {
+				file.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Creates grid covering the bounding box, backed by file in default temporary directory.
+	 *
+	 * @param zoom
+	 * 	zoom level, world is 256 * 2^zoom pixels wide
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	empty grid.
+	 *
+	 * @throws IOException
+	 * 	if the backing file cannot be created
+	 * @throws IllegalArgumentException
+	 * 	if the grid would be too large
+	 */
+	public static HeatmapGrid create(int zoom, double minLat, double minLon, double maxLat, double maxLon) throws IOException
+	{
+		return create(null, zoom, minLat, minLon, maxLat, maxLon);
+	}
+
+	/**
+	 * Creates grid covering the bounding box.
+	 *
+	 * @param directory
+	 * 	directory of backing file, null for default temporary directory
+	 * @param zoom
+	 * 	zoom level, world is 256 * 2^zoom pixels wide
+	 * @param minLat
+	 * 	bounding box minimal latitude
+	 * @param minLon
+	 * 	bounding box minimal longitude
+	 * @param maxLat
+	 * 	bounding box maximal latitude
+	 * @param maxLon
+	 * 	bounding box maximal longitude
+	 *
+	 * @return
+	 * 	empty grid.
+	 *
+	 * @throws IOException
+	 * 	if the backing file cannot be created
+	 * @throws IllegalArgumentException
+	 * 	if the grid would be too large
+	 */
+	public static HeatmapGrid create(Path directory, int zoom, double minLat, double minLon, double maxLat, double maxLon) throws IOException
+	{
+		if (zoom < 0 || zoom > 30) {
+			throw new IllegalArgumentException("Zoom must be within 0 and 30: " + zoom);
+		}
+		long worldSize = (long) TILE_SIZE << zoom;
+		long x0 = (long) Math.floor(projectX(minLon, worldSize));
+		long x1 = Math.min(worldSize, (long) Math.floor(projectX(maxLon, worldSize)) + 1);
+		long y0 = (long) Math.floor(projectY(maxLat, worldSize));
+		long y1 = Math.min(worldSize, (long) Math.floor(projectY(minLat, worldSize)) + 1);
+		if (x1 <= x0 || y1 <= y0) {
+			throw new IllegalArgumentException("Empty bounding box: " + minLat + "," + minLon + "," + maxLat + "," + maxLon);
+		}
+		if (x1 - x0 > Integer.MAX_VALUE || y1 - y0 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Grid too large, decrease zoom or bounding box: width=" + (x1 - x0) + " height=" + (y1 - y0));
+		}
+		log.info("Creating heatmap grid: zoom={} width={} height={} size={} MB", zoom, x1 - x0, y1 - y0,
+			(x1 - x0) * (y1 - y0) * Integer.BYTES >> 20);
+		return new HeatmapGrid(directory, zoom, x0, y0, (int) (x1 - x0), (int) (y1 - y0));
+	}
+
+	/**
+	 * Creates grid of lower zoom level, each pixel being maximum of the four pixels it covers.  The backing file is
+	 * created in the same directory as of this grid.
+	 *
+	 * @return
+	 * 	grid of zoom level lower by one.
+	 */
+	public HeatmapGrid downsample() throws IOException
+	{
+		if (zoom == 0) {
+			throw new IllegalStateException("Cannot downsample zoom level 0");
+		}
+		long x0 = Math.floorDiv(originX, 2), y0 = Math.floorDiv(originY, 2);
+		long x1 = Math.floorDiv(originX + width + 1, 2), y1 = Math.floorDiv(originY + height + 1, 2);
+		HeatmapGrid lower = new HeatmapGrid(directory, zoom - 1, x0, y0, (int) (x1 - x0), (int) (y1 - y0));
+		for (int y = 0; y < height; ++y) {
+			int lowerY = (int) ((originY + y) / 2 - y0);
+			for (int x = 0; x < width; ++x) {
+				int count = get(x, y);
+				if (count != 0) {
+					int lowerX = (int) ((originX + x) / 2 - x0);
+					lower.set(lowerX, lowerY, Math.max(lower.get(lowerX, lowerY), count));
+				}
+			}
+		}
+		return lower;
+	}
+
+	/**
+	 * Gets the counter.
+	 *
+	 * @param x
+	 * 	column relative to origin
+	 * @param y
+	 * 	row relative to origin
+	 *
+	 * @return
+	 * 	number of activities passing the pixel.
+	 */
+	public int get(int x, int y)
+	{
+		long index = (long) y * width + x;
+		return (int) INT_HANDLE.get(chunks[(int) (index >>> CHUNK_SHIFT)], (int) (index & CHUNK_MASK) * Integer.BYTES);
+	}
+
+	/**
+	 * Gets the maximum of counters.
+	 *
+	 * @return
+	 * 	maximum counter value.
+	 */
+	public int max()
+	{
+		int max = 0;
+		for (MappedByteBuffer chunk: chunks) {
+			for (int offset = 0, limit = chunk.capacity(); offset < limit; offset += Integer.BYTES) {
+				max = Math.max(max, (int) INT_HANDLE.get(chunk, offset));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Creates rasterizer of single activity.
+	 *
+	 * @return
+	 * 	new rasterizer, to be used by single thread.
+	 */
+	public Rasterizer newRasterizer()
+	{
+		return new Rasterizer();
+	}
+
+	@Override
+	public void close()
+	{
+		// the mappings are released by garbage collector, clearing references is the most which can be done:
+		Arrays.fill(chunks, null);
+	}
+
+	private void set(int x, int y, int value)
+	{
+		long index = (long) y * width + x;
+		INT_HANDLE.set(chunks[(int) (index >>> CHUNK_SHIFT)], (int) (index & CHUNK_MASK) * Integer.BYTES, value);
+	}
+
+	private void increment(long index)
+	{
+		INT_HANDLE.getAndAdd(chunks[(int) (index >>> CHUNK_SHIFT)], (int) (index & CHUNK_MASK) * Integer.BYTES, 1);
+	}
+
+	static double projectX(double lon, long worldSize)
+	{
+		return (lon + 180) / 360 * worldSize;
+	}
+
+	static double projectY(double lat, long worldSize)
+	{
+		double radians = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat)));
+		return (1 - Math.log(Math.tan(radians) + 1 / Math.cos(radians)) / Math.PI) / 2 * worldSize;
+	}
+
+	/**
+	 * Rasterizer of single activity.  The consecutive points are connected by lines, unless they are too far
+	 * apart.  The pixels are collected locally and merged into grid by {@link #finish()}, each pixel once.
+	 */
+	public class Rasterizer
+	{
+		private final long worldSize = (long) TILE_SIZE << zoom;
+
+		private long[] pixels = new long[1024];
+
+		private int size;
+
+		private double lastLat = Double.NaN;
+
+		private double lastLon;
+
+		private double lastX;
+
+		private double lastY;
+
+		/**
+		 * Adds next point of activity.
+		 *
+		 * @param lat
+		 * 	point latitude
+		 * @param lon
+		 * 	point longitude
+		 */
+		public void add(double lat, double lon)
+		{
+			double x = projectX(lon, worldSize) - originX;
+			double y = projectY(lat, worldSize) - originY;
+			// the segments crossing antimeridian are not drawn, they would go across whole world:
+			if (Double.isNaN(lastLat) || Math.abs(x - lastX) > worldSize / 2 || (Math.abs(x - lastX) + Math.abs(y - lastY) > 1 &&
+				GeoCalc.distance(lastLat, lastLon, lat, lon) > MAX_SEGMENT_METERS)) {
+				plot(x, y);
+			}
+			else {
+				double dx = x - lastX, dy = y - lastY;
+				int steps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+				for (int i = 1; i <= steps; ++i) {
+					plot(lastX + dx * i / steps, lastY + dy * i / steps);
+				}
+				if (steps == 0) {
+					plot(x, y);
+				}
+			}
+			lastLat = lat;
+			lastLon = lon;
+			lastX = x;
+			lastY = y;
+		}
+
+		/**
+		 * Merges the collected pixels into grid and resets the rasterizer.
+		 *
+		 * @return
+		 * 	number of distinct pixels of the activity.
+		 */
+		public int finish()
+		{
+			Arrays.sort(pixels, 0, size);
+			int distinct = 0;
+			for (int i = 0; i < size; ++i) {
+				if (i == 0 || pixels[i] != pixels[i - 1]) {
+					increment(pixels[i]);
+					++distinct;
+				}
+			}
+			size = 0;
+			lastLat = Double.NaN;
+			return distinct;
+		}
+
+		private void plot(double x, double y)
+		{
+			if (x < 0 || y < 0 || x >= width || y >= height) {
+				return;
+			}
+			long index = (long) y * width + (long) x;
+			if (size > 0 && pixels[size - 1] == index) {
+				return;
+			}
+			if (size == pixels.length) {
+				pixels = Arrays.copyOf(pixels, size * 2);
+			}
+			pixels[size++] = index;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.github.kvr000.zbynekgps.gpstool.heatmap;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Renders {@link HeatmapGrid} into PNG image or tile pyramid.
+ *
+ * The counts are mapped to colors on logarithmic scale relative to the maximum, from transparent through blue and
+ * red to yellow, so rarely visited pixels remain visible next to the daily routes.
+ */
+@Log4j2
+public class HeatmapRenderer
+{
+	/** Color ramp stops, RGBA */
+	private static final int[][] RAMP = {
+		{ 0, 0, 255, 96 },
+		{ 0, 64, 255, 192 },
+		{ 255, 0, 0, 224 },
+		{ 255, 255, 0, 255 },
+		{ 255, 255, 255, 255 },
+	};
+
+	private final double logMax;
+
+	/**
+	 * Creates the renderer.
+	 *
+	 * @param max
+	 * 	maximum count, mapped to the last color
+	 */
+	public HeatmapRenderer(int max)
+	{
+		this.logMax = Math.log1p(Math.max(1, max));
+	}
+
+	/**
+	 * Writes whole grid as single PNG image.
+	 *
+	 * @param grid
+	 * 	grid to render
+	 * @param output
+	 * 	output file
+	 */
+	public void writePng(HeatmapGrid grid, Path output) throws IOException
+	{
+		try (PngWriter writer = new PngWriter(new BufferedOutputStream(Files.newOutputStream(output)), grid.getWidth(), grid.getHeight())) {
+			byte[] row = new byte[grid.getWidth() * 4];
+			for (int y = 0; y < grid.getHeight(); ++y) {
+				for (int x = 0; x < grid.getWidth(); ++x) {
+					color(grid.get(x, y), row, x * 4);
+				}
+				writer.writeRow(row);
+			}
+		}
+	}
+
+	/**
+	 * Writes the tiles of grid zoom level into directory/zoom/x/y.png .  The tiles without any visited pixel are
+	 * skipped.
+	 *
+	 * @param grid
+	 * 	grid to render
+	 * @param directory
+	 * 	root directory of tile pyramid
+	 *
+	 * @return
+	 * 	number of written tiles.
+	 */
+	public int writeTiles(HeatmapGrid grid, Path directory) throws IOException
+	{
+		int tileSize = HeatmapGrid.TILE_SIZE;
+		long tileX0 = Math.floorDiv(grid.getOriginX(), tileSize), tileX1 = Math.floorDiv(grid.getOriginX() + grid.getWidth() - 1, tileSize);
+		long tileY0 = Math.floorDiv(grid.getOriginY(), tileSize), tileY1 = Math.floorDiv(grid.getOriginY() + grid.getHeight() - 1, tileSize);
+		int[] counts = new int[tileSize * tileSize];
+		int written = 0;
+		for (long tileX = tileX0; tileX <= tileX1; ++tileX) {
+			for (long tileY = tileY0; tileY <= tileY1; ++tileY) {
+				boolean visited = false;
+				for (int y = 0; y < tileSize; ++y) {
+					long gridY = tileY * tileSize + y - grid.getOriginY();
+					for (int x = 0; x < tileSize; ++x) {
+						long gridX = tileX * tileSize + x - grid.getOriginX();
+						int count = gridX >= 0 && gridY >= 0 && gridX < grid.getWidth() && gridY < grid.getHeight() ?
+							grid.get((int) gridX, (int) gridY) : 0;
+						counts[y * tileSize + x] = count;
+						visited |= count != 0;
+					}
+				}
+				if (!visited) {
+					continue;
+				}
+				Path output = directory.resolve(Integer.toString(grid.getZoom())).resolve(Long.toString(tileX)).resolve(tileY + ".png");
+				Files.createDirectories(output.getParent());
+				try (PngWriter writer = new PngWriter(new BufferedOutputStream(Files.newOutputStream(output)), tileSize, tileSize)) {
+					byte[] row = new byte[tileSize * 4];
+					for (int y = 0; y < tileSize; ++y) {
+						for (int x = 0; x < tileSize; ++x) {
+							color(counts[y * tileSize + x], row, x * 4);
+						}
+						writer.writeRow(row);
+					}
+				}
+				++written;
+			}
+		}
+		log.info("Written heatmap tiles: zoom={} tiles={}", grid.getZoom(), written);
+		return written;
+	}
+
+	void color(int count, byte[] rgba, int offset)
+	{
+		if (count == 0) {
+			rgba[offset] = rgba[offset + 1] = rgba[offset + 2] = rgba[offset + 3] = 0;
+			return;
+		}
+		double position = Math.min(1, Math.log1p(count) / logMax) * (RAMP.length - 1);
+		int stop = Math.min(RAMP.length - 2, (int) position);
+		double fraction = position - stop;
+		for (int i = 0; i < 4; ++i) {
+			rgba[offset + i] = (byte) Math.round(RAMP[stop][i] + (RAMP[stop + 1][i] - RAMP[stop][i]) * fraction);
+		}
+	}
+}
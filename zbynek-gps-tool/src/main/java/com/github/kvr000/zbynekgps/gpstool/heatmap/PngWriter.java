@@ -0,0 +1,144 @@
+package com.github.kvr000.zbynekgps.gpstool.heatmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+/**
+ * Streaming writer of RGBA PNG images.  The rows are compressed as they are written, so the image of any size can
+ * be written without holding it in memory, unlike with ImageIO and BufferedImage.
+ */
+public class PngWriter implements Closeable
+{
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	/** Maximum size of IDAT chunk */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final DataOutputStream output;
+
+	private final int width;
+
+	private final DeflaterOutputStream compressed;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	/**
+	 * Creates the writer and writes image header.
+	 *
+	 * @param output
+	 * 	output stream, closed by {@link #close()}
+	 * @param width
+	 * 	image width
+	 * @param height
+	 * 	image height
+	 */
+	public PngWriter(OutputStream output, int width, int height) throws IOException
+	{
+		this.output = new DataOutputStream(output);
+		this.width = width;
+		this.output.write(SIGNATURE);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(width);
+		headerData.writeInt(height);
+		headerData.writeByte(8);	// bit depth
+		headerData.writeByte(6);	// color type RGBA
+		headerData.writeByte(0);	// compression
+		headerData.writeByte(0);	// filter
+		headerData.writeByte(0);	// interlace
+		writeChunk("IHDR", header.toByteArray(), header.size());
+		this.compressed = new DeflaterOutputStream(new IdatOutputStream(), deflater, CHUNK_SIZE);
+	}
+
+	/**
+	 * Writes next row.
+	 *
+	 * @param rgba
+	 * 	row pixels, four bytes per pixel
+	 */
+	public void writeRow(byte[] rgba) throws IOException
+	{
+		if (rgba.length != width * 4) {
+			throw new IllegalArgumentException("Row must have " + width * 4 + " bytes, got: " + rgba.length);
+		}
+		compressed.write(0);	// filter none
+		compressed.write(rgba);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			compressed.close();
+			writeChunk("IEND", new byte[0], 0);
+		}
+		finally {
+			deflater.end();
+			output.close();
+		}
+	}
+
+	private void writeChunk(String type, byte[] data, int length) throws IOException
+	{
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		output.writeInt(length);
+		output.write(typeBytes);
+		output.write(data, 0, length);
+		output.writeInt((int) crc.getValue());
+	}
+
+	/** Splits compressed data into IDAT chunks */
+	private class IdatOutputStream extends OutputStream
+	{
+		private final byte[] buffer = new byte[CHUNK_SIZE];
+
+		private int size;
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			write(new byte[]{ (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException
+		{
+			while (length > 0) {
+				int copied = Math.min(length, buffer.length - size);
+				System.arraycopy(data, offset, buffer, size, copied);
+				size += copied;
+				offset += copied;
+				length -= copied;
+				if (size == buffer.length) {
+					flush();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			if (size > 0) {
+				writeChunk("IDAT", buffer, size);
+				size = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			flush();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Writes files in background by bounded set of writer threads.
+ *
+ * The producers hand over already serialized content, so they only block when the queue is full, which is counted
+ * and reported at the end to allow tuning.  The files are written into temporary file and atomically moved, so
+ * readers never see partial content.  Optionally the content is compressed by gzip on writer thread.
+ */
+@Log4j2
+public class AsyncFileWriter implements AutoCloseable
+{
+	private static final Object END = new Object();
+
+	private final boolean gzip;
+
+	private final BlockingQueue<Object> queue;
+
+	private final List<Thread> writers = new ArrayList<>();
+
+	private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+	private final LongAdder written = new LongAdder();
+
+	private final LongAdder blocked = new LongAdder();
+
+	private final LongAdder blockedNanos = new LongAdder();
+
+	/**
+	 * Creates the writer and starts writer threads.
+	 *
+	 * @param threads
+	 * 	number of writer threads
+	 * @param capacity
+	 * 	maximum number of files waiting for writing
+	 * @param gzip
+	 * 	whether to compress the files, adding .gz extension
+	 */
+	public AsyncFileWriter(int threads, int capacity, boolean gzip)
+	{
+		this.gzip = gzip;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		for (int i = 0; i < threads; ++i) {
+			Thread thread = Thread.ofPlatform().name("file-writer-" + i).daemon().start(this::run);
+			writers.add(thread);
+		}
+	}
+
+	/**
+	 * Submits the file for writing, blocking if the queue is full.
+	 *
+	 * @param output
+	 * 	output file, without .gz extension
+	 * @param content
+	 * 	file content
+	 *
+	 * @throws IOException
+	 * 	if any previous write failed
+	 */
+	public void write(Path output, byte[] content) throws IOException
+	{
+		IOException previous = failure.get();
+		if (previous != null) {
+			throw new IOException("Previous write failed: " + previous.getMessage(), previous);
+		}
+		Pending pending = new Pending(output, content);
+		try {
+			if (!queue.offer(pending)) {
+				long started = System.nanoTime();
+				blocked.increment();
+				queue.put(pending);
+				blockedNanos.add(System.nanoTime() - started);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for writer", ex);
+		}
+	}
+
+	/**
+	 * Waits until all files are written.
+	 *
+	 * @throws IOException
+	 * 	if any write failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			for (int i = 0; i < writers.size(); ++i) {
+				queue.put(END);
+			}
+			for (Thread writer: writers) {
+				writer.join();
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for writer", ex);
+		}
+		log.info("Written files: count={} producerBlocked={} producerBlockedTime={} ms",
+			written, blocked, TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()));
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	private void run()
+	{
+		try {
+			for (;;) {
+				Object item = queue.take();
+				if (item == END) {
+					return;
+				}
+				Pending pending = (Pending) item;
+				try {
+					writeFile(pending.getOutput(), pending.getContent());
+					written.increment();
+				}
+				catch (IOException ex) {
+					log.error("Failed to write file: file={}", pending.getOutput(), ex);
+					failure.compareAndSet(null, ex);
+				}
+				catch (RuntimeException ex) {
+					// the writer must stay alive, otherwise producers and close() would wait for it forever:
+					log.error("Failed to write file: file={}", pending.getOutput(), ex);
+					failure.compareAndSet(null, new IOException("Failed to write file: " + pending.getOutput() + " : " + ex, ex));
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeFile(Path output, byte[] content) throws IOException
+	{
+		Path absolute = (gzip ? output.resolveSibling(output.getFileName() + ".gz") : output).toAbsolutePath();
+		Path tempFile = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream stream = gzip ? new GZIPOutputStream(Files.newOutputStream(tempFile), 64 * 1024) : Files.newOutputStream(tempFile)) {
+				stream.write(content);
+			}
+			Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	@Value
+	private static class Pending
+	{
+		Path output;
+
+		byte[] content;
+	}
+}
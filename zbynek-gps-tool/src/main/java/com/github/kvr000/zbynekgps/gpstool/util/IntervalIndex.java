@@ -0,0 +1,147 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+
+/**
+ * Static index of closed intervals, finding all intervals covering the point.
+ *
+ * The intervals are kept in array sorted by start, which is viewed as implicit balanced binary tree, the middle
+ * of each range being its root.  Each node keeps maximum end of its subtree, so the subtrees ending before the
+ * point are skipped, the lookup takes O(log n + k) for k found intervals.
+ *
+ * @param <T>
+ * 	type of value
+ */
+public class IntervalIndex<T>
+{
+	private final long[] starts;
+
+	private final long[] ends;
+
+	private final long[] maxEnds;
+
+	private final Object[] values;
+
+	/**
+	 * Builds the index.
+	 *
+	 * @param items
+	 * 	items to index
+	 * @param start
+	 * 	function extracting start of interval, inclusive
+	 * @param end
+	 * 	function extracting end of interval, inclusive
+	 */
+	public IntervalIndex(Collection<T> items, ToLongFunction<T> start, ToLongFunction<T> end)
+	{
+		Object[] sorted = items.stream()
+			.sorted(Comparator.comparingLong(start))
+			.toArray();
+		this.values = sorted;
+		this.starts = new long[sorted.length];
+		this.ends = new long[sorted.length];
+		this.maxEnds = new long[sorted.length];
+		for (int i = 0; i < sorted.length; ++i) {
+			@SuppressWarnings("unchecked")
+			T item = (T) sorted[i];
+			starts[i] = start.applyAsLong(item);
+			ends[i] = Math.max(starts[i], end.applyAsLong(item));
+		}
+		buildMaxEnds(0, sorted.length);
+	}
+
+	public int size()
+	{
+		return values.length;
+	}
+
+	/**
+	 * Finds all intervals covering the point, in the order of their start.
+	 *
+	 * @param point
+	 * 	point to search
+	 * @param consumer
+	 * 	callback receiving found values
+	 */
+	public void findCovering(long point, Consumer<T> consumer)
+	{
+		findOverlapping(0, values.length, point, point, consumer);
+	}
+
+	/**
+	 * Finds all intervals overlapping the range, in the order of their start.
+	 *
+	 * @param low
+	 * 	start of range, inclusive
+	 * @param high
+	 * 	end of range, inclusive
+	 * @param consumer
+	 * 	callback receiving found values
+	 */
+	public void findOverlapping(long low, long high, Consumer<T> consumer)
+	{
+		findOverlapping(0, values.length, low, high, consumer);
+	}
+
+	/**
+	 * Finds all intervals covering the point, in the order of their start.
+	 *
+	 * @param point
+	 * 	point to search
+	 *
+	 * @return
+	 * 	list of found values
+	 */
+	public List<T> findCovering(long point)
+	{
+		List<T> result = new ArrayList<>(2);
+		findCovering(point, result::add);
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("IntervalIndex{");
+		for (int i = 0; i < values.length; ++i) {
+			sb.append(i == 0 ? "" : ", ").append(starts[i]).append("..").append(ends[i]).append("=").append(values[i]);
+		}
+		return sb.append("}").toString();
+	}
+
+	private long buildMaxEnds(int from, int to)
+	{
+		if (from >= to) {
+			return Long.MIN_VALUE;
+		}
+		int mid = (from + to) >>> 1;
+		long max = Math.max(ends[mid], Math.max(buildMaxEnds(from, mid), buildMaxEnds(mid + 1, to)));
+		maxEnds[mid] = max;
+		return max;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void findOverlapping(int from, int to, long low, long high, Consumer<T> consumer)
+	{
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (maxEnds[mid] < low) {
+				return;
+			}
+			findOverlapping(from, mid, low, high, consumer);
+			if (starts[mid] > high) {
+				return;
+			}
+			if (ends[mid] >= low) {
+				consumer.accept((T) values[mid]);
+			}
+			from = mid + 1;
+		}
+	}
+}
@@ -0,0 +1,375 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import com.google.common.base.Stopwatch;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+
+/**
+ * Pipeline processing items in explicit stages: blocking I/O on virtual threads, CPU bound processing on sized
+ * pool of platform threads and ordered sink on the calling thread.  The sink receives each result as soon as all
+ * its predecessors left, or immediately when configured as unordered.
+ *
+ * The source is read by separate thread, which acquires a permit for each item.  The permit is held until the item
+ * leaves the sink, so the number of items in flight, including the ones waiting in reorder buffer for their
+ * predecessors, is bounded and slow stages throttle the source.  The I/O stage runs each item on its own virtual
+ * thread, limited to configured number of concurrent reads, so the blocking reads do not occupy the CPU workers.
+ * The utilization of each stage is logged at the end, to allow tuning the sizes.
+ *
+ * @param <I>
+ * 	type of input item
+ * @param <L>
+ * 	type of loaded item, result of I/O stage
+ * @param <R>
+ * 	type of result, result of CPU stage
+ */
+@Log4j2
+public class StagedPipeline<I, L, R>
+{
+	private final String name;
+
+	private final Config config;
+
+	private final IoStage<I, L> ioStage;
+
+	private final Function<L, R> cpuStage;
+
+	private final Consumer<R> sink;
+
+	private final Semaphore inflight;
+
+	private final Semaphore ioPermits;
+
+	private final BlockingQueue<Object> completed;
+
+	private final LongAdder ioBusy = new LongAdder();
+
+	private final LongAdder cpuBusy = new LongAdder();
+
+	private final LongAdder sourceBlocked = new LongAdder();
+
+	private volatile boolean aborted;
+
+	/**
+	 * Creates the pipeline.
+	 *
+	 * @param name
+	 * 	name of pipeline, for logging and thread names
+	 * @param config
+	 * 	sizes of stages
+	 * @param ioStage
+	 * 	I/O stage, returning null drops the item
+	 * @param cpuStage
+	 * 	CPU stage, returning null drops the item
+	 * @param sink
+	 * 	sink receiving the results in source order, or in order of completion if unordered
+	 */
+	public StagedPipeline(String name, Config config, IoStage<I, L> ioStage, Function<L, R> cpuStage, Consumer<R> sink)
+	{
+		this.name = name;
+		this.config = config;
+		this.ioStage = ioStage;
+		this.cpuStage = cpuStage;
+		this.sink = sink;
+		this.inflight = new Semaphore(config.getMaxInflight());
+		this.ioPermits = new Semaphore(config.getIoThreads());
+		// each completed item holds permit, so the queue cannot overflow, plus one for end marker:
+		this.completed = new ArrayBlockingQueue<>(config.getMaxInflight() + 1);
+	}
+
+	/**
+	 * Processes all items of the source.  The first failure of any stage aborts the pipeline and is rethrown.
+	 *
+	 * @param source
+	 * 	source of items, not closed by this method
+	 *
+	 * @throws IOException
+	 * 	if I/O stage fails
+	 */
+	public void run(Stream<I> source) throws IOException
+	{
+		Stopwatch watch = Stopwatch.createStarted();
+		AtomicInteger cpuThreadCounter = new AtomicInteger();
+		ThreadPoolExecutor cpuExecutor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(config.getMaxInflight()),
+			runnable -> {
+				Thread thread = new Thread(runnable, name + "-cpu-" + cpuThreadCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		ExecutorService ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		Thread feeder = Thread.ofPlatform().name(name + "-source").daemon().unstarted(() -> feed(source, ioExecutor, cpuExecutor));
+		long sinkBusy = 0;
+		long count = 0;
+		int maxReorder = 0;
+		try {
+			feeder.start();
+			Map<Long, Object> reorder = new HashMap<>();
+			long next = 0;
+			long total = Long.MAX_VALUE;
+			while (next < total) {
+				Object item = take();
+				if (item instanceof Ended ended) {
+					total = ended.count;
+					continue;
+				}
+				else if (item instanceof Failed failed) {
+					throw rethrow(failed.failure);
+				}
+				Completed completedItem = (Completed) item;
+				// unordered results are passed as if they were the next in sequence:
+				reorder.put(config.isOrdered() ? completedItem.sequence : next, completedItem.result);
+				maxReorder = Math.max(maxReorder, reorder.size());
+				for (; reorder.containsKey(next); ++next) {
+					@SuppressWarnings("unchecked")
+					R result = (R) reorder.remove(next);
+					if (result != null) {
+						long started = System.nanoTime();
+						sink.accept(result);
+						sinkBusy += System.nanoTime() - started;
+					}
+					inflight.release();
+				}
+			}
+			count = next;
+		}
+		finally {
+			aborted = true;
+			feeder.interrupt();
+			ioExecutor.shutdownNow();
+			cpuExecutor.shutdownNow();
+		}
+		long elapsed = Math.max(1, watch.elapsed(TimeUnit.NANOSECONDS));
+		log.info("Pipeline finished: name={} items={} time={} ms threads={} ioThreads={} maxInflight={} " +
+				"ioUtilization={}% cpuUtilization={}% sinkUtilization={}% sourceBlocked={}% maxReorder={}",
+			name, count, TimeUnit.NANOSECONDS.toMillis(elapsed), config.getThreads(), config.getIoThreads(), config.getMaxInflight(),
+			percent(ioBusy.sum(), elapsed * config.getIoThreads()), percent(cpuBusy.sum(), elapsed * config.getThreads()),
+			percent(sinkBusy, elapsed), percent(sourceBlocked.sum(), elapsed), maxReorder);
+	}
+
+	private void feed(Stream<I> source, ExecutorService ioExecutor, ThreadPoolExecutor cpuExecutor)
+	{
+		long sequence = 0;
+		try {
+			for (Iterator<I> it = source.iterator(); it.hasNext() && !aborted; ++sequence) {
+				I input = it.next();
+				long started = System.nanoTime();
+				inflight.acquire();
+				sourceBlocked.add(System.nanoTime() - started);
+				long itemSequence = sequence;
+				ioExecutor.execute(() -> processIo(itemSequence, input, cpuExecutor));
+			}
+			put(new Ended(sequence));
+		}
+		catch (InterruptedException ex) {
+			// aborted
+		}
+		catch (Throwable ex) {
+			put(new Failed(ex));
+		}
+	}
+
+	private void processIo(long sequence, I input, ThreadPoolExecutor cpuExecutor)
+	{
+		try {
+			L loaded;
+			ioPermits.acquire();
+			try {
+				long started = System.nanoTime();
+				loaded = ioStage.apply(input);
+				ioBusy.add(System.nanoTime() - started);
+			}
+			finally {
+				ioPermits.release();
+			}
+			if (loaded == null) {
+				put(new Completed(sequence, null));
+				return;
+			}
+			cpuExecutor.execute(() -> processCpu(sequence, loaded));
+		}
+		catch (InterruptedException ex) {
+			// aborted
+		}
+		catch (Throwable ex) {
+			put(new Failed(ex));
+		}
+	}
+
+	private void processCpu(long sequence, L loaded)
+	{
+		try {
+			long started = System.nanoTime();
+			R result = cpuStage.apply(loaded);
+			cpuBusy.add(System.nanoTime() - started);
+			put(new Completed(sequence, result));
+		}
+		catch (Throwable ex) {
+			put(new Failed(ex));
+		}
+	}
+
+	private Object take() throws IOException
+	{
+		try {
+			return completed.take();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for pipeline: " + name, ex);
+		}
+	}
+
+	private void put(Object item)
+	{
+		if (aborted) {
+			return;
+		}
+		try {
+			completed.put(item);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static IOException rethrow(Throwable failure)
+	{
+		if (failure instanceof IOException ex) {
+			return ex;
+		}
+		else if (failure instanceof UncheckedIOException ex) {
+			return ex.getCause();
+		}
+		else if (failure instanceof RuntimeException ex) {
+			throw ex;
+		}
+		else if (failure instanceof Error ex) {
+			throw ex;
+		}
+		return new IOException(failure);
+	}
+
+	private static long percent(long busy, long total)
+	{
+		return busy * 100 / Math.max(1, total);
+	}
+
+	/**
+	 * I/O stage of pipeline.
+	 *
+	 * @param <I>
+	 * 	type of input
+	 * @param <L>
+	 * 	type of loaded item
+	 */
+	@FunctionalInterface
+	public interface IoStage<I, L>
+	{
+		/**
+		 * Loads the item.
+		 *
+		 * @param input
+		 * 	input item
+		 *
+		 * @return
+		 * 	loaded item, null to drop it.
+		 *
+		 * @throws IOException
+		 * 	if reading fails, aborting the pipeline
+		 */
+		L apply(I input) throws IOException;
+	}
+
+	/**
+	 * Sizes of pipeline stages.
+	 */
+	@Value
+	public static class Config
+	{
+		/** Number of CPU stage threads */
+		int threads;
+
+		/** Maximum number of concurrent I/O stage reads */
+		int ioThreads;
+
+		/** Maximum number of items in flight, from source until they leave the sink */
+		int maxInflight;
+
+		/** Whether the sink receives results in source order */
+		boolean ordered;
+
+		/**
+		 * Creates the configuration, using defaults for unspecified values.  The default number of CPU threads is
+		 * number of processors, I/O threads and items in flight default to two and four times of CPU threads.
+		 *
+		 * @param threads
+		 * 	number of CPU stage threads, null for default
+		 * @param ioThreads
+		 * 	number of concurrent reads, null for default
+		 * @param maxInflight
+		 * 	maximum number of items in flight, null for default
+		 *
+		 * @return
+		 * 	configuration.
+		 */
+		public static Config of(Integer threads, Integer ioThreads, Integer maxInflight)
+		{
+			int cpu = threads != null ? threads : Runtime.getRuntime().availableProcessors();
+			Config config = new Config(cpu, ioThreads != null ? ioThreads : 2 * cpu, maxInflight != null ? maxInflight : 4 * cpu, true);
+			if (config.threads <= 0 || config.ioThreads <= 0 || config.maxInflight <= 0) {
+				throw new IllegalArgumentException("Pipeline sizes must be positive: " + config);
+			}
+			return config;
+		}
+
+		/**
+		 * Creates copy of configuration, passing results to sink in order of completion.
+		 *
+		 * @return
+		 * 	unordered configuration.
+		 */
+		public Config unordered()
+		{
+			return new Config(threads, ioThreads, maxInflight, false);
+		}
+	}
+
+	@Value
+	private static class Completed
+	{
+		long sequence;
+
+		Object result;
+	}
+
+	@Value
+	private static class Ended
+	{
+		long count;
+	}
+
+	@Value
+	private static class Failed
+	{
+		Throwable failure;
+	}
+}
@@ -0,0 +1,28 @@
+package com.github.kvr000.zbynekgps.gpstool.aggregate;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class AggregationTest
+{
+	@Test
+	public void bucket_concurrent_countedAndSampled()
+	{
+		Aggregation aggregation = new Aggregation(3, false);
+		IntStream.range(0, 100_000).parallel()
+			.forEach(i -> aggregation.bucket(aggregation.keyOf(i % 3 == 0 ? "run" : "ride")).add(null));
+		aggregation.bucket(aggregation.keyOf("hike")).add("a");
+		aggregation.bucket(aggregation.keyOf("hike")).add("b");
+
+		List<Long> counts = aggregation.buckets().stream().map(e -> e.getValue().count()).toList();
+		assertEquals(counts.stream().mapToLong(Long::longValue).sum(), 100_002);
+		assertEquals(aggregation.bucket(aggregation.keyOf("run")).count(), 33_334);
+		assertEquals(aggregation.bucket(aggregation.keyOf("hike")).sample(), List.of("a", "b"));
+		assertEquals(aggregation.labelOf(aggregation.keyOf("hike")), "hike");
+	}
+}
@@ -0,0 +1,46 @@
+package com.github.kvr000.zbynekgps.gpstool.aggregate;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class HistogramTest
+{
+	@Test
+	public void percentile_random_withinPrecision()
+	{
+		Random random = new Random(0);
+		double[] values = IntStream.range(0, 100_000)
+			.mapToDouble(i -> i % 3 == 0 ? -random.nextDouble() * 400 : random.nextDouble() * random.nextDouble() * 3000)
+			.toArray();
+		Histogram histogram = new Histogram();
+		Arrays.stream(values).parallel().forEach(histogram::record);
+
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		assertEquals(histogram.count(), values.length);
+		assertEquals(histogram.min(), sorted[0]);
+		assertEquals(histogram.max(), sorted[sorted.length - 1]);
+		for (double percent: new double[]{ 1, 10, 33, 50, 90, 99, 100 }) {
+			double expected = sorted[(int) Math.ceil(percent / 100 * sorted.length) - 1];
+			double actual = histogram.percentile(percent);
+			assertTrue(Math.abs(actual - expected) <= Math.abs(expected) * 0.01 + 1e-3,
+				"percent=" + percent + " expected=" + expected + " actual=" + actual);
+		}
+	}
+
+	@Test
+	public void percentile_empty_nan()
+	{
+		Histogram histogram = new Histogram();
+
+		assertTrue(Double.isNaN(histogram.percentile(50)));
+		assertTrue(Double.isNaN(histogram.min()));
+	}
+}
@@ -0,0 +1,102 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import com.github.kvr000.zbynekgps.gpstool.fit.io.FitFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+
+public class ActivityCatalogsTest
+{
+	ActivityCatalogs activityCatalogs = new ActivityCatalogs(new GpxLikeFiles(new GpxFiles(), new FitFiles()));
+
+	@Test
+	public void update_newFiles_summarized() throws IOException
+	{
+		Path dir = Files.createTempDirectory("catalog");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 1000), WayPoint.of(11, 21, 2000));
+			Path corrupt = dir.resolve("corrupt.gpx");
+			Files.writeString(corrupt, "not a gpx");
+
+			ActivityCatalog catalog = activityCatalogs.update(new ActivityCatalog(List.of()), List.of(one, corrupt));
+
+			CatalogEntry entry = catalog.get(one.toAbsolutePath());
+			assertEquals(entry.getId(), "one");
+			assertEquals(entry.getStart(), Instant.ofEpochMilli(1000));
+			assertEquals(entry.getEnd(), Instant.ofEpochMilli(2000));
+			assertEquals(entry.getMinLat(), 10.0);
+			assertEquals(entry.getMaxLon(), 21.0);
+			assertEquals(entry.getPointCount(), 2);
+			assertEquals(entry.getDistance(), 156_876, 1000);
+			assertNull(entry.getError());
+			assertTrue(catalog.get(corrupt.toAbsolutePath()).isCorrupt());
+			assertEquals(catalog.validEntries().size(), 1);
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void update_unchanged_reused() throws IOException
+	{
+		Path dir = Files.createTempDirectory("catalog");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 1000));
+			Path two = writeGpx(dir.resolve("two.gpx"), WayPoint.of(10, 20, 5000));
+			ActivityCatalog first = activityCatalogs.update(new ActivityCatalog(List.of()), List.of(one, two));
+
+			writeGpx(two, WayPoint.of(10, 20, 7000));
+			Files.setLastModifiedTime(two, FileTime.fromMillis(first.get(two.toAbsolutePath()).getMtime() + 10_000));
+			ActivityCatalog second = activityCatalogs.update(first, List.of(one, two));
+
+			assertSame(second.get(one.toAbsolutePath()), first.get(one.toAbsolutePath()));
+			assertEquals(second.get(two.toAbsolutePath()).getStart(), Instant.ofEpochMilli(7000));
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void write_read_roundTrip() throws IOException
+	{
+		Path dir = Files.createTempDirectory("catalog");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 1000), WayPoint.of(11, 21, 2000));
+			Path corrupt = dir.resolve("corrupt.gpx");
+			Files.writeString(corrupt, "not a gpx");
+			ActivityCatalog catalog = activityCatalogs.update(new ActivityCatalog(List.of()), List.of(one, corrupt));
+
+			activityCatalogs.write(dir.resolve("catalog.csv"), catalog);
+			ActivityCatalog read = activityCatalogs.read(dir.resolve("catalog.csv"));
+
+			assertEquals(List.copyOf(read.entries()), List.copyOf(catalog.entries()));
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	private static Path writeGpx(Path file, WayPoint... points) throws IOException
+	{
+		GPX.write(GPX.builder().addTrack(track -> track.addSegment(segment -> segment.points(List.of(points)))).build(), file);
+		return file;
+	}
+}
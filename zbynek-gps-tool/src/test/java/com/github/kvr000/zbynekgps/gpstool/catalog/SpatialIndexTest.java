@@ -0,0 +1,90 @@
+package com.github.kvr000.zbynekgps.gpstool.catalog;
+
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class SpatialIndexTest
+{
+	@Test
+	public void findCandidates_nearPoints_found() throws IOException
+	{
+		Path dir = Files.createTempDirectory("spatial");
+		try {
+			Path one = dir.resolve("one.gpx"), two = dir.resolve("two.gpx"), three = dir.resolve("three.gpx");
+			SpatialIndex.write(dir.resolve("index.bin"), SpatialIndex.DEFAULT_CELL_DEGREES, List.of(
+				indexed(one, new double[][]{ { 49.2338, -123.0048 }, { 49.3, -123.1 } }),
+				indexed(two, new double[][]{ { 50.0, 14.4 } }),
+				indexed(three, new double[][]{ { 49.2340, -123.0050 }, { 50.01, 14.41 } })
+			));
+
+			SpatialIndex index = SpatialIndex.open(dir.resolve("index.bin"));
+
+			assertEquals(index.findCandidates(49.2338, -123.0048, 50), Set.of(one, three));
+			assertEquals(index.findCandidates(50.0, 14.4, 50), Set.of(two));
+			assertEquals(index.findCandidates(50.0, 14.4, 2000), Set.of(two, three));
+			assertEquals(index.findCandidates(0, 0, 1000), Set.of());
+			assertEquals(index.lookup(two).getSize(), 10);
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void findCandidates_antimeridian_found() throws IOException
+	{
+		Path dir = Files.createTempDirectory("spatial");
+		try {
+			Path one = dir.resolve("one.gpx");
+			SpatialIndex.write(dir.resolve("index.bin"), SpatialIndex.DEFAULT_CELL_DEGREES, List.of(
+				indexed(one, new double[][]{ { 10.0, -179.9999 } })
+			));
+
+			SpatialIndex index = SpatialIndex.open(dir.resolve("index.bin"));
+
+			assertEquals(index.findCandidates(10.0, 179.9999, 100), Set.of(one));
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void invert_written_sameCells() throws IOException
+	{
+		Path dir = Files.createTempDirectory("spatial");
+		try {
+			List<SpatialIndex.IndexedFile> files = List.of(
+				indexed(dir.resolve("one.gpx"), new double[][]{ { 49.2338, -123.0048 }, { 49.3, -123.1 } }),
+				indexed(dir.resolve("two.gpx"), new double[][]{ { 50.0, 14.4 } })
+			);
+			SpatialIndex.write(dir.resolve("index.bin"), SpatialIndex.DEFAULT_CELL_DEGREES, files);
+
+			List<SpatialIndex.IndexedFile> inverted = SpatialIndex.open(dir.resolve("index.bin")).invert();
+
+			assertEquals(inverted, files);
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	private static SpatialIndex.IndexedFile indexed(Path path, double[][] points)
+	{
+		return new SpatialIndex.IndexedFile(path.toAbsolutePath().normalize(), 10, 20, LongStream.range(0, points.length)
+			.map(i -> SpatialIndex.cellOf(SpatialIndex.DEFAULT_CELL_DEGREES, points[(int) i][0], points[(int) i][1]))
+			.sorted()
+			.distinct()
+			.toArray());
+	}
+}
@@ -0,0 +1,530 @@
+package com.github.kvr000.zbynekgps.gpstool.command;
+
+import com.github.kvr000.zbynekgps.gpstool.catalog.ActivityCatalogs;
+import com.github.kvr000.zbynekgps.gpstool.catalog.CatalogEntry;
+import com.github.kvr000.zbynekgps.gpstool.catalog.FilterMemo;
+import com.github.kvr000.zbynekgps.gpstool.fit.io.FitFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import com.google.common.collect.Range;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.Track;
+import io.jenetics.jpx.TrackSegment;
+import io.jenetics.jpx.WayPoint;
+import org.apache.commons.io.file.PathUtils;
+import org.apache.commons.lang3.mutable.Mutable;
+import org.apache.commons.lang3.mutable.MutableObject;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiPredicate;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+
+public class FindCommandTest
+{
+	@Test
+	public void planFilters_pure_orderedByRank()
+	{
+		FindCommand command = new FindCommand(null, null, null, null);
+		FindCommand.DismissIfInZoneFilter dismiss = command.new DismissIfInZoneFilter(new double[][]{ { 0, 0, 10 } });
+		FindCommand.FindPointFilter findPoint = command.new FindPointFilter(new double[][]{ { 0, 0, 10 } });
+		FindCommand.SinceFilter since = new FindCommand.SinceFilter(Instant.EPOCH);
+
+		List<BiPredicate<FindCommand.FileData, Mutable<GPX>>> planned = FindCommand.planFilters(List.of(dismiss, findPoint, since));
+
+		assertEquals(planned, List.of(since, findPoint, dismiss));
+	}
+
+	@Test
+	public void planFilters_modifying_keptAsBarrier()
+	{
+		FindCommand command = new FindCommand(null, null, null, null);
+		FindCommand.FindPointFilter findPoint = command.new FindPointFilter(new double[][]{ { 0, 0, 10 } });
+		FindCommand.RemovePrivacyZoneFilter privacy = new FindCommand.RemovePrivacyZoneFilter(new double[]{ 0, 0, 10 });
+		FindCommand.SinceFilter since = new FindCommand.SinceFilter(Instant.EPOCH);
+		FindCommand.TillFilter till = new FindCommand.TillFilter(Instant.EPOCH);
+
+		List<BiPredicate<FindCommand.FileData, Mutable<GPX>>> planned = FindCommand.planFilters(List.of(findPoint, since, privacy, till));
+
+		assertEquals(planned, List.of(since, findPoint, privacy, till));
+	}
+
+	@Test
+	public void planFilters_findPoints_keepDeclaredOrder()
+	{
+		FindCommand command = new FindCommand(null, null, null, null);
+		FindCommand.FindPointFilter many = command.new FindPointFilter(new double[][]{ { 0, 0, 10 }, { 1, 1, 10 }, { 2, 2, 10 } });
+		FindCommand.FindPointFilter single = command.new FindPointFilter(new double[][]{ { 0, 0, 10 } });
+		FindCommand.DismissIfInZoneFilter dismiss = command.new DismissIfInZoneFilter(new double[][]{ { 0, 0, 10 } });
+		FindCommand.SinceFilter since = new FindCommand.SinceFilter(Instant.EPOCH);
+
+		List<BiPredicate<FindCommand.FileData, Mutable<GPX>>> planned = FindCommand.planFilters(List.of(many, dismiss, single, since));
+
+		assertEquals(planned, List.of(since, many, single, dismiss));
+	}
+
+	@Test
+	public void planFilters_consecutiveTransforms_fusedSameResult()
+	{
+		FindCommand.RemovePrivacyZoneFilter privacy = new FindCommand.RemovePrivacyZoneFilter(new double[]{ 0, 0, 1000 });
+		FindCommand.DecreaseDensityFilter density = new FindCommand.DecreaseDensityFilter(20);
+		FindCommand.RemoveExtensionsFilter extensions = new FindCommand.RemoveExtensionsFilter();
+		GPX input = GPX.builder()
+			.addTrack(track -> track
+				.addSegment(segment -> segment
+					.addPoint(WayPoint.of(0, 0, 0))
+					.addPoint(WayPoint.of(0.001, 0, 10_000)))
+				.addSegment(segment -> segment
+					.addPoint(WayPoint.of(0.1, 0, 20_000))
+					.addPoint(WayPoint.of(0.2, 0, 30_000))
+					.addPoint(WayPoint.of(0.3, 0, 40_000))
+					.addPoint(WayPoint.of(0.4, 0, 60_000))
+					.addPoint(WayPoint.of(0, 0.001, 70_000))))
+			.build();
+
+		List<BiPredicate<FindCommand.FileData, Mutable<GPX>>> planned = FindCommand.planFilters(List.of(privacy, density, extensions));
+		Mutable<GPX> fused = new MutableObject<>(input);
+		boolean fusedResult = planned.getFirst().test(null, fused);
+		Mutable<GPX> separate = new MutableObject<>(input);
+		boolean separateResult = privacy.test(null, separate) && density.test(null, separate) && extensions.test(null, separate);
+
+		assertEquals(planned.size(), 1);
+		assertTrue(fusedResult);
+		assertTrue(separateResult);
+		assertEquals(fused.getValue(), separate.getValue());
+		assertEquals(fused.getValue().getTracks().getFirst().getSegments().size(), 1);
+		assertEquals(fused.getValue().getTracks().getFirst().getSegments().getFirst().getPoints().size(), 3);
+	}
+
+	@Test
+	public void removePrivacyZone_prefixOnly_untouchedReused()
+	{
+		FindCommand.RemovePrivacyZoneFilter privacy = new FindCommand.RemovePrivacyZoneFilter(new double[]{ 0, 0, 1000 });
+		GPX input = GPX.builder()
+			.addTrack(track -> track
+				.addSegment(segment -> segment
+					.addPoint(WayPoint.of(0, 0, 0))
+					.addPoint(WayPoint.of(0.1, 0, 10_000))))
+			.addTrack(track -> track
+				.addSegment(segment -> segment
+					.addPoint(WayPoint.of(0.2, 0, 20_000))
+					.addPoint(WayPoint.of(0.3, 0, 30_000))))
+			.build();
+		Mutable<GPX> gpx = new MutableObject<>(input);
+
+		assertTrue(privacy.test(null, gpx));
+
+		assertEquals(gpx.getValue().getTracks().getFirst().getSegments().getFirst().getPoints(), List.of(WayPoint.of(0.1, 0, 10_000)));
+		assertSame(gpx.getValue().getTracks().get(1), input.getTracks().get(1));
+	}
+
+	@Test
+	public void parseStravaStartHint_date_widenedRange()
+	{
+		Range<Instant> hint = FindCommand.parseStravaStartHint("Jan 5, 2023, 4:12:33 PM");
+
+		assertTrue(hint.contains(Instant.parse("2023-01-05T16:12:33Z")));
+		assertTrue(hint.contains(Instant.parse("2023-01-06T10:00:00Z")));
+		assertEquals(hint.upperEndpoint(), Instant.parse("2023-01-06T16:12:33Z"));
+	}
+
+	@Test
+	public void parseFilenameStartHint_date_wholeDayAnyZone()
+	{
+		Range<Instant> hint = FindCommand.parseFilenameStartHint("2023-05-01-10-20-30.fit.gz");
+
+		assertEquals(hint, Range.closed(Instant.parse("2023-04-30T00:00:00Z"), Instant.parse("2023-05-03T00:00:00Z")));
+		assertNull(FindCommand.parseFilenameStartHint("12345678901.fit.gz"));
+	}
+
+	@Test
+	public void execute_dateInFilename_notTrustedByDefault() throws Exception
+	{
+		Path directory = Files.createTempDirectory("find");
+		try {
+			// the name carries the export date, the activity itself is a year older:
+			Files.writeString(directory.resolve("ride_export-2024-01-05.gpx"), "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			for (boolean filenameDates: new boolean[]{ false, true }) {
+				FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), new GpxLikeDiscovery(), null, null);
+				command.options = new FindCommand.Options();
+				command.options.sourceDir = directory.toString();
+				command.options.filenameDates = filenameDates;
+				command.options.filters.add(new FindCommand.TillFilter(Instant.parse("2023-06-01T00:00:00Z")));
+				List<String> found = new ArrayList<>();
+				command.options.commands.add(new FindCommand.Command()
+				{
+					@Override
+					public void collectOrdered(FindCommand.FileData fileData)
+					{
+						found.add(fileData.id);
+					}
+				});
+
+				assertEquals(command.execute(), 0);
+
+				assertEquals(found, filenameDates ? List.of() : List.of("ride_export-2024-01-05"));
+			}
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void testMetadata_staleCatalogEntry_readsFile() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		try {
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			ActivityCatalogs activityCatalogs = new ActivityCatalogs(new GpxLikeFiles(new GpxFiles(), new FitFiles()));
+			CatalogEntry entry = activityCatalogs.analyze(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+
+			FindCommand command = new FindCommand(null, null, activityCatalogs, null);
+			command.options = new FindCommand.Options();
+			command.plannedFilters = List.of(new FindCommand.SinceFilter(Instant.parse("2022-01-01T00:00:00Z")));
+			FindCommand.FileData cataloged = new FindCommand.FileData();
+			cataloged.filename = file;
+			cataloged.catalogEntry = entry;
+			assertTrue(command.testMetadata(cataloged));
+			assertSame(cataloged.catalogEntry, entry);
+			assertEquals(cataloged.pendingFilters, List.of());
+
+			// the file was replaced by older activity after cataloging:
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2020-01-01T10:10:00Z</time></trkpt>" +
+				"<trkpt lat=\"50.1\" lon=\"14.2\"><time>2020-01-01T10:20:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			FindCommand.FileData stale = new FindCommand.FileData();
+			stale.filename = file;
+			stale.catalogEntry = entry;
+			assertFalse(command.testMetadata(stale));
+			assertEquals(stale.catalogEntry.getStart(), Instant.parse("2020-01-01T10:10:00Z"));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void execute_pipelineFails_exportWriterClosed() throws Exception
+	{
+		Path directory = Files.createTempDirectory("find");
+		Path exported = Files.createTempDirectory("export");
+		try {
+			Files.writeString(directory.resolve("1.gpx"), "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), new GpxLikeDiscovery(), null, null);
+			command.options = new FindCommand.Options();
+			command.options.sourceDir = directory.toString();
+			command.options.commands.add(command.new ExportGpxCommand(exported));
+			command.options.commands.add(new FindCommand.Command()
+			{
+				@Override
+				public void collectOrdered(FindCommand.FileData fileData)
+				{
+					throw new IllegalStateException("failed");
+				}
+			});
+
+			assertThrows(IllegalStateException.class, command::execute);
+
+			// the writer was closed, so the submitted file is completely written:
+			assertTrue(Files.exists(exported.resolve("1.gpx")));
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+			PathUtils.deleteDirectory(exported);
+		}
+	}
+
+	@Test
+	public void testStreaming_findPoint_stopsAtMatch() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		try {
+			// the content after matching point is broken, it would fail if parsed:
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.0\" lon=\"14.0\"><time>2023-01-01T10:00:00Z</time></trkpt>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"<broken");
+			FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), null, null, null);
+			command.options = new FindCommand.Options();
+			FindCommand.FindPointFilter near = command.new FindPointFilter(new double[][]{ { 50.1, 14.1, 10 } });
+			FindCommand.FindPointFilter far = command.new FindPointFilter(new double[][]{ { 40.0, 14.0, 10 } });
+
+			FindCommand.FileData found = new FindCommand.FileData();
+			found.filename = file;
+			found.pendingFilters = List.of(near);
+			assertTrue(command.testStreaming(found));
+			assertEquals(found.pendingFilters, List.of());
+			assertTrue(found.attributes.containsKey("foundPointLdt"));
+
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			FindCommand.FileData notFound = new FindCommand.FileData();
+			notFound.filename = file;
+			notFound.pendingFilters = List.of(near, far);
+			assertFalse(command.testStreaming(notFound));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void processContent_largeContent_findPointMaterialized() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		try {
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.0\" lon=\"14.0\"><time>2023-01-01T10:00:00Z</time></trkpt>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), null, null, null);
+			command.options = new FindCommand.Options();
+			command.parallelMinPoints = 0;
+			command.searchPool = ForkJoinPool.commonPool();
+			FindCommand.FindPointFilter near = command.new FindPointFilter(new double[][]{ { 50.1, 14.1, 10 } });
+
+			FindCommand.FileData fileData = new FindCommand.FileData();
+			fileData.filename = file;
+			fileData.pendingFilters = List.of(near);
+			command.loadContent(fileData);
+			assertTrue(command.testStreaming(fileData));
+			assertEquals(fileData.pendingFilters, List.of(near));
+			assertTrue(command.processContent(fileData, false));
+			assertNotNull(fileData.pointBlocks);
+			assertTrue(fileData.attributes.containsKey("foundPointLdt"));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void estimatePointCount_formats_byUncompressedSize() throws Exception
+	{
+		byte[] raw = new byte[400_000];
+
+		assertEquals(FindCommand.estimatePointCount(raw, "a.gpx"), 2_000L);
+		assertEquals(FindCommand.estimatePointCount(raw, "a.FIT"), 10_000L);
+		// highly compressible, the estimate follows the uncompressed size from trailer:
+		assertEquals(FindCommand.estimatePointCount(gzip(new String(new char[400_000])), "a.fit.gz"), 10_000L);
+		assertEquals(FindCommand.estimatePointCount(new byte[10], "a.gpx.gz"), 0L);
+	}
+
+	@Test
+	public void execute_stravaZip_readsArchivedEntries() throws Exception
+	{
+		Path archive = Files.createTempFile("strava", ".zip");
+		try {
+			String matching = "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>";
+			String other = "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"40.0\" lon=\"14.0\"><time>2023-01-02T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>";
+			try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+				zip.putNextEntry(new ZipEntry("activities.csv"));
+				zip.write(("Activity ID,Activity Date,Activity Name,Filename\n" +
+					"2,\"Jan 2, 2023, 10:00:00 AM\",Other,activities/2.gpx\n" +
+					"1,\"Jan 1, 2023, 10:00:00 AM\",Matching,activities/1.gpx.gz\n" +
+					"3,\"Jan 3, 2023, 10:00:00 AM\",Manual,\n").getBytes(StandardCharsets.UTF_8));
+				zip.putNextEntry(new ZipEntry("activities/1.gpx.gz"));
+				zip.write(gzip(matching));
+				zip.putNextEntry(new ZipEntry("activities/2.gpx"));
+				zip.write(other.getBytes(StandardCharsets.UTF_8));
+			}
+			FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), null, null, null);
+			command.options = new FindCommand.Options();
+			command.options.sourceStravaCsv = archive.toString();
+			command.options.filters.add(command.new FindPointFilter(new double[][]{ { 50.1, 14.1, 10 } }));
+			List<String> found = new ArrayList<>();
+			List<Integer> pointCounts = new ArrayList<>();
+			command.options.commands.add(new FindCommand.Command()
+			{
+				@Override
+				public boolean needsGpx()
+				{
+					return true;
+				}
+
+				@Override
+				public void collectUnordered(FindCommand.FileData fileData, GPX gpx)
+				{
+					synchronized (pointCounts) {
+						pointCounts.add((int) gpx.tracks().flatMap(Track::segments).flatMap(TrackSegment::points).count());
+					}
+				}
+
+				@Override
+				public void collectOrdered(FindCommand.FileData fileData)
+				{
+					found.add(fileData.id + ":" + fileData.metadata.get("name"));
+				}
+			});
+
+			assertEquals(command.execute(), 0);
+
+			assertEquals(found, List.of("1:Matching"));
+			assertEquals(pointCounts, List.of(1));
+		}
+		finally {
+			Files.delete(archive);
+		}
+	}
+
+	private static byte[] gzip(String content) throws IOException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (GZIPOutputStream stream = new GZIPOutputStream(output)) {
+			stream.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return output.toByteArray();
+	}
+
+	@Test
+	public void testMemo_secondRun_reusesOutcome() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		Path memoFile = Files.createTempFile("memo", ".csv");
+		try {
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			Files.delete(memoFile);
+
+			FindCommand first = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), null, null, null);
+			first.options = new FindCommand.Options();
+			first.filterMemo = FilterMemo.readOrEmpty(memoFile);
+			FindCommand.FindPointFilter near = first.new FindPointFilter(new double[][]{ { 50.1, 14.1, 10 } });
+			first.plannedFilters = List.of(near);
+			FindCommand.FileData evaluated = new FindCommand.FileData();
+			evaluated.filename = file;
+			assertTrue(first.testMetadata(evaluated));
+			assertEquals(evaluated.pendingFilters, List.of(near));
+			assertTrue(first.testStreaming(evaluated));
+			first.filterMemo.write(memoFile);
+
+			// the second run has no reader, the outcome must come from memo:
+			FindCommand second = new FindCommand(null, null, null, null);
+			second.options = new FindCommand.Options();
+			second.filterMemo = FilterMemo.readOrEmpty(memoFile);
+			FindCommand.FindPointFilter sameNear = second.new FindPointFilter(new double[][]{ { 50.1, 14.1, 10 } });
+			FindCommand.FindPointFilter far = second.new FindPointFilter(new double[][]{ { 40.0, 14.0, 10 } });
+			second.plannedFilters = List.of(sameNear, far);
+			FindCommand.FileData memoized = new FindCommand.FileData();
+			memoized.filename = file;
+			assertTrue(second.testMetadata(memoized));
+			assertEquals(memoized.pendingFilters, List.of(far));
+			assertEquals(memoized.attributes.get("foundPointLdt"), evaluated.attributes.get("foundPointLdt"));
+		}
+		finally {
+			Files.delete(file);
+			Files.deleteIfExists(memoFile);
+		}
+	}
+
+	@Test
+	public void testMemo_earlyRejection_undecidedNotRecorded() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		try {
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"<trkpt lat=\"40.0\" lon=\"14.0\"><time>2023-01-01T10:20:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+
+			FindCommand command = new FindCommand(new GpxLikeFiles(new GpxFiles(), new FitFiles()), null, null, null);
+			command.options = new FindCommand.Options();
+			command.filterMemo = new FilterMemo();
+			FindCommand.DismissIfInZoneFilter dismiss = command.new DismissIfInZoneFilter(new double[][]{ { 50.1, 14.1, 10 } });
+			FindCommand.FindPointFilter far = command.new FindPointFilter(new double[][]{ { 40.0, 14.0, 10 } });
+			command.plannedFilters = List.of(far, dismiss);
+			FindCommand.FileData evaluated = new FindCommand.FileData();
+			evaluated.filename = file;
+			assertTrue(command.testMetadata(evaluated));
+			assertFalse(command.testStreaming(evaluated));
+
+			String path = file.toAbsolutePath().normalize().toString();
+			assertFalse(command.filterMemo.lookup(path, evaluated.identity, dismiss.signature()).isResult());
+			// the scan stopped before reaching the far point, its outcome is unknown:
+			assertNull(command.filterMemo.lookup(path, evaluated.identity, far.signature()));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void fileIdentity_catalogEntry_hashOnlyIfSameFile() throws Exception
+	{
+		Path file = Files.createTempFile("track", ".gpx");
+		try {
+			Files.writeString(file, "<gpx version=\"1.1\"><trk><trkseg>" +
+				"<trkpt lat=\"50.1\" lon=\"14.1\"><time>2023-01-01T10:10:00Z</time></trkpt>" +
+				"</trkseg></trk></gpx>");
+			long size = Files.size(file);
+			long mtime = Files.getLastModifiedTime(file).toMillis();
+			FindCommand command = new FindCommand(null, null, null, null);
+			command.options = new FindCommand.Options();
+
+			FindCommand.FileData same = new FindCommand.FileData();
+			same.filename = file;
+			same.catalogEntry = CatalogEntry.builder().path(file).size(size).mtime(mtime).hash("abcd").build();
+			assertEquals(command.fileIdentity(same), new FilterMemo.FileIdentity(size, mtime, "abcd"));
+
+			// the entry describes previous content, the memo must not match rows recorded for it:
+			FindCommand.FileData changed = new FindCommand.FileData();
+			changed.filename = file;
+			changed.catalogEntry = CatalogEntry.builder().path(file).size(size - 1).mtime(mtime).hash("abcd").build();
+			assertEquals(command.fileIdentity(changed), new FilterMemo.FileIdentity(size, mtime, null));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void parseCircles_file_skipsComments() throws Exception
+	{
+		Path file = Files.createTempFile("circles", ".txt");
+		try {
+			Files.writeString(file, "# cafes\n49.2338,-123.0048,100\n\n 50.0, 14.4, 50\n");
+
+			double[][] circles = FindCommand.parseCircles("--find-point", "@" + file);
+
+			assertEquals(circles, new double[][]{ { 49.2338, -123.0048, 100 }, { 50.0, 14.4, 50 } });
+			assertEquals(FindCommand.parseCircles("--find-point", "1,2,3:4,5,6"), new double[][]{ { 1, 2, 3 }, { 4, 5, 6 } });
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+}
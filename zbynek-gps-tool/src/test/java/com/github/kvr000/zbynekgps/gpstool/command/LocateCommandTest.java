@@ -0,0 +1,145 @@
+package com.github.kvr000.zbynekgps.gpstool.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kvr000.zbynekgps.gpstool.ZbynekGpsTool;
+import com.github.kvr000.zbynekgps.gpstool.fit.io.FitFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpx.io.GpxRepoFactory;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeDiscovery;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class LocateCommandTest
+{
+	Path directory;
+
+	Path track;
+
+	ZbynekGpsTool.Options mainOptions;
+
+	LocateCommand locateCommand;
+
+	@BeforeMethod
+	public void setup() throws IOException
+	{
+		directory = Files.createTempDirectory("locate");
+		Files.createDirectory(directory.resolve("tracks"));
+		track = directory.resolve("tracks/track.gpx");
+		GPX.write(GPX.builder().addTrack(t -> t.addSegment(segment -> segment.points(List.of(
+			WayPoint.of(10, 20, Instant.parse("2024-05-01T10:00:00Z").toEpochMilli()),
+			WayPoint.of(12, 22, Instant.parse("2024-05-01T10:00:10Z").toEpochMilli())
+		)))).build(), track);
+
+		GpxLikeFiles gpxLikeFiles = new GpxLikeFiles(new GpxFiles(), new FitFiles());
+		mainOptions = new ZbynekGpsTool.Options();
+		mainOptions.setOutput(directory.resolve("output").toString());
+		locateCommand = new LocateCommand(new GpxRepoFactory(gpxLikeFiles, new GpxLikeDiscovery()), null, mainOptions);
+		locateCommand.createOptions(null);
+		locateCommand.options.sourceDir = directory.resolve("tracks").toString();
+	}
+
+	@Test
+	public void execute_csv_columnsPassedInInputOrder() throws Exception
+	{
+		try {
+			Files.writeString(directory.resolve("input.csv"), """
+				name,taken,note
+				late,2024-06-01T00:00:00Z,"not, covered"
+				middle,2024-05-01T10:00:05Z,x
+				broken,yesterday,y
+				first,2024-05-01T10:00:00Z,z
+				""");
+			locateCommand.options.input = directory.resolve("input.csv").toString();
+			locateCommand.options.timeColumn = "taken";
+
+			assertEquals(locateCommand.execute(), 0);
+
+			try (Reader reader = Files.newBufferedReader(directory.resolve("output"));
+			     CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(reader)
+			) {
+				assertEquals(parser.getHeaderNames(), List.of("name", "taken", "note", "lat", "lon", "ele", "method", "file"));
+				List<CSVRecord> records = parser.getRecords();
+				assertEquals(records.stream().map(record -> record.get("name")).toList(), List.of("late", "middle", "broken", "first"));
+				assertEquals(records.get(0).get("note"), "not, covered");
+				assertEquals(records.get(0).get("method"), "none");
+				assertEquals(records.get(0).get("lat"), "");
+				assertEquals(records.get(1).get("method"), "interpolated");
+				assertEquals(Double.parseDouble(records.get(1).get("lat")), 11.0, 0.000001);
+				assertEquals(Double.parseDouble(records.get(1).get("lon")), 21.0, 0.000001);
+				assertEquals(records.get(1).get("file"), track.toString());
+				assertEquals(records.get(2).get("method"), "none");
+				assertEquals(records.get(3).get("method"), "exact");
+				assertEquals(Double.parseDouble(records.get(3).get("lat")), 10.0);
+			}
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void execute_linesToJsonl_zoneApplied() throws Exception
+	{
+		try {
+			Files.writeString(directory.resolve("input.txt"), """
+				# photos
+				2024-05-01 12:00:05
+
+				1714557600000
+				2024-05-01 13:00:00
+				""");
+			locateCommand.options.input = directory.resolve("input.txt").toString();
+			locateCommand.options.zone = ZoneId.of("Europe/Prague");
+			locateCommand.options.format = "jsonl";
+
+			assertEquals(locateCommand.execute(), 0);
+
+			ObjectMapper objectMapper = new ObjectMapper();
+			List<String> lines = Files.readAllLines(directory.resolve("output"));
+			assertEquals(lines.size(), 3);
+			@SuppressWarnings("unchecked")
+			List<Map<String, Object>> rows = lines.stream()
+				.map(line -> {
+					try {
+						return (Map<String, Object>) objectMapper.readValue(line, Map.class);
+					}
+					catch (IOException ex) {
+						throw new RuntimeException(ex);
+					}
+				})
+				.toList();
+			assertEquals(List.copyOf(rows.get(0).keySet()), List.of("time", "lat", "lon", "ele", "method", "file"));
+			assertEquals(rows.get(0).get("time"), "2024-05-01 12:00:05");
+			assertEquals(rows.get(0).get("method"), "interpolated");
+			assertEquals((Double) rows.get(0).get("lat"), 11.0, 0.000001);
+			assertEquals(rows.get(1).get("time"), "1714557600000");
+			assertEquals(rows.get(1).get("method"), "exact");
+			assertEquals(rows.get(2).get("method"), "none");
+			assertNull(rows.get(2).get("lat"));
+			assertNull(rows.get(2).get("file"));
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.github.kvr000.zbynekgps.gpstool.fit.io;
+
+import com.garmin.fit.BufferEncoder;
+import com.garmin.fit.DateTime;
+import com.garmin.fit.Fit;
+import com.garmin.fit.FileIdMesg;
+import com.garmin.fit.LapMesg;
+import com.garmin.fit.RecordMesg;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class FitFilesTest
+{
+	@Test
+	public void scanFit_records_sameAsRead() throws IOException
+	{
+		FitFiles fitFiles = new FitFiles();
+		byte[] content = createFit();
+		List<String> scanned = new ArrayList<>();
+
+		boolean completed = fitFiles.scanFit(new ByteArrayInputStream(content),
+			(lat, lon, time) -> scanned.add(lat + "," + lon + "," + time));
+
+		assertTrue(completed);
+		List<String> read = GpxUtil.expandToWaypoints(fitFiles.readFit(new ByteArrayInputStream(content))).stream()
+			.map(point -> point.getLatitude().doubleValue() + "," + point.getLongitude().doubleValue() + "," +
+				point.getTime().get().toEpochMilli())
+			.toList();
+		assertEquals(scanned, read);
+		assertEquals(scanned.size(), 4);
+	}
+
+	@Test
+	public void scanFit_stopped_returnsFalse() throws IOException
+	{
+		FitFiles fitFiles = new FitFiles();
+		List<Long> scanned = new ArrayList<>();
+
+		boolean completed = fitFiles.scanFit(new ByteArrayInputStream(createFit()),
+			(lat, lon, time) -> scanned.add(time) && false);
+
+		assertFalse(completed);
+		assertEquals(scanned.size(), 1);
+	}
+
+	private static byte[] createFit()
+	{
+		BufferEncoder encoder = new BufferEncoder(Fit.ProtocolVersion.V2_0);
+		FileIdMesg fileId = new FileIdMesg();
+		fileId.setType(com.garmin.fit.File.ACTIVITY);
+		fileId.setTimeCreated(new DateTime(new Date(1_700_000_000_000L)));
+		encoder.write(fileId);
+		encoder.write(record(1_700_000_000_000L, 50.0, 14.0));
+		// same time, replaces previous position:
+		encoder.write(record(1_700_000_000_000L, 50.001, 14.001));
+		// no position, keeps last one:
+		encoder.write(record(1_700_000_001_000L, Double.NaN, Double.NaN));
+		LapMesg lap = new LapMesg();
+		lap.setTimestamp(new DateTime(new Date(1_700_000_001_000L)));
+		encoder.write(lap);
+		// same time after lap, not merged:
+		encoder.write(record(1_700_000_001_000L, 50.002, 14.002));
+		encoder.write(record(1_700_000_002_000L, 50.003, 14.003));
+		return encoder.close();
+	}
+
+	private static RecordMesg record(long time, double lat, double lon)
+	{
+		RecordMesg record = new RecordMesg();
+		record.setTimestamp(new DateTime(new Date(time)));
+		if (!Double.isNaN(lat)) {
+			record.setPositionLat((int) (lat * (Math.pow(2, 31) / 180)));
+			record.setPositionLong((int) (lon * (Math.pow(2, 31) / 180)));
+		}
+		return record;
+	}
+}
@@ -0,0 +1,52 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class CircleGridTest
+{
+	@Test
+	public void contains_random_sameAsLinear()
+	{
+		Random random = new Random(0);
+		GeoCircle[] circles = IntStream.range(0, 2000)
+			.mapToObj(i -> new GeoCircle(50 + random.nextDouble(), i % 100 == 0 ? 179.999 : 14 + random.nextDouble(),
+				i % 500 == 0 ? 200_000 : 50 + random.nextInt(500)))
+			.toArray(GeoCircle[]::new);
+		CircleGrid grid = CircleGrid.of(circles);
+
+		for (int i = 0; i < 100_000; ++i) {
+			double lat = 50 + random.nextDouble();
+			double lon = i % 10 == 0 ? -180 + random.nextDouble() * 0.01 : 14 + random.nextDouble();
+			boolean expected = Arrays.stream(circles).anyMatch(circle -> circle.contains(lat, lon));
+			assertEquals(grid.contains(lat, lon), expected, "lat=" + lat + " lon=" + lon);
+		}
+	}
+
+	@Test
+	public void findCandidates_random_sameAsLinear()
+	{
+		Random random = new Random(0);
+		GeoCircle[] circles = IntStream.range(0, 2000)
+			.mapToObj(i -> new GeoCircle(50 + random.nextDouble(), 14 + random.nextDouble(), 50 + random.nextInt(500)))
+			.toArray(GeoCircle[]::new);
+		CircleGrid grid = CircleGrid.of(circles);
+
+		for (int i = 0; i < 10_000; ++i) {
+			double minLat = 50 + random.nextDouble(), minLon = 14 + random.nextDouble();
+			double maxLat = minLat + random.nextDouble() * (i % 100 == 0 ? 1 : 0.01), maxLon = minLon + random.nextDouble() * 0.01;
+			List<GeoCircle> expected = Arrays.stream(circles)
+				.filter(circle -> circle.mayIntersectBox(minLat, minLon, maxLat, maxLon))
+				.toList();
+			assertEquals(grid.findCandidates(minLat, minLon, maxLat, maxLon), expected);
+			assertEquals(grid.mayIntersectBox(minLat, minLon, maxLat, maxLon), !expected.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class CircleKernelTest
+{
+	/** Loaded by name, so the test compiles without incubator module, surefire adds it at runtime */
+	private static final CircleKernel VECTOR = CircleKernel.of("vector");
+
+	@Test
+	public void maskWithin_random_sameAsScalar()
+	{
+		Random random = new Random(0);
+		double[] latitudes = new double[1000];
+		double[] longitudes = new double[1000];
+		double[] radii = { 1, 50, 5_000, 500_000 };
+		for (int round = 0; round < 1000; ++round) {
+			double lat = round % 10 == 0 ? 89.999 : random.nextDouble() * 170 - 85;
+			double lon = round % 7 == 0 ? 179.9999 : random.nextDouble() * 360 - 180;
+			double radius = radii[random.nextInt(radii.length)];
+			double spread = Math.toDegrees(radius / GeoCalc.EARTH_RADIUS) * 1.5;
+			for (int i = 0; i < latitudes.length; ++i) {
+				latitudes[i] = Math.max(-90, Math.min(90, lat + (random.nextDouble() * 2 - 1) * spread));
+				longitudes[i] = normalizeLongitude(lon + (random.nextDouble() * 2 - 1) * spread / Math.max(0.01, Math.cos(Math.toRadians(lat))));
+			}
+			GeoCircle circle = new GeoCircle(lat, lon, radius);
+			int from = random.nextInt(100);
+			int to = from + random.nextInt(CircleKernel.MASK_SIZE + 1);
+			assertEquals(VECTOR.maskWithin(latitudes, longitudes, from, to, circle),
+				ScalarCircleKernel.INSTANCE.maskWithin(latitudes, longitudes, from, to, circle));
+			assertEquals(VECTOR.findFirstWithin(latitudes, longitudes, from, latitudes.length, circle),
+				ScalarCircleKernel.INSTANCE.findFirstWithin(latitudes, longitudes, from, latitudes.length, circle));
+		}
+	}
+
+	@Test
+	public void maskPairsWithin_random_sameAsScalar()
+	{
+		Random random = new Random(0);
+		double[] latitudes1 = new double[CircleKernel.MASK_SIZE];
+		double[] longitudes1 = new double[CircleKernel.MASK_SIZE];
+		double[] latitudes2 = new double[CircleKernel.MASK_SIZE];
+		double[] longitudes2 = new double[CircleKernel.MASK_SIZE];
+		double[] radii = { 1, 50, 5_000, 500_000 };
+		for (int round = 0; round < 5000; ++round) {
+			double radius = radii[random.nextInt(radii.length)];
+			double spread = Math.toDegrees(radius / GeoCalc.EARTH_RADIUS) * 1.2;
+			for (int i = 0; i < CircleKernel.MASK_SIZE; ++i) {
+				latitudes1[i] = i % 9 == 0 ? 89.99 : random.nextDouble() * 170 - 85;
+				longitudes1[i] = i % 5 == 0 ? -179.9999 : random.nextDouble() * 360 - 180;
+				latitudes2[i] = Math.max(-90, Math.min(90, latitudes1[i] + (random.nextDouble() * 2 - 1) * spread));
+				longitudes2[i] = normalizeLongitude(longitudes1[i] + (random.nextDouble() * 2 - 1) * spread);
+			}
+			assertEquals(VECTOR.maskPairsWithin(latitudes1, longitudes1, latitudes2, longitudes2, 0, CircleKernel.MASK_SIZE, radius),
+				ScalarCircleKernel.INSTANCE.maskPairsWithin(latitudes1, longitudes1, latitudes2, longitudes2, 0, CircleKernel.MASK_SIZE, radius));
+		}
+	}
+
+	@Test
+	public void of_names_resolved()
+	{
+		assertEquals(CircleKernel.of("scalar"), ScalarCircleKernel.INSTANCE);
+		assertEquals(CircleKernel.of("vector").getClass().getSimpleName(), "VectorCircleKernel");
+	}
+
+	private static double normalizeLongitude(double lon)
+	{
+		return lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+	}
+}
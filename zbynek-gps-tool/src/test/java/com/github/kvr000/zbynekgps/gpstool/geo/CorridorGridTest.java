@@ -0,0 +1,62 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class CorridorGridTest
+{
+	@Test
+	public void coverage_halfRoute_half()
+	{
+		// about 1.1 km to north, densified to 20 m segments:
+		CorridorGrid corridor = CorridorGrid.of(List.of(new double[]{ 50.0, 14.0 }, new double[]{ 50.01, 14.0 }), 20);
+		CorridorGrid.Coverage coverage = corridor.newCoverage();
+
+		for (int i = 0; i <= 50; ++i) {
+			assertTrue(coverage.add(50.0 + i * 0.0001, 14.0001));
+		}
+
+		assertEquals(corridor.segmentCount(), 56);
+		assertEquals(coverage.fraction(), 0.5, 0.05);
+	}
+
+	@Test
+	public void coverage_outside_none()
+	{
+		CorridorGrid corridor = CorridorGrid.of(List.of(new double[]{ 50.0, 14.0 }, new double[]{ 50.01, 14.0 }), 20);
+		CorridorGrid.Coverage coverage = corridor.newCoverage();
+
+		// about 70 m to east:
+		assertFalse(coverage.add(50.005, 14.001));
+		assertFalse(coverage.add(40.0, 14.0));
+
+		assertEquals(coverage.fraction(), 0.0);
+		assertTrue(corridor.mayIntersectBox(50.005, 13.9, 50.006, 14.0));
+		assertFalse(corridor.mayIntersectBox(50.02, 13.9, 50.03, 14.1));
+	}
+
+	@Test
+	public void coverage_separatePolylines_gapNotIncluded()
+	{
+		// two parts about 1.1 km long each, with 1.1 km gap between them:
+		CorridorGrid corridor = CorridorGrid.ofPolylines(List.of(
+			List.of(new double[]{ 50.0, 14.0 }, new double[]{ 50.01, 14.0 }),
+			List.of(new double[]{ 50.02, 14.0 }, new double[]{ 50.03, 14.0 })
+		), 20);
+		CorridorGrid.Coverage coverage = corridor.newCoverage();
+
+		assertFalse(coverage.add(50.015, 14.0));
+		for (int i = 0; i <= 100; ++i) {
+			assertTrue(coverage.add(50.0 + i * 0.0001, 14.0));
+		}
+
+		assertEquals(corridor.getTotalLength(), 2 * 1112, 10);
+		assertEquals(coverage.fraction(), 0.5, 0.02);
+	}
+}
@@ -0,0 +1,44 @@
+package com.github.kvr000.zbynekgps.gpstool.geo;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class GeoCircleTest
+{
+	@Test
+	public void contains_randomNearBoundary_sameAsHaversine()
+	{
+		Random random = new Random(0);
+		double[] radii = { 1, 10, 50, 500, 5_000, 50_000, 500_000, 5_000_000 };
+		for (int i = 0; i < 200_000; ++i) {
+			double lat = i % 10 == 0 ? (random.nextBoolean() ? 89.99 : -89.99) : random.nextDouble() * 180 - 90;
+			double lon = i % 7 == 0 ? 179.9999 : random.nextDouble() * 360 - 180;
+			double radius = radii[random.nextInt(radii.length)];
+			GeoCircle circle = new GeoCircle(lat, lon, radius);
+			// point around the boundary in random direction:
+			double bearing = random.nextDouble() * 2 * Math.PI;
+			double angle = radius / GeoCalc.EARTH_RADIUS * (0.98 + random.nextDouble() * 0.04);
+			double lat2 = Math.toDegrees(Math.asin(Math.sin(Math.toRadians(lat)) * Math.cos(angle) +
+				Math.cos(Math.toRadians(lat)) * Math.sin(angle) * Math.cos(bearing)));
+			double lon2 = lon + Math.toDegrees(Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(Math.toRadians(lat)),
+				Math.cos(angle) - Math.sin(Math.toRadians(lat)) * Math.sin(Math.toRadians(lat2))));
+			lon2 = lon2 > 180 ? lon2 - 360 : lon2 < -180 ? lon2 + 360 : lon2;
+			assertEquals(circle.contains(lat2, lon2), GeoCalc.distance(lat2, lon2, lat, lon) <= radius,
+				"lat=" + lat + " lon=" + lon + " radius=" + radius + " lat2=" + lat2 + " lon2=" + lon2);
+		}
+	}
+
+	@Test
+	public void contains_farPoints_rejected()
+	{
+		GeoCircle circle = new GeoCircle(49.2338, -123.0048, 100);
+		assertEquals(circle.contains(49.2338, -123.0048), true);
+		assertEquals(circle.contains(49.2345, -123.0048), true);
+		assertEquals(circle.contains(49.2350, -123.0048), false);
+		assertEquals(circle.contains(-49.2338, 56.9952), false);
+	}
+}
@@ -1,5 +1,7 @@
 package com.github.kvr000.zbynekgps.gpstool.gpx.io;
 
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.GpxUtil;
+import com.github.kvr000.zbynekgps.gpstool.gpx.util.PointConsumer;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Namespace;
@@ -12,10 +14,13 @@ import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 
@@ -145,6 +150,49 @@ public class GpxFilesTest
 		}
 	}
 
+	@Test
+	public void scanGpx_allPoints_sameAsRead() throws IOException
+	{
+		GpxFiles gpxFiles = new GpxFiles();
+		String xml = "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">" +
+			"<wpt lat=\"9.0\" lon=\"9.0\"><time>2023-01-01T09:00:00Z</time></wpt>" +
+			"<trk><trkseg>" +
+			"<trkpt lat=\"1.0\" lon=\"2.0\"><ele>5</ele><time>2023-01-01T10:00:00Z</time></trkpt>" +
+			"<trkpt lat=\"1.1\" lon=\"2.1\"><extensions><time>ignored</time></extensions></trkpt>" +
+			"</trkseg><trkseg>" +
+			"<trkpt lat=\"1.2\" lon=\"2.2\"><time>2023-01-01T10:00:02.500Z</time></trkpt>" +
+			"</trkseg></trk>" +
+			"</gpx>";
+		List<String> scanned = new ArrayList<>();
+
+		boolean completed = gpxFiles.scanGpx(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+			(lat, lon, time) -> scanned.add(lat + "," + lon + "," + time));
+
+		assertTrue(completed);
+		List<String> read = GpxUtil.expandToWaypoints(gpxFiles.readGpx(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))).stream()
+			.map(point -> point.getLatitude().doubleValue() + "," + point.getLongitude().doubleValue() + "," +
+				point.getTime().map(Instant::toEpochMilli).orElse(PointConsumer.NO_TIME))
+			.toList();
+		assertEquals(scanned, read);
+	}
+
+	@Test
+	public void scanGpx_stopped_remainingNotParsed() throws IOException
+	{
+		GpxFiles gpxFiles = new GpxFiles();
+		String xml = "<gpx version=\"1.1\"><trk><trkseg>" +
+			"<trkpt lat=\"1.0\" lon=\"2.0\"/>" +
+			"<trkpt lat=\"1.1\" lon=\"2.1\"/>" +
+			"<broken";
+		List<Double> scanned = new ArrayList<>();
+
+		boolean completed = gpxFiles.scanGpx(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+			(lat, lon, time) -> scanned.add(lat) && lat < 1.1);
+
+		assertFalse(completed);
+		assertEquals(scanned, List.of(1.0, 1.1));
+	}
+
 	private static Document parse(String xml) throws DocumentException
 	{
 		return new SAXReader().read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
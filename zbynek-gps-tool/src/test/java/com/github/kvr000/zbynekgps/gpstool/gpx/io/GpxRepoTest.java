@@ -0,0 +1,150 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.io;
+
+import com.github.kvr000.zbynekgps.gpstool.fit.io.FitFiles;
+import com.github.kvr000.zbynekgps.gpstool.gpxlike.io.GpxLikeFiles;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import org.apache.commons.io.file.PathUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+public class GpxRepoTest
+{
+	@Test
+	public void getEpochMilli_concurrent_loadedOnce() throws IOException
+	{
+		Path dir = Files.createTempDirectory("repo");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 1000), WayPoint.of(11, 21, 2000));
+			Path two = writeGpx(dir.resolve("two.gpx"), WayPoint.of(30, 40, 100_000), WayPoint.of(31, 41, 101_000));
+			AtomicInteger loads = new AtomicInteger();
+			GpxLikeFiles gpxLikeFiles = new GpxLikeFiles(new GpxFiles(), new FitFiles())
+			{
+				@Override
+				public GPX readGpxDecompressed(Path input) throws IOException
+				{
+					loads.incrementAndGet();
+					return super.readGpxDecompressed(input);
+				}
+			};
+			GpxRepo repo = new GpxRepo(gpxLikeFiles, Stream.of(
+				new GpxRepo.FileRange(1000, 2000, one),
+				new GpxRepo.FileRange(100_000, 101_000, two)
+			));
+
+			IntStream.range(0, 1000).parallel().forEach(i -> {
+				Pair<WayPoint, Path> found = repo.getEpochMilli(i % 2 == 0 ? 1500 : 100_500);
+				assertEquals(found.getRight(), i % 2 == 0 ? one : two);
+			});
+
+			assertEquals(loads.get(), 2);
+			assertEquals(repo.getCacheStats().loadCount(), 2);
+			assertEquals(repo.getCacheStats().requestCount(), 1000);
+			assertNull(repo.getEpochMilli(50_000));
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void new_files_indexedWithoutDecoding() throws IOException
+	{
+		Path dir = Files.createTempDirectory("repo");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 1000), WayPoint.of(11, 21, 2000));
+			Path two = writeGpx(dir.resolve("two.gpx"), WayPoint.of(30, 40, 100_000), WayPoint.of(31, 41, 101_000));
+			Path empty = writeGpx(dir.resolve("empty.gpx"), WayPoint.of(50, 60));
+			AtomicInteger loads = new AtomicInteger();
+			GpxLikeFiles gpxLikeFiles = new GpxLikeFiles(new GpxFiles(), new FitFiles())
+			{
+				@Override
+				public GPX readGpxDecompressed(Path input) throws IOException
+				{
+					loads.incrementAndGet();
+					return super.readGpxDecompressed(input);
+				}
+			};
+			GpxRepo repo = new GpxRepo(gpxLikeFiles, List.of(one, two, empty));
+			assertEquals(loads.get(), 0);
+
+			assertEquals(repo.getEpochMilli(1500).getRight(), one);
+			assertEquals(repo.getEpochMilli(101_000).getRight(), two);
+			assertNull(repo.getEpochMilli(50_000));
+			assertEquals(loads.get(), 2);
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void getEpochMilli_overlapping_policyApplied() throws IOException
+	{
+		Path dir = Files.createTempDirectory("repo");
+		try {
+			Path longer = writeGpx(dir.resolve("longer.gpx"), WayPoint.of(10, 20, 0), WayPoint.of(10, 20, 5_000), WayPoint.of(10, 20, 100_000));
+			Path shorter = writeGpx(dir.resolve("shorter.gpx"), WayPoint.of(30, 40, 4_000), WayPoint.of(30, 40, 6_000));
+			GpxRepo repo = new GpxRepo(new GpxLikeFiles(new GpxFiles(), new FitFiles()), Stream.of(
+				new GpxRepo.FileRange(0, 100_000, longer),
+				new GpxRepo.FileRange(4_000, 6_000, shorter)
+			));
+
+			assertEquals(repo.getEpochMilli(5_500).getRight(), longer);
+			assertEquals(repo.getEpochMilli(6_500).getRight(), shorter);
+			assertEquals(repo.getEpochMilli(6_500, GpxRepo.OverlapPolicy.FIRST_STARTED).getRight(), longer);
+			assertEquals(repo.getEpochMilli(5_500, GpxRepo.OverlapPolicy.LAST_STARTED).getRight(), shorter);
+			assertEquals(repo.getAllEpochMilli(5_500).stream().map(Pair::getRight).toList(), List.of(longer, shorter));
+			assertEquals(repo.getAllEpochMilli(50_000).size(), 0);
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Test
+	public void locateEpochMilli_points_interpolatedOrNearest() throws IOException
+	{
+		Path dir = Files.createTempDirectory("repo");
+		try {
+			Path one = writeGpx(dir.resolve("one.gpx"), WayPoint.of(10, 20, 0), WayPoint.of(12, 22, 10_000), WayPoint.of(14, 24, 200_000));
+			GpxRepo repo = new GpxRepo(new GpxLikeFiles(new GpxFiles(), new FitFiles()), Stream.of(
+				new GpxRepo.FileRange(0, 200_000, one)
+			));
+			GpxRepo.Cursor cursor = repo.cursor();
+
+			GpxRepo.Location exact = cursor.locateEpochMilli(0, 60_000, 10_000);
+			assertEquals(exact.getMethod(), GpxRepo.LocationMethod.EXACT);
+			GpxRepo.Location interpolated = cursor.locateEpochMilli(5_000, 60_000, 10_000);
+			assertEquals(interpolated.getMethod(), GpxRepo.LocationMethod.INTERPOLATED);
+			assertEquals(interpolated.getPoint().getLatitude().doubleValue(), 11.0, 0.000001);
+			assertEquals(interpolated.getPoint().getLongitude().doubleValue(), 21.0, 0.000001);
+			GpxRepo.Location nearest = cursor.locateEpochMilli(195_000, 60_000, 10_000);
+			assertEquals(nearest.getMethod(), GpxRepo.LocationMethod.NEAREST);
+			assertEquals(nearest.getPoint().getLatitude().doubleValue(), 14.0);
+			assertNull(cursor.locateEpochMilli(100_000, 60_000, 10_000));
+			assertNull(cursor.locateEpochMilli(300_000, 60_000, 10_000));
+		}
+		finally {
+			PathUtils.deleteDirectory(dir);
+		}
+	}
+
+	private static Path writeGpx(Path file, WayPoint... points) throws IOException
+	{
+		GPX.write(GPX.builder().addTrack(track -> track.addSegment(segment -> segment.points(List.of(points)))).build(), file);
+		return file;
+	}
+}
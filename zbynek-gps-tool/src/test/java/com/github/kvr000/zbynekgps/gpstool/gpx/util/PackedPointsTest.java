@@ -0,0 +1,58 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import io.jenetics.jpx.WayPoint;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class PackedPointsTest
+{
+	@Test
+	public void of_unsortedDuplicates_sortedFirstKept()
+	{
+		PackedPoints points = PackedPoints.of(List.of(
+			WayPoint.of(3, 30, 3000),
+			WayPoint.of(1, 10, 1000),
+			WayPoint.of(2, 20, 2000),
+			WayPoint.of(4, 40, 2000)
+		));
+
+		assertEquals(points.size(), 3);
+		assertEquals(points.getTime(1), 2000);
+		assertEquals(points.getLatitude(1), 2.0);
+		assertEquals(points.getLongitude(2), 30.0);
+		assertEquals(points.toWayPoint(0), WayPoint.of(1, 10, 1000));
+	}
+
+	@Test
+	public void floorIndex_points_found()
+	{
+		PackedPoints points = PackedPoints.of(List.of(WayPoint.of(1, 10, 1000), WayPoint.of(2, 20, 2000)));
+
+		assertEquals(points.floorIndex(999), -1);
+		assertEquals(points.floorIndex(1000), 0);
+		assertEquals(points.floorIndex(1999), 0);
+		assertEquals(points.floorIndex(5000), 1);
+	}
+
+	@Test
+	public void floorIndex_galloping_sameAsBinary()
+	{
+		Random random = new Random(0);
+		PackedPoints points = PackedPoints.of(IntStream.range(0, 10_000)
+			.mapToObj(i -> WayPoint.of(0, 0, i * 1000L + random.nextInt(500)))
+			.toList());
+
+		int hint = -1;
+		for (long time = -1000; time < 10_001_000; time += random.nextInt(3000)) {
+			int expected = points.floorIndex(time);
+			hint = points.floorIndex(time, hint);
+			assertEquals(hint, expected);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleGrid;
+import com.github.kvr000.zbynekgps.gpstool.geo.CircleKernel;
+import com.github.kvr000.zbynekgps.gpstool.geo.GeoCalc;
+import io.jenetics.jpx.GPX;
+import io.jenetics.jpx.WayPoint;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class PointBlocksTest
+{
+	@Test
+	public void findFirstWithin_untimed_skipped()
+	{
+		PointBlocks blocks = PointBlocks.of(createGpx(List.of(
+			WayPoint.of(10, 20),
+			WayPoint.of(10, 20, 1000),
+			WayPoint.of(11, 21, 2000)
+		)));
+
+		assertEquals(blocks.findFirstWithin(0, new double[][]{ { 10, 20, 10 } }, true), 1);
+		assertEquals(blocks.findFirstWithin(0, new double[][]{ { 10, 20, 10 } }, false), 0);
+		assertEquals(blocks.findFirstWithin(2, new double[][]{ { 10, 20, 10 } }, false), -1);
+		assertEquals(blocks.findFirstWithin(0, new double[][]{ { -10, -20, 1000 }, { 11, 21, 10 } }, true), 2);
+	}
+
+	@Test
+	public void findFirstWithin_random_sameAsLinear()
+	{
+		Random random = new Random(0);
+		List<WayPoint> points = IntStream.range(0, 1000)
+			.mapToObj(i -> WayPoint.of(50 + random.nextDouble() * 0.1, 14 + random.nextDouble() * 0.1, i * 1000L))
+			.toList();
+		PointBlocks blocks = PointBlocks.of(createGpx(points));
+
+		for (int i = 0; i < 100; ++i) {
+			double[][] circles = { { 50 + random.nextDouble() * 0.2 - 0.05, 14 + random.nextDouble() * 0.2 - 0.05, 5 + random.nextInt(200) } };
+			int from = random.nextInt(1000);
+			int expected = IntStream.range(from, points.size())
+				.filter(p -> GeoCalc.isWithinRadius(points.get(p).getLatitude().doubleValue(), points.get(p).getLongitude().doubleValue(),
+					circles[0][0], circles[0][1], circles[0][2]))
+				.findFirst()
+				.orElse(-1);
+			assertEquals(blocks.findFirstWithin(from, circles, true), expected);
+		}
+	}
+
+	@Test
+	public void findFirstWithin_parallel_sameAsSequential()
+	{
+		Random random = new Random(0);
+		List<WayPoint> points = IntStream.range(0, 100_000)
+			.mapToObj(i -> WayPoint.of(50 + random.nextDouble() * 1, 14 + random.nextDouble() * 1, i * 1000L))
+			.toList();
+		PointBlocks blocks = PointBlocks.of(createGpx(points));
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (int i = 0; i < 20; ++i) {
+			WayPoint center = points.get(random.nextInt(points.size()));
+			CircleGrid circles = CircleGrid.of(new double[][]{
+				{ center.getLatitude().doubleValue(), center.getLongitude().doubleValue(), 10 + random.nextInt(500) }
+			});
+			int from = random.nextInt(50_000);
+			assertEquals(
+				blocks.findFirstWithin(from, circles, true, CircleKernel.scalar(), pool, 0),
+				blocks.findFirstWithin(from, circles, true, CircleKernel.scalar(), null, 0)
+			);
+		}
+		pool.shutdown();
+	}
+
+	private static GPX createGpx(List<WayPoint> points)
+	{
+		return GPX.builder().addTrack(track -> track.addSegment(segment -> segment.points(points))).build();
+	}
+}
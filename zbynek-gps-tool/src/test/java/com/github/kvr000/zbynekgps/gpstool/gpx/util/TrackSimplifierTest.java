@@ -0,0 +1,40 @@
+package com.github.kvr000.zbynekgps.gpstool.gpx.util;
+
+import io.jenetics.jpx.WayPoint;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class TrackSimplifierTest
+{
+	@Test
+	public void simplify_straightLine_endsKept()
+	{
+		List<WayPoint> points = IntStream.range(0, 1000)
+			.mapToObj(i -> WayPoint.of(50 + i * 1e-4, 14, i * 1000L))
+			.toList();
+
+		List<WayPoint> simplified = TrackSimplifier.simplify(points, 1);
+
+		assertEquals(simplified, List.of(points.getFirst(), points.getLast()));
+	}
+
+	@Test
+	public void simplify_corner_cornerKept()
+	{
+		List<WayPoint> points = List.of(
+			WayPoint.of(50.000, 14.000, 0),
+			WayPoint.of(50.001, 14.000, 1000),
+			WayPoint.of(50.002, 14.000, 2000),
+			WayPoint.of(50.002, 14.001, 3000),
+			WayPoint.of(50.002, 14.002, 4000)
+		);
+
+		assertEquals(TrackSimplifier.simplify(points, 5), List.of(points.get(0), points.get(2), points.get(4)));
+		assertEquals(TrackSimplifier.simplify(List.of(points.get(0), points.get(2), points.get(4)), 5).size(), 3);
+	}
+}
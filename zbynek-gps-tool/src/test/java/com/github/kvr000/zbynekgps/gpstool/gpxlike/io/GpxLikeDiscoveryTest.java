@@ -0,0 +1,134 @@
+package com.github.kvr000.zbynekgps.gpstool.gpxlike.io;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class GpxLikeDiscoveryTest
+{
+	private final GpxLikeDiscovery discovery = new GpxLikeDiscovery();
+
+	@Test
+	public void discover_nested_foundRecursively() throws IOException
+	{
+		Path dir = createTree();
+		try {
+			assertEquals(discover(dir, List.of(), List.of()), Set.of("a.gpx", "2023/01/b.fit.gz", "2023/02/c.gpx.gz", "2024/d.fit"));
+		}
+		finally {
+			FileUtils.deleteDirectory(dir.toFile());
+		}
+	}
+
+	@Test
+	public void discover_nested_depthFirstSorted() throws IOException
+	{
+		Path dir = createTree();
+		try {
+			for (int i = 0; i < 10; ++i) {
+				try (Stream<GpxLikeDiscovery.DiscoveredFile> files = discovery.discover(dir)) {
+					assertEquals(
+						files.map(file -> dir.relativize(file.getPath()).toString().replace('\\', '/')).toList(),
+						List.of("2023/01/b.fit.gz", "2023/02/c.gpx.gz", "2024/d.fit", "a.gpx")
+					);
+				}
+			}
+		}
+		finally {
+			FileUtils.deleteDirectory(dir.toFile());
+		}
+	}
+
+	@Test(timeOut = 60_000L)
+	public void discover_manyDirectories_sameAsSortedWalk() throws IOException
+	{
+		// more directories than the lookahead, so the consumer has to start some listings itself:
+		Path dir = Files.createTempDirectory("discovery");
+		try {
+			for (int i = 0; i < 20; ++i) {
+				for (int j = 0; j < 30; ++j) {
+					Path file = dir.resolve("y" + i + "/m" + j + "/" + (i * j) + ".gpx");
+					Files.createDirectories(file.getParent());
+					Files.writeString(file, "");
+				}
+			}
+			List<Path> expected;
+			try (Stream<Path> walk = Files.walk(dir)) {
+				expected = walk.filter(Files::isRegularFile).sorted(GpxLikeDiscoveryTest::compareByNames).toList();
+			}
+
+			try (Stream<GpxLikeDiscovery.DiscoveredFile> files = discovery.discover(dir)) {
+				assertEquals(files.map(GpxLikeDiscovery.DiscoveredFile::getPath).toList(), expected);
+			}
+		}
+		finally {
+			FileUtils.deleteDirectory(dir.toFile());
+		}
+	}
+
+	@Test
+	public void discover_globs_filtered() throws IOException
+	{
+		Path dir = createTree();
+		try {
+			assertEquals(discover(dir, List.of("2023/**"), List.of("2023/02")), Set.of("2023/01/b.fit.gz"));
+		}
+		finally {
+			FileUtils.deleteDirectory(dir.toFile());
+		}
+	}
+
+	@Test(timeOut = 10_000L, expectedExceptions = UncheckedIOException.class)
+	public void discover_missingDirectory_failsWithoutHanging() throws IOException
+	{
+		Path dir = Files.createTempDirectory("discovery");
+		try {
+			discover(dir.resolve("missing"), List.of(), List.of());
+		}
+		finally {
+			FileUtils.deleteDirectory(dir.toFile());
+		}
+	}
+
+	private Set<String> discover(Path dir, List<String> includes, List<String> excludes)
+	{
+		try (Stream<GpxLikeDiscovery.DiscoveredFile> files = discovery.discover(dir, includes, excludes)) {
+			return files
+				.map(file -> dir.relativize(file.getPath()).toString().replace('\\', '/'))
+				.collect(Collectors.toSet());
+		}
+	}
+
+	private static int compareByNames(Path a, Path b)
+	{
+		for (int i = 0; i < Math.min(a.getNameCount(), b.getNameCount()); ++i) {
+			int result = a.getName(i).toString().compareTo(b.getName(i).toString());
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(a.getNameCount(), b.getNameCount());
+	}
+
+	private Path createTree() throws IOException
+	{
+		Path dir = Files.createTempDirectory("discovery");
+		for (String name: List.of("a.gpx", "notes.txt", "2023/01/b.fit.gz", "2023/02/c.gpx.gz", "2024/d.fit", "2024/e.csv")) {
+			Path file = dir.resolve(name);
+			Files.createDirectories(file.getParent());
+			Files.writeString(file, name);
+		}
+		return dir;
+	}
+}
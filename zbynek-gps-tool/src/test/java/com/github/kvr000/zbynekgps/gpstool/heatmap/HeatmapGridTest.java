@@ -0,0 +1,62 @@
+package com.github.kvr000.zbynekgps.gpstool.heatmap;
+
+import org.testng.annotations.Test;
+
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class HeatmapGridTest
+{
+	@Test
+	public void rasterizer_concurrentActivities_countedOncePerPixel() throws Exception
+	{
+		try (HeatmapGrid grid = HeatmapGrid.create(16, 50.0, 14.0, 50.1, 14.1)) {
+			IntStream.range(0, 100).parallel().forEach(i -> {
+				HeatmapGrid.Rasterizer rasterizer = grid.newRasterizer();
+				// there and back, the pixels are counted once per activity:
+				rasterizer.add(50.05, 14.01);
+				rasterizer.add(50.05, 14.09);
+				rasterizer.add(50.05, 14.01);
+				rasterizer.finish();
+			});
+
+			int y = (int) (HeatmapGrid.projectY(50.05, 256L << 16) - grid.getOriginY());
+			int x0 = (int) (HeatmapGrid.projectX(14.01, 256L << 16) - grid.getOriginX());
+			int x1 = (int) (HeatmapGrid.projectX(14.09, 256L << 16) - grid.getOriginX());
+			for (int x = x0; x <= x1; ++x) {
+				assertEquals(grid.get(x, y), 100, "x=" + x);
+			}
+			assertEquals(grid.get(x0 - 1, y), 0);
+			assertEquals(grid.get(x0, y + 1), 0);
+			assertEquals(grid.max(), 100);
+		}
+	}
+
+	@Test
+	public void downsample_pixels_maximum() throws Exception
+	{
+		try (HeatmapGrid grid = HeatmapGrid.create(10, 50.0, 14.0, 50.5, 14.5)) {
+			HeatmapGrid.Rasterizer rasterizer = grid.newRasterizer();
+			rasterizer.add(50.2, 14.2);
+			rasterizer.finish();
+			rasterizer.add(50.2, 14.2);
+			rasterizer.finish();
+			rasterizer.add(50.4, 14.4);
+			rasterizer.finish();
+
+			try (HeatmapGrid lower = grid.downsample()) {
+				assertEquals(lower.getZoom(), 9);
+				assertEquals(lower.max(), 2);
+				int total = 0;
+				for (int y = 0; y < lower.getHeight(); ++y) {
+					for (int x = 0; x < lower.getWidth(); ++x) {
+						total += lower.get(x, y);
+					}
+				}
+				assertEquals(total, 3);
+			}
+		}
+	}
+}
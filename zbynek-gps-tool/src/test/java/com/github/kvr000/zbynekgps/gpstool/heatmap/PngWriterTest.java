@@ -0,0 +1,43 @@
+package com.github.kvr000.zbynekgps.gpstool.heatmap;
+
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class PngWriterTest
+{
+	@Test
+	public void writeRow_image_readableByImageIo() throws Exception
+	{
+		int width = 300, height = 700;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (PngWriter writer = new PngWriter(output, width, height)) {
+			byte[] row = new byte[width * 4];
+			for (int y = 0; y < height; ++y) {
+				for (int x = 0; x < width; ++x) {
+					row[x * 4] = (byte) x;
+					row[x * 4 + 1] = (byte) y;
+					row[x * 4 + 2] = (byte) (x ^ y);
+					row[x * 4 + 3] = (byte) (x + y);
+				}
+				writer.writeRow(row);
+			}
+		}
+
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals(image.getWidth(), width);
+		assertEquals(image.getHeight(), height);
+		for (int y = 0; y < height; y += 7) {
+			for (int x = 0; x < width; x += 3) {
+				int expected = ((x + y) & 0xff) << 24 | (x & 0xff) << 16 | (y & 0xff) << 8 | ((x ^ y) & 0xff);
+				assertEquals(image.getRGB(x, y), expected, "x=" + x + " y=" + y);
+			}
+		}
+	}
+}
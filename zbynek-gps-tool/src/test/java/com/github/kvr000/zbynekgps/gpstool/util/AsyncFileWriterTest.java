@@ -0,0 +1,72 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import org.apache.commons.io.file.PathUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+
+public class AsyncFileWriterTest
+{
+	@Test
+	public void write_manyFiles_allWritten() throws Exception
+	{
+		Path directory = Files.createTempDirectory("async-writer");
+		try {
+			try (AsyncFileWriter writer = new AsyncFileWriter(2, 2, false)) {
+				for (int i = 0; i < 100; ++i) {
+					writer.write(directory.resolve(i + ".txt"), Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+
+			try (var files = Files.list(directory)) {
+				assertEquals(files.count(), 100L);
+			}
+			assertEquals(Files.readString(directory.resolve("42.txt")), "42");
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void write_gzip_compressed() throws Exception
+	{
+		Path directory = Files.createTempDirectory("async-writer");
+		try {
+			try (AsyncFileWriter writer = new AsyncFileWriter(1, 1, true)) {
+				writer.write(directory.resolve("a.gpx"), "content".getBytes(StandardCharsets.UTF_8));
+			}
+
+			try (InputStream input = new GZIPInputStream(Files.newInputStream(directory.resolve("a.gpx.gz")))) {
+				assertEquals(new String(input.readAllBytes(), StandardCharsets.UTF_8), "content");
+			}
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+
+	@Test(timeOut = 10_000L)
+	public void close_runtimeFailure_reported() throws Exception
+	{
+		Path directory = Files.createTempDirectory("async-writer");
+		try {
+			AsyncFileWriter writer = new AsyncFileWriter(1, 1, false);
+			// null content fails with NullPointerException inside the writer thread:
+			writer.write(directory.resolve("a.txt"), null);
+			assertThrows(IOException.class, writer::close);
+		}
+		finally {
+			PathUtils.deleteDirectory(directory);
+		}
+	}
+}
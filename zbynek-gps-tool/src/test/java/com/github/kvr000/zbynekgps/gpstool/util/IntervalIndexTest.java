@@ -0,0 +1,71 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+
+public class IntervalIndexTest
+{
+	@Test
+	public void findCovering_overlapping_allFound()
+	{
+		IntervalIndex<long[]> index = new IntervalIndex<>(
+			List.of(new long[]{ 0, 100 }, new long[]{ 10, 20 }, new long[]{ 15, 30 }, new long[]{ 50, 60 }),
+			range -> range[0],
+			range -> range[1]
+		);
+
+		assertEquals(index.findCovering(17).stream().map(range -> range[0]).toList(), List.of(0L, 10L, 15L));
+		assertEquals(index.findCovering(30).stream().map(range -> range[0]).toList(), List.of(0L, 15L));
+		assertEquals(index.findCovering(101).size(), 0);
+		assertEquals(index.findCovering(-1).size(), 0);
+	}
+
+	@Test
+	public void findCovering_random_sameAsLinear()
+	{
+		Random random = new Random(0);
+		List<long[]> ranges = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			long start = random.nextInt(100_000);
+			ranges.add(new long[]{ start, start + random.nextInt(random.nextBoolean() ? 100 : 10_000) });
+		}
+		IntervalIndex<long[]> index = new IntervalIndex<>(ranges, range -> range[0], range -> range[1]);
+
+		for (int i = 0; i < 1000; ++i) {
+			long point = random.nextInt(110_000);
+			assertEquals(
+				index.findCovering(point).size(),
+				ranges.stream().filter(range -> range[0] <= point && point <= range[1]).count()
+			);
+		}
+	}
+
+	@Test
+	public void findOverlapping_random_sameAsLinear()
+	{
+		Random random = new Random(0);
+		List<long[]> ranges = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			long start = random.nextInt(100_000);
+			ranges.add(new long[]{ start, start + random.nextInt(1000) });
+		}
+		IntervalIndex<long[]> index = new IntervalIndex<>(ranges, range -> range[0], range -> range[1]);
+
+		for (int i = 0; i < 1000; ++i) {
+			long low = random.nextInt(110_000);
+			long high = low + random.nextInt(500);
+			List<long[]> found = new ArrayList<>();
+			index.findOverlapping(low, high, found::add);
+			assertEquals(
+				found.size(),
+				ranges.stream().filter(range -> range[0] <= high && low <= range[1]).count()
+			);
+		}
+	}
+}
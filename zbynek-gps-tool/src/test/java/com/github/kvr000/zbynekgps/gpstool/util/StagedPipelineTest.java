@@ -0,0 +1,113 @@
+package com.github.kvr000.zbynekgps.gpstool.util;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+
+public class StagedPipelineTest
+{
+	@Test
+	public void run_randomDelays_orderedAndBounded() throws Exception
+	{
+		AtomicInteger inflight = new AtomicInteger();
+		AtomicInteger maxInflight = new AtomicInteger();
+		List<Integer> output = new ArrayList<>();
+		StagedPipeline<Integer, Integer, Integer> pipeline = new StagedPipeline<>(
+			"test",
+			StagedPipeline.Config.of(4, 8, 10),
+			input -> {
+				maxInflight.accumulateAndGet(inflight.incrementAndGet(), Math::max);
+				sleepRandomly();
+				if (input % 7 == 0) {
+					inflight.decrementAndGet();
+					return null;
+				}
+				return input;
+			},
+			loaded -> {
+				sleepRandomly();
+				if (loaded % 5 == 0) {
+					inflight.decrementAndGet();
+					return null;
+				}
+				return loaded;
+			},
+			result -> {
+				output.add(result);
+				inflight.decrementAndGet();
+			}
+		);
+
+		pipeline.run(IntStream.range(0, 500).boxed());
+
+		assertEquals(output, IntStream.range(0, 500).filter(i -> i % 7 != 0 && i % 5 != 0).boxed().toList());
+		assertTrue(maxInflight.get() <= 10, "maxInflight=" + maxInflight.get());
+	}
+
+	@Test
+	public void run_unordered_firstCompletedFirst() throws Exception
+	{
+		List<Integer> output = new ArrayList<>();
+		StagedPipeline<Integer, Integer, Integer> pipeline = new StagedPipeline<>(
+			"test",
+			StagedPipeline.Config.of(2, 2, 4).unordered(),
+			input -> input,
+			loaded -> {
+				if (loaded == 0) {
+					try {
+						Thread.sleep(200);
+					}
+					catch (InterruptedException ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+				return loaded;
+			},
+			output::add
+		);
+
+		pipeline.run(IntStream.range(0, 20).boxed());
+
+		assertEquals(output.stream().sorted().toList(), IntStream.range(0, 20).boxed().toList());
+		assertTrue(output.getFirst() != 0, "output=" + output);
+	}
+
+	@Test
+	public void run_ioFailure_rethrown()
+	{
+		StagedPipeline<Integer, Integer, Integer> pipeline = new StagedPipeline<>(
+			"test",
+			StagedPipeline.Config.of(2, 2, 4),
+			input -> {
+				if (input == 50) {
+					throw new IOException("failed");
+				}
+				return input;
+			},
+			loaded -> loaded,
+			result -> {}
+		);
+
+		assertThrows(IOException.class, () -> pipeline.run(IntStream.range(0, 100).boxed()));
+	}
+
+	private static void sleepRandomly()
+	{
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+		}
+		catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}